@@ -0,0 +1,92 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.util.Log;
+
+import com.meg_codes.android.popularmoviesstage1.MovieContract.MovieEntry;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Times the grid's sorted query over 10,000 stored movies, and checks SQLite walks the
+ * index for it rather than sorting the table. The database gets a "test." prefix, so the
+ * app's own movies are left alone.
+ */
+public class MovieStoreTest extends AndroidTestCase {
+    private static final String LOG_TAG = MovieStoreTest.class.getSimpleName();
+
+    private static final int MOVIE_COUNT = 10000;
+    private static final int RUNS = 5;
+
+    private MovieDbHelper mDbHelper;
+    private MovieStore mStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "test.");
+        context.deleteDatabase(MovieDbHelper.DATABASE_NAME);
+        mDbHelper = new MovieDbHelper(context);
+        mStore = new MovieStore(mDbHelper);
+
+        Random random = new Random(1);
+        ArrayList<Movie> movies = new ArrayList<>(MOVIE_COUNT);
+        for (int id = 1; id <= MOVIE_COUNT; id++) {
+            movies.add(new Movie(id, "Movie " + id, "/poster" + id + ".jpg",
+                    "/backdrop" + id + ".jpg", "2015-06-01", random.nextInt(101) / 10.0,
+                    random.nextInt(5000), random.nextDouble() * 100, random.nextInt(1 << 19),
+                    "An overview of about the usual length for movie " + id + "."));
+        }
+        mStore.insertMovies(movies);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    public void testSortedQueriesUseTheirIndex() {
+        assertPlanUses(MovieEntry.COLUMN_POPULARITY, MovieEntry.INDEX_POPULARITY);
+        assertPlanUses(MovieEntry.COLUMN_VOTE_AVERAGE, MovieEntry.INDEX_VOTE_AVERAGE);
+    }
+
+    public void testQueryingEveryMovie() {
+        long best = Long.MAX_VALUE;
+        ArrayList<Movie> movies = null;
+        for (int i = 0; i < RUNS; i++) {
+            long start = SystemClock.elapsedRealtime();
+            movies = mStore.queryMovies(MovieEntry.COLUMN_POPULARITY);
+            best = Math.min(best, SystemClock.elapsedRealtime() - start);
+        }
+        Log.i(LOG_TAG, "queryMovies over " + MOVIE_COUNT + " movies: " + best + " ms");
+
+        assertEquals(MOVIE_COUNT, movies.size());
+        for (int i = 1; i < movies.size(); i++) {
+            assertTrue(movies.get(i - 1).getPopularity() >= movies.get(i).getPopularity());
+        }
+    }
+
+    private void assertPlanUses(String sortColumn, String index) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM " + MovieEntry.TABLE_NAME
+                + " ORDER BY " + sortColumn + " DESC", null);
+        try {
+            StringBuilder plan = new StringBuilder();
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+            // A sort shows up as "USE TEMP B-TREE FOR ORDER BY".
+            assertTrue(plan.toString(), plan.indexOf(index) >= 0);
+            assertTrue(plan.toString(), plan.indexOf("TEMP B-TREE") < 0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.squareup.picasso.Picasso;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gets the detail screen's data ready before it's opened, so it can show everything on
+ * its first frame: the bigger poster, and the runtime and tagline, which discover doesn't
+ * send (see MovieDetails).
+ *
+ * The grid asks for a movie when its poster is pressed (the tap that opens the detail
+ * screen comes a moment later), and for the movies that stay on screen for a while once
+ * scrolling stops (see MovieGridFragment). A pressed movie's poster is decoded into
+ * Picasso's memory cache, ready to show; a movie that was only on screen just has its
+ * poster downloaded to disk, since decoding a dozen big posters would push the grid's
+ * out of memory.
+ *
+ * What to fetch, and the budget for guessing, is worked out by a PrefetchTracker; this
+ * does the fetching for it. There's one instance per process (see getInstance), used from
+ * the main thread.
+ */
+public class DetailPrefetcher {
+    private static final String LOG_TAG = DetailPrefetcher.class.getSimpleName();
+
+    // Why a movie is prefetched (see PrefetchTracker).
+    public static final int PRESSED = PrefetchTracker.PRESSED;
+    public static final int ON_SCREEN = PrefetchTracker.ON_SCREEN;
+
+    private static final String DETAILS_URL = "https://api.themoviedb.org/3/movie/";
+    private static final int MAX_ENTRIES = 100;
+    // About 70 movies that were on screen but never opened (a poster for the detail screen
+    // is 30-40 KB, the details under 2 KB).
+    private static final long MAX_UNUSED_BYTES = 3 * 1024 * 1024;
+    private static final int WORKER_THREADS = 3;
+
+    private static DetailPrefetcher sInstance;
+
+    /**
+     * Receives a movie's details on the main thread, or null if they couldn't be loaded.
+     */
+    public interface Callback extends PrefetchTracker.Callback {
+    }
+
+    private final Context mContext;
+    private final HttpClient mHttpClient;
+    private final RateLimiter mRateLimiter;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler;
+    // Where a details request goes once it has its RateLimiter token: ahead of the poster
+    // downloads waiting for a worker, so the token it just spent isn't left sitting.
+    private final Executor mRequestExecutor = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            mExecutor.execute(new Task(true) {
+                @Override
+                public void run() {
+                    command.run();
+                }
+            });
+        }
+    };
+    private final PrefetchTracker mTracker;
+    // Tasks are made on the main thread and, for granted requests, the RateLimiter's.
+    private final AtomicLong mNextSequence = new AtomicLong();
+
+    public static synchronized DetailPrefetcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DetailPrefetcher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DetailPrefetcher(Context context) {
+        mContext = context;
+        mHttpClient = HttpClient.getInstance();
+        mRateLimiter = RateLimiter.getTmdbInstance();
+        // Runs the most urgent work first (see Task), so a press doesn't queue behind the
+        // movies that were on screen.
+        mExecutor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 30,
+                TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mTracker = new PrefetchTracker(MAX_ENTRIES, MAX_UNUSED_BYTES,
+                new PrefetchTracker.Fetcher() {
+                    @Override
+                    public RateLimiter.Ticket fetchDetails(PrefetchTracker.Entry entry,
+                                                           int lane) {
+                        DetailsRequest request = new DetailsRequest(entry, lane);
+                        request.start();
+                        return request.getTicket();
+                    }
+
+                    @Override
+                    public void raise(RateLimiter.Ticket ticket) {
+                        mRateLimiter.raise(ticket, RateLimiter.VISIBLE);
+                    }
+
+                    @Override
+                    public void fetchPoster(PrefetchTracker.Entry entry, String posterPath,
+                                            boolean pressed) {
+                        // The same URL as the detail screen's, so its request finds it.
+                        String url = PosterUrls.urlFor(posterPath,
+                                PosterSizes.detailPosterWidth(mContext));
+                        mExecutor.execute(new PosterTask(entry, url, pressed));
+                    }
+                });
+    }
+
+    /**
+     * Gets a movie's detail screen ready, as far as it isn't already.
+     *
+     * @param reason PRESSED or ON_SCREEN.
+     */
+    public void prefetch(Movie movie, int reason) {
+        mTracker.prefetch(movie.getId(), movie.getPosterPath(), reason);
+    }
+
+    /**
+     * For the detail screen: the movie's details if they're here already, or else they're
+     * fetched (if they aren't on their way already) and handed to the callback.
+     *
+     * @return the details, or null if the callback is going to get them instead.
+     */
+    public MovieDetails getDetails(long id, Callback callback) {
+        return mTracker.getDetails(id, callback);
+    }
+
+    /**
+     * Work for the executor, most urgent first, then in the order it was asked for.
+     */
+    private abstract class Task implements Runnable, Comparable<Task> {
+        final boolean mUrgent;
+        final long mSequence = mNextSequence.getAndIncrement();
+
+        Task(boolean urgent) {
+            mUrgent = urgent;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mUrgent != other.mUrgent) {
+                return mUrgent ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Fetches a movie's details from TMDb. Like the discover pages, it only takes a worker
+     * once the RateLimiter has given it a token (see RateLimitedRequest).
+     */
+    private class DetailsRequest extends RateLimitedRequest {
+        private final PrefetchTracker.Entry mEntry;
+
+        DetailsRequest(PrefetchTracker.Entry entry, int priority) {
+            super(mHttpClient, mRateLimiter, mRequestExecutor,
+                    DETAILS_URL + entry.getId() + "?" + MovieFetcher.API_KEY.substring(1),
+                    null, null, priority);
+            mEntry = entry;
+        }
+
+        @Override
+        protected void onResponse(HttpClient.Response response) throws IOException {
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "HTTP " + response.getCode() + " for movie " + mEntry.getId());
+                post(null, 0);
+                return;
+            }
+            // Read in full first, to count it against the budget. That's the unzipped size,
+            // a bit more than went over the wire.
+            byte[] body = readFully(response.getBody());
+            post(MovieJsonParser.parseDetails(new ByteArrayInputStream(body)), body.length);
+        }
+
+        @Override
+        protected void onFailed() {
+            post(null, 0);
+        }
+
+        private void post(final MovieDetails details, final long bytes) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mTracker.onDetailsFetched(mEntry, details, bytes);
+                }
+            });
+        }
+    }
+
+    /**
+     * Downloads a poster to disk (see PosterDiskCache.prefetch), and for a pressed movie
+     * decodes it into Picasso's memory cache.
+     */
+    private class PosterTask extends Task {
+        private final PrefetchTracker.Entry mEntry;
+        private final String mUrl;
+
+        PosterTask(PrefetchTracker.Entry entry, String url, boolean urgent) {
+            super(urgent);
+            mEntry = entry;
+            mUrl = url;
+        }
+
+        @Override
+        public void run() {
+            long bytes = 0;
+            boolean succeeded = true;
+            try {
+                bytes = PopularMoviesApplication.getPosterDiskCache().prefetch(mUrl);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Couldn't prefetch poster " + mUrl, e);
+                succeeded = false;
+            }
+            final long downloaded = bytes;
+            final boolean fetched = succeeded;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mTracker.onPosterFetched(mEntry, mUrgent, downloaded, fetched);
+                    if (fetched && mUrgent) {
+                        // From disk now, decoded into the memory cache at the size the
+                        // detail screen asks for.
+                        Picasso.with(mContext).load(mUrl).priority(Picasso.Priority.HIGH)
+                                .fetch();
+                    }
+                }
+            });
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
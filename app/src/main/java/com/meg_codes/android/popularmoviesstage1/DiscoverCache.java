@@ -0,0 +1,246 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk-backed cache for TMDb discover responses, one file per request URL in the app's
+ * cache directory. Each entry keeps the raw response body along with its ETag and
+ * Last-Modified headers, so MovieFetcher can ask TMDb whether it has changed
+ * (a conditional request) instead of downloading it again, and the time it stops
+ * being fresh (see CachedResponse).
+ *
+ * On top of that is a small in-memory cache of already-parsed pages, so serving a
+ * fresh entry, or a stale one that TMDb answers with "304 Not Modified", doesn't cost
+ * a parse either while the process is alive.
+ *
+ * There's one instance per process (see getInstance). Safe to use from the fetch
+ * worker threads.
+ */
+public class DiscoverCache {
+    private static final String LOG_TAG = DiscoverCache.class.getSimpleName();
+
+    // Bumped whenever the file layout below changes; older files are ignored.
+    private static final int FORMAT_VERSION = 1;
+    private static final String CACHE_DIR = "discover";
+
+    // Oldest entries are deleted once the files add up to more than this.
+    private static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+
+    // Parsed pages kept in memory (20 movies each).
+    private static final int MAX_PARSED_PAGES = 50;
+
+    private static DiscoverCache sInstance;
+
+    private final File mDirectory;
+    private final LruCache<String, DiscoverPage> mParsedPages =
+            new LruCache<>(MAX_PARSED_PAGES);
+
+    public static synchronized DiscoverCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+            sInstance = new DiscoverCache(directory);
+        }
+        return sInstance;
+    }
+
+    DiscoverCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * @return the cached response for the URL, fresh or not, or null if there isn't one.
+     */
+    public synchronized CachedResponse get(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            CountingInputStream counter =
+                    new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            in = new DataInputStream(counter);
+            if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) {
+                // Old layout, or two URLs with the same hash; treat it as a miss.
+                return null;
+            }
+            String etag = readOptionalUTF(in);
+            String lastModified = readOptionalUTF(in);
+            long expiresAt = in.readLong();
+            // A cut short or corrupt file can claim any length, so it's checked against
+            // what's left before anything is allocated for it.
+            int length = in.readInt();
+            long remaining = file.length() - counter.getCount();
+            if (length < 0 || length > remaining) {
+                throw new IOException("Body of " + length + " bytes, " + remaining + " left");
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return new CachedResponse(etag, lastModified, expiresAt, body);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read cached response for " + url, e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores a response, replacing any earlier one for the URL. Written to a temporary file
+     * first so a half-written entry is never read back.
+     */
+    public synchronized void put(String url, CachedResponse entry) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(LOG_TAG, "Couldn't create " + mDirectory);
+            return;
+        }
+        File file = fileFor(url);
+        File tempFile = new File(mDirectory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(url);
+            writeOptionalUTF(out, entry.etag);
+            writeOptionalUTF(out, entry.lastModified);
+            out.writeLong(entry.expiresAt);
+            out.writeInt(entry.body.length);
+            out.write(entry.body);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                Log.w(LOG_TAG, "Couldn't store cached response for " + url);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't store cached response for " + url, e);
+        } finally {
+            closeQuietly(out);
+            tempFile.delete();
+        }
+        trimToSize();
+    }
+
+    /**
+     * @return the page parsed from the URL's response earlier in this process, or null.
+     */
+    public DiscoverPage getParsed(String url) {
+        return mParsedPages.get(url);
+    }
+
+    public void putParsed(String url, DiscoverPage page) {
+        mParsedPages.put(url, page);
+    }
+
+    /**
+     * Deletes the least recently written entries until the directory fits in MAX_DISK_BYTES.
+     */
+    private void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && total > MAX_DISK_BYTES; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private File fileFor(String url) {
+        return new File(mDirectory, Integer.toHexString(url.hashCode()));
+    }
+
+    private static String readOptionalUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOptionalUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                mCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long n = super.skip(count);
+            mCount += n;
+            return n;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing stream", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The one place the app makes HTTP requests, shared by the TMDb fetches (MovieFetcher) and
+ * the poster downloads (PosterDiskCache).
+ *
+ * - Connections are kept alive and reused: a response is read to the end and closed, and
+ *   disconnect() is only called to abandon a request, since it closes the socket. Android
+ *   keeps idle connections in a pool per host (see MAX_IDLE_CONNECTIONS), so the TLS
+ *   handshake is only paid once per connection, not once per page.
+ * - Responses are asked for gzipped, and unzipped here (see ResponseBody). Setting
+ *   Accept-Encoding ourselves turns off HttpURLConnection's transparent unzipping, which
+ *   is what lets the bytes on the wire be counted (see Metrics.HTTP_WIRE_BYTES).
+ * - Requests that fail with 429 or a 5xx, or with an IOException, are tried again, waiting
+ *   with jitter or as long as a Retry-After header asks (see RetryPolicy).
+ *
+ * There's one shared instance (see getInstance); requests can be made from any thread.
+ */
+public class HttpClient {
+    private static final String LOG_TAG = HttpClient.class.getSimpleName();
+
+    // Idle connections Android's pool keeps per host. The default, 5, is just enough for
+    // the 4 fetch workers; this leaves room for the poster downloads alongside.
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 8 * 1000;
+    // A longer Retry-After is cut down to this.
+    private static final long MAX_RETRY_AFTER_MILLIS = 30 * 1000;
+
+    private static HttpClient sInstance;
+
+    /**
+     * Lets the caller keep hold of each connection while it's open, so it can be
+     * disconnected from another thread to cancel the request (see MovieFetcher.PageFetch).
+     * onOpen is called before every try, retries included, so it can also call the request
+     * off.
+     */
+    public interface ConnectionTracker {
+        /**
+         * @return false if the request has been cancelled and shouldn't be made.
+         */
+        boolean onOpen(HttpURLConnection connection);
+
+        void onClose(HttpURLConnection connection);
+    }
+
+    /**
+     * An open response. The body must be closed, which also hands the connection back to
+     * the pool.
+     */
+    public static class Response implements ConditionalGet.Response {
+        private final HttpURLConnection mConnection;
+        private final ConnectionTracker mTracker;
+        private final int mCode;
+        private final InputStream mBody;
+
+        Response(HttpURLConnection connection, ConnectionTracker tracker, int code,
+                 InputStream body) {
+            mConnection = connection;
+            mTracker = tracker;
+            mCode = code;
+            mBody = body;
+        }
+
+        @Override
+        public int getCode() {
+            return mCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * @return the body, already unzipped. Empty for a response without one (304).
+         *         Closing it skips to the end first, so the connection can be reused.
+         */
+        @Override
+        public InputStream getBody() {
+            return mBody;
+        }
+
+        /**
+         * Reads whatever's left of the body and closes it, if the caller hasn't already.
+         */
+        public void close() {
+            try {
+                mBody.close();
+            } catch (IOException e) {
+                // Not reusable then, so it's closed for good.
+                mConnection.disconnect();
+            } finally {
+                if (mTracker != null) {
+                    mTracker.onClose(mConnection);
+                }
+            }
+        }
+    }
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+    private final RetryPolicy mRetryPolicy;
+
+    public static synchronized HttpClient getInstance() {
+        if (sInstance == null) {
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+            sInstance = new HttpClient(DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                    DEFAULT_READ_TIMEOUT_MILLIS, new RetryPolicy(DEFAULT_MAX_RETRIES,
+                    BASE_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS, MAX_RETRY_AFTER_MILLIS,
+                    new Random()));
+        }
+        return sInstance;
+    }
+
+    public HttpClient(int connectTimeoutMillis, int readTimeoutMillis,
+                      RetryPolicy retryPolicy) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return what get() goes by to decide whether to try again, for callers that do their
+     *         own retrying around getOnce (see RateLimitedRequest).
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Makes a GET request, trying again as described above. Any response that isn't retried
+     * is returned, whatever its code, for the caller to check.
+     *
+     * @param headers extra request headers, or null.
+     * @param tracker told about each connection as it opens and closes, or null.
+     * @return the response, or null if the tracker cancelled the request.
+     * @throws IOException if the last try failed.
+     */
+    public Response get(String url, Map<String, String> headers, ConnectionTracker tracker)
+            throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            String retryAfter;
+            try {
+                Response response = getOnce(url, headers, tracker);
+                if (response == null) {
+                    return null;
+                }
+                int code = response.getCode();
+                if (!RetryPolicy.isRetryable(code) || !mRetryPolicy.canRetry(attempt)) {
+                    return response;
+                }
+                retryAfter = response.getHeader("Retry-After");
+                response.close();
+                Log.w(LOG_TAG, "HTTP " + code + " for " + url + ", trying again");
+            } catch (IOException e) {
+                if (!mRetryPolicy.canRetry(attempt)) {
+                    Metrics.count(Metrics.HTTP_FAILURES);
+                    throw e;
+                }
+                retryAfter = null;
+                Log.w(LOG_TAG, "Request for " + url + " failed, trying again", e);
+            }
+            Metrics.count(Metrics.HTTP_RETRIES);
+            if (!sleep(mRetryPolicy.delayMillis(attempt, retryAfter))) {
+                throw new IOException("Interrupted while waiting to retry " + url);
+            }
+        }
+    }
+
+    /**
+     * Makes a GET request once, without trying again whatever happens. Otherwise the same
+     * as get().
+     */
+    public Response getOnce(String url, Map<String, String> headers, ConnectionTracker tracker)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (tracker != null && !tracker.onOpen(connection)) {
+            return null;
+        }
+        try {
+            return open(connection, headers, tracker);
+        } catch (IOException e) {
+            connection.disconnect();
+            if (tracker != null) {
+                tracker.onClose(connection);
+            }
+            throw e;
+        }
+    }
+
+    private Response open(HttpURLConnection connection, Map<String, String> headers,
+                          ConnectionTracker tracker) throws IOException {
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        long start = Metrics.start();
+        connection.connect();
+        Metrics.stop(Metrics.CONNECT, start);
+        start = Metrics.start();
+        int code = connection.getResponseCode();
+        Metrics.stop(Metrics.TTFB, start);
+        Metrics.count(Metrics.HTTP_REQUESTS);
+
+        InputStream raw = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        InputStream body = ResponseBody.open(raw, code,
+                connection.getHeaderField("Content-Encoding"),
+                connection.getHeaderField("Content-Length"));
+        return new Response(connection, tracker, code, body);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.provider.BaseColumns;
+
+/**
+ * Table and column names for the local movie database (see MovieDbHelper and MovieStore).
+ * Laid out the same way as the contract class in the Sunshine app.
+ */
+public class MovieContract {
+
+    private MovieContract() {
+    }
+
+    /**
+     * One row per movie, keyed by its TMDb id (stored in _ID).
+     * Popularity and vote average are REAL columns with an index each, so the grid's sort
+     * orders are index scans rather than sorts over the whole table.
+     */
+    public static final class MovieEntry implements BaseColumns {
+        public static final String TABLE_NAME = "movie";
+
+        public static final String COLUMN_TITLE = "title";
+        public static final String COLUMN_POSTER_PATH = "poster_path";
+        public static final String COLUMN_BACKDROP_PATH = "backdrop_path";
+        public static final String COLUMN_RELEASE_DATE = "release_date";
+        public static final String COLUMN_VOTE_AVERAGE = "vote_average";
+        public static final String COLUMN_VOTE_COUNT = "vote_count";
+        public static final String COLUMN_POPULARITY = "popularity";
+        // The movie's Genres mask.
+        public static final String COLUMN_GENRES = "genres";
+        public static final String COLUMN_OVERVIEW = "overview";
+
+        public static final String INDEX_VOTE_AVERAGE = "movie_vote_average_index";
+        public static final String INDEX_POPULARITY = "movie_popularity_index";
+    }
+}
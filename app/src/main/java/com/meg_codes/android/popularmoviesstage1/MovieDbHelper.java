@@ -0,0 +1,48 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.meg_codes.android.popularmoviesstage1.MovieContract.MovieEntry;
+
+/**
+ * Creates and upgrades the local movie database.
+ */
+public class MovieDbHelper extends SQLiteOpenHelper {
+    // Increment when the schema changes.
+    private static final int DATABASE_VERSION = 3;
+    static final String DATABASE_NAME = "movies.db";
+
+    public MovieDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        final String SQL_CREATE_MOVIE_TABLE = "CREATE TABLE " + MovieEntry.TABLE_NAME + " ("
+                + MovieEntry._ID + " INTEGER PRIMARY KEY, "
+                + MovieEntry.COLUMN_TITLE + " TEXT, "
+                + MovieEntry.COLUMN_POSTER_PATH + " TEXT, "
+                + MovieEntry.COLUMN_BACKDROP_PATH + " TEXT, "
+                + MovieEntry.COLUMN_RELEASE_DATE + " TEXT, "
+                + MovieEntry.COLUMN_VOTE_AVERAGE + " REAL NOT NULL DEFAULT 0, "
+                + MovieEntry.COLUMN_VOTE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + MovieEntry.COLUMN_POPULARITY + " REAL NOT NULL DEFAULT 0, "
+                + MovieEntry.COLUMN_GENRES + " INTEGER NOT NULL DEFAULT 0, "
+                + MovieEntry.COLUMN_OVERVIEW + " TEXT);";
+        db.execSQL(SQL_CREATE_MOVIE_TABLE);
+
+        db.execSQL("CREATE INDEX " + MovieEntry.INDEX_VOTE_AVERAGE + " ON "
+                + MovieEntry.TABLE_NAME + " (" + MovieEntry.COLUMN_VOTE_AVERAGE + ");");
+        db.execSQL("CREATE INDEX " + MovieEntry.INDEX_POPULARITY + " ON "
+                + MovieEntry.TABLE_NAME + " (" + MovieEntry.COLUMN_POPULARITY + ");");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The table only caches data from TMDb, so it's simply rebuilt.
+        db.execSQL("DROP TABLE IF EXISTS " + MovieEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
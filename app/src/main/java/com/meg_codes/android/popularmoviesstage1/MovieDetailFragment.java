@@ -1,6 +1,8 @@
 package com.meg_codes.android.popularmoviesstage1;
 
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.support.v4.app.Fragment;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -11,6 +13,9 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.util.ArrayList;
 
 
 /**
@@ -21,6 +26,8 @@ import com.squareup.picasso.Picasso;
  */
 public class MovieDetailFragment extends Fragment {
     private static final String LOG_TAG = MovieDetailFragment.class.getSimpleName();
+    // Intent extra with the TMDb id of the movie to show.
+    public static final String EXTRA_MOVIE_ID = "movie_id";
     private Movie mMovie;
 
     public MovieDetailFragment() {
@@ -29,32 +36,91 @@ public class MovieDetailFragment extends Fragment {
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
-        View rootView = inflater.inflate(R.layout.fragment_movie_detail, container, false);
+        final View rootView = inflater.inflate(R.layout.fragment_movie_detail, container, false);
 
-        // Gets the "parent" intent from the MovieGridFragment with Movie object
+        // Gets the "parent" intent from the MovieGridFragment with the movie's id, and looks
+        // the movie up. If the process has died since the grid was shown, it's read back
+        // from the database first.
         Intent intent = getActivity().getIntent();
-        if (intent != null && intent.hasExtra("movie")) {
-            mMovie = intent.getParcelableExtra("movie");
+        if (intent != null && intent.hasExtra(EXTRA_MOVIE_ID)) {
+            long id = intent.getLongExtra(EXTRA_MOVIE_ID, 0);
+            MovieRepository repository = MovieRepository.getInstance(getActivity());
+            mMovie = repository.get(id);
+            if (mMovie != null) {
+                showMovie(rootView);
+            } else {
+                repository.load(new long[]{id}, new MovieRepository.LoadCallback() {
+                    @Override
+                    public void onMoviesLoaded(ArrayList<Movie> movies) {
+                        if (!movies.isEmpty() && isAdded()) {
+                            mMovie = movies.get(0);
+                            showMovie(rootView);
+                        }
+                    }
+                });
+            }
         }
 
-        // Populates the ImageView using Picasso and the Movie object's poster URL
+        return rootView;
+    }
+
+    private void showMovie(final View rootView) {
+        // Populates the ImageView using Picasso, with a bigger TMDb size than the grid's since
+        // the poster is shown bigger here (see PosterSizes). The grid's thumbnail of the
+        // poster is usually still in the memory cache, so it's shown straight away while
+        // the bigger poster loads.
         ImageView imageView = (ImageView) rootView.findViewById(R.id.fragment_movie_detail_poster);
-        Picasso
+        RequestCreator request = Picasso
                 .with(getActivity())
-                .load(mMovie.getUrl())
-                .into(imageView);
+                .load(PosterUrls.urlFor(mMovie.getPosterPath(),
+                        PosterSizes.detailPosterWidth(getActivity())));
+        Bitmap thumbnail = PopularMoviesApplication.getPosterCache()
+                .getAnySize(mMovie.getPosterPath());
+        if (thumbnail != null) {
+            request.placeholder(new BitmapDrawable(getResources(), thumbnail));
+        }
+        request.into(imageView);
 
         // Sets the title of the Activity page to the film's title
         getActivity().setTitle(mMovie.getTitle());
 
         // Populates the detail TextViews (will hopefully find a cleaner way to do this in Stage 2)
+        MovieTextFormat format = PopularMoviesApplication.getMovieTextFormat();
         TextView releaseDate = (TextView) rootView.findViewById(R.id.fragment_movie_detail_release_date);
-        releaseDate.setText(mMovie.getTextReleaseDate());
+        releaseDate.setText(mMovie.getTextReleaseDate(format));
         TextView voteAverage = (TextView) rootView.findViewById(R.id.fragment_movie_detail_vote_average);
-        voteAverage.setText(mMovie.getVoteAverage());
+        voteAverage.setText(mMovie.getTextVoteAverage(format));
         TextView overview = (TextView) rootView.findViewById(R.id.fragment_movie_detail_overview);
         overview.setText(mMovie.getOverview());
 
-        return rootView;
+        // The runtime and tagline aren't in discover's results. They've usually been fetched
+        // already, when the poster was pressed in the grid (see DetailPrefetcher), and if
+        // not, they're filled in when they arrive.
+        MovieDetails details = DetailPrefetcher.getInstance(getActivity()).getDetails(
+                mMovie.getId(), new DetailPrefetcher.Callback() {
+                    @Override
+                    public void onDetailsLoaded(MovieDetails details) {
+                        if (isAdded()) {
+                            showDetails(rootView, details);
+                        }
+                    }
+                });
+        showDetails(rootView, details);
+    }
+
+    /**
+     * @param details null while they're still loading, or if they couldn't be.
+     */
+    private void showDetails(View rootView, MovieDetails details) {
+        TextView runtime = (TextView) rootView.findViewById(R.id.fragment_movie_detail_runtime);
+        runtime.setText(details != null
+                ? details.getTextRuntime(PopularMoviesApplication.getMovieTextFormat()) : null);
+        TextView tagline = (TextView) rootView.findViewById(R.id.fragment_movie_detail_tagline);
+        if (details != null && details.getTagline() != null) {
+            tagline.setText(details.getTagline());
+            tagline.setVisibility(View.VISIBLE);
+        } else {
+            tagline.setVisibility(View.GONE);
+        }
     }
 }
@@ -0,0 +1,570 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetch engine for the TMDb "discover/movie" queries (see DiscoverQuery). Replaces the
+ * single-page FetchMovieDataTask that used to live in MovieGridFragment.
+ *
+ * Several pages are requested at once on a small, bounded pool of worker threads.
+ * Results are handed to the Callback on the main thread strictly in page order, as
+ * soon as each page (and every page before it) has arrived, so the grid can start
+ * filling in before the slowest page is done. Movies already handed out by an
+ * earlier page of the same fetch are dropped (TMDb's paging can shift while a
+ * list is being read).
+ *
+ * Responses go through DiscoverCache, so pages seen recently are served without
+ * waiting on the network. Every query has its own URLs, so its own cache entries.
+ * Requests go out through the shared HttpClient, over connections kept alive between pages.
+ *
+ * Every request to TMDb first waits for a token from the RateLimiter, in the lane the
+ * fetch was started with (revalidations go in the REFRESH lane), so the API quota is
+ * respected whatever is going on. The workers don't wait for it: a request only takes a
+ * worker once it has its token (see RateLimitedRequest), so a revalidation or a prefetch
+ * waiting its turn never holds up a visible page queued behind it. Requests for the same
+ * URL that are in flight at the same time are coalesced: the first one goes out, and the
+ * others are handed its result when it comes back.
+ *
+ * MoviePager sits on top of this for loading further pages as the grid is scrolled.
+ */
+public class MovieFetcher implements MoviePager.PageSource {
+    private static final String LOG_TAG = MovieFetcher.class.getSimpleName();
+
+    // Upper bound on requests in flight (and pages being read from the cache) at once, no
+    // matter how many pages are asked for (ParallelFetchTest in core assumes this many).
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    // Construct the URL for the Movie Database query (the sort comes from DiscoverQuery)
+    private static final String BASE_URL = "https://api.themoviedb.org/3/discover/movie?";
+    private static final String PAGE_PARAM = "&page=";
+
+    // API key removed, please put yours between the empty quotation marks below.
+    static final String API_KEY = "&api_key=" + "";
+
+    // Reads a 200's body into a page of movies (see ConditionalGet).
+    private static final ConditionalGet.Parser<DiscoverPage> DISCOVER_PARSER =
+            new ConditionalGet.Parser<DiscoverPage>() {
+                @Override
+                public DiscoverPage parse(InputStream body) throws IOException {
+                    return MovieJsonParser.parseDiscoverPage(body);
+                }
+            };
+
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler;
+    private final DiscoverCache mCache;
+    private final MovieStore mStore;
+    private final MovieRepository mRepository;
+    private final HttpClient mHttpClient;
+    private final RateLimiter mRateLimiter;
+    // Requests on their way, by URL (see requestPage), guarded by itself.
+    private final HashMap<String, PageRequest> mInFlight = new HashMap<>();
+
+    /**
+     * A fetch's page that's waiting on a request.
+     */
+    private static class Waiter {
+        final PageFetch mOwner;
+        final int mPage;
+        // Raised with the fetch (see raise), guarded by mInFlight.
+        int mPriority;
+        // It's revalidating a page that was already delivered from the cache.
+        final boolean mRefresh;
+        // For Metrics.PAGE.
+        final long mStart;
+
+        Waiter(PageFetch owner, int page, int priority, boolean refresh, long start) {
+            mOwner = owner;
+            mPage = page;
+            mPriority = priority;
+            mRefresh = refresh;
+            mStart = start;
+        }
+    }
+
+    /**
+     * A request for one page, and the fetches waiting for it: the one that made it, and any
+     * others that asked for the same page while it was on its way.
+     */
+    private class PageRequest extends RateLimitedRequest {
+        final String mKey;
+        final CachedResponse mCached;
+        // The fetch that made the request. Cancelling it disconnects the request.
+        final PageFetch mOwner;
+        // Guarded by mInFlight.
+        final ArrayList<Waiter> mWaiters = new ArrayList<>();
+
+        /**
+         * @param cached the stale response to revalidate, or null for a plain request.
+         */
+        PageRequest(String key, String url, CachedResponse cached, Waiter first) {
+            super(mHttpClient, mRateLimiter, mExecutor, url,
+                    cached != null ? cached.conditionalHeaders() : null, first.mOwner,
+                    first.mPriority);
+            mKey = key;
+            mCached = cached;
+            mOwner = first.mOwner;
+            mWaiters.add(first);
+        }
+
+        @Override
+        protected boolean isCancelled() {
+            return mOwner.isCancelled();
+        }
+
+        @Override
+        protected void onResponse(HttpClient.Response response) throws IOException {
+            onRequestDone(this, readPage(getUrl(), mCached, response));
+        }
+
+        @Override
+        protected void onFailed() {
+            onRequestDone(this, null);
+        }
+    }
+
+    public MovieFetcher(Context context) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAX_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "MovieFetcher #" + mCount.getAndIncrement());
+                    }
+                });
+        // Idle workers don't need to stick around between fetches.
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mCache = DiscoverCache.getInstance(context);
+        mStore = MovieStore.getInstance(context);
+        mRepository = MovieRepository.getInstance(context);
+        mHttpClient = HttpClient.getInstance();
+        mRateLimiter = RateLimiter.getTmdbInstance();
+    }
+
+    /**
+     * Starts requesting pages firstPage to firstPage + pageCount - 1 of the query.
+     *
+     * @param priority the RateLimiter lane, VISIBLE or PREFETCH.
+     * @param callback called on the main thread, with the pages in order.
+     * @return the running fetch, which can be cancelled so the callback isn't called again.
+     */
+    public PageFetch fetchPages(DiscoverQuery query, int firstPage, int pageCount,
+                                int priority, PageSequencer.Callback callback) {
+        return fetchPages(query, firstPage, pageCount, new HashSet<Long>(), priority, callback);
+    }
+
+    /**
+     * Same as above, but movies whose ids are already in seenIds are dropped as well, so
+     * consecutive fetches can be de-duplicated against each other. The set is only
+     * read and updated on the main thread.
+     */
+    @Override
+    public PageFetch fetchPages(final DiscoverQuery query, int firstPage, int pageCount,
+                                HashSet<Long> seenIds, int priority,
+                                PageSequencer.Callback callback) {
+        PageFetch fetch = new PageFetch(this, firstPage, pageCount, seenIds, priority,
+                callback);
+        for (int page = firstPage; page < firstPage + pageCount; page++) {
+            final int pageNumber = page;
+            final PageFetch owner = fetch;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (owner.isCancelled()) {
+                        return;
+                    }
+                    loadPage(query, pageNumber, owner);
+                }
+            });
+        }
+        return fetch;
+    }
+
+    /**
+     * Replaces the snapshot with a copy of the movies it keeps, on a worker thread.
+     */
+    public void saveSnapshot(final MovieSnapshot snapshot, List<Movie> movies) {
+        final ArrayList<Movie> copy = new ArrayList<>(
+                movies.subList(0, Math.min(movies.size(), MovieSnapshot.MAX_MOVIES)));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                snapshot.write(copy);
+            }
+        });
+    }
+
+    /**
+     * Moves a fetch up to a more urgent lane, along with the requests it's waiting on, even
+     * those another fetch made (see requestPage): for a query that was being loaded in the
+     * background and is now on screen. Its revalidations stay where they are, since the
+     * pages they'd refresh are already showing. Does nothing if it's already in that lane
+     * or higher.
+     */
+    public void raise(PageFetch fetch, int priority) {
+        fetch.raiseLane(priority);
+        synchronized (mInFlight) {
+            for (PageRequest request : mInFlight.values()) {
+                for (Waiter waiter : request.mWaiters) {
+                    if (waiter.mOwner == fetch && !waiter.mRefresh
+                            && priority < waiter.mPriority) {
+                        waiter.mPriority = priority;
+                        mRateLimiter.raise(request.getTicket(), priority);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops taking work, and lets the worker threads go once what's queued has run. That
+     * isn't interrupted, so a snapshot write that's waiting still gets saved; the page
+     * loads of cancelled fetches waiting with it return straight away.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Loads one page on a worker thread and posts it to the fetch on the main thread, or
+     * leaves it to a request to post once it's back.
+     *
+     * A fresh cached response is used as is. A stale one is still handed over straight
+     * away, and then checked with TMDb using a conditional request: a 304 only pushes back
+     * its expiry, while a changed response is stored and its new movies are posted
+     * as a refresh (stale-while-revalidate). With nothing cached, the page is requested
+     * normally.
+     */
+    private void loadPage(DiscoverQuery query, int page, PageFetch owner) {
+        long start = Metrics.start();
+        String url = BASE_URL + query.getParameters() + PAGE_PARAM + page + API_KEY;
+
+        CachedResponse cached = mCache.get(url);
+        DiscoverPage cachedPage = cached != null ? parseCached(url, cached) : null;
+        if (cachedPage == null) {
+            requestPage(url, null, new Waiter(owner, page, owner.getPriority(), false, start));
+            return;
+        }
+
+        postPage(owner, page, cachedPage, false);
+        Metrics.stop(Metrics.PAGE, start);
+        Metrics.count(Metrics.PAGES_CACHED);
+        if (!cached.isFresh(System.currentTimeMillis()) && !owner.isCancelled()) {
+            requestPage(url, cached, new Waiter(owner, page, RateLimiter.REFRESH, true, 0));
+        }
+    }
+
+    /**
+     * @param discoverPage null if the page couldn't be loaded.
+     */
+    private void postPage(final PageFetch owner, final int page,
+                          final DiscoverPage discoverPage, final boolean refresh) {
+        if (discoverPage != null) {
+            // So other screens can find them by id.
+            mRepository.putAll(discoverPage.movies);
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (refresh) {
+                    owner.onPageRefreshed(page, discoverPage.movies);
+                } else {
+                    owner.onPageArrived(page, discoverPage);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the page in a cached response, parsed earlier in this process if possible.
+     */
+    private DiscoverPage parseCached(String url, CachedResponse cached) {
+        DiscoverPage page = mCache.getParsed(url);
+        if (page != null) {
+            return page;
+        }
+        try {
+            long start = Metrics.start();
+            page = MovieJsonParser.parseDiscoverPage(new ByteArrayInputStream(cached.body));
+            Metrics.stop(Metrics.PARSE, start);
+            mCache.putParsed(url, page);
+            return page;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Cached response for " + url + " couldn't be parsed", e);
+            return null;
+        }
+    }
+
+    /**
+     * Requests a single page, unless the same request is already on its way for another
+     * fetch, in which case the waiter is handed its result too. Doesn't wait for it; the
+     * waiter's page is posted from onRequestDone.
+     *
+     * @param cached the stale response to revalidate, or null for a plain request.
+     */
+    private void requestPage(String url, CachedResponse cached, Waiter waiter) {
+        // A revalidation and a plain request for the same URL don't mean the same thing
+        // when they come back empty, so they're kept apart.
+        String key = (cached != null ? "revalidate " : "") + url;
+        PageRequest request;
+        synchronized (mInFlight) {
+            request = mInFlight.get(key);
+            if (request != null) {
+                // Waiting on a request in a less urgent lane moves it up to this one.
+                mRateLimiter.raise(request.getTicket(), waiter.mPriority);
+                request.mWaiters.add(waiter);
+                return;
+            }
+            request = new PageRequest(key, url, cached, waiter);
+            mInFlight.put(key, request);
+        }
+        request.start();
+        // Started first, so that if the fetch was cancelled in between, the request is
+        // waiting for a token and can be taken out of line.
+        if (!waiter.mOwner.addRequest(request)) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Hands a request's result to every fetch waiting for it. If the fetch that made it was
+     * cancelled before it was done, the others make it again. Called on any thread.
+     *
+     * @param page see readPage, or null if the request failed or was cancelled.
+     */
+    private void onRequestDone(PageRequest request, DiscoverPage page) {
+        ArrayList<Waiter> waiters;
+        synchronized (mInFlight) {
+            mInFlight.remove(request.mKey);
+            waiters = new ArrayList<>(request.mWaiters);
+        }
+        request.mOwner.removeRequest(request);
+        // Cut off half way, so the null says nothing about the page.
+        boolean abandoned = page == null && request.mOwner.isCancelled();
+        for (Waiter waiter : waiters) {
+            if (waiter.mOwner.isCancelled()) {
+                continue;
+            }
+            if (abandoned) {
+                if (!mExecutor.isShutdown()) {
+                    requestPage(request.getUrl(), request.mCached, waiter);
+                }
+            } else if (waiter.mRefresh) {
+                if (page != null) {
+                    postPage(waiter.mOwner, waiter.mPage, page, true);
+                }
+            } else {
+                postPage(waiter.mOwner, waiter.mPage, page, false);
+                Metrics.stop(Metrics.PAGE, waiter.mStart);
+            }
+        }
+    }
+
+    /**
+     * Parses a page of the discover query from TMDb's response, storing the response in
+     * the cache and the movies in MovieStore on the way. Runs on a worker thread.
+     *
+     * @param cached the stale response that was being revalidated, or null.
+     * @return the page, or null if TMDb answered 304 or an error.
+     */
+    private DiscoverPage readPage(String urlString, CachedResponse cached,
+                                      HttpClient.Response response) throws IOException {
+        ConditionalGet<DiscoverPage> result = ConditionalGet.read(cached, response,
+                System.currentTimeMillis(), DISCOVER_PARSER);
+        if (result.outcome == ConditionalGet.FAILED) {
+            Log.e(LOG_TAG, "HTTP " + response.getCode() + " for " + urlString
+                    + ". Is the API key for TMDb missing?");
+            return null;
+        }
+        mCache.put(urlString, result.entry);
+        if (result.outcome == ConditionalGet.NOT_MODIFIED) {
+            return null;
+        }
+        mCache.putParsed(urlString, result.parsed);
+        // Keep the local movie database up to date, one transaction per page.
+        mStore.insertMovies(result.parsed.movies);
+        return result.parsed;
+    }
+
+    /**
+     * One call to fetchPages. Only touched on the main thread, apart from isCancelled()
+     * and the connection bookkeeping used by the worker threads.
+     * Its pages are put back in order by a PageSequencer.
+     */
+    public static class PageFetch implements HttpClient.ConnectionTracker, MoviePager.Fetch {
+        private final MovieFetcher mFetcher;
+        private final PageSequencer mSequencer;
+        // Going by the last page that arrived.
+        private int mTotalPages = DiscoverPage.UNKNOWN_TOTAL;
+        // Read by the workers as they request each page.
+        private volatile int mPriority;
+        private volatile boolean mCancelled;
+        // Requests currently open for this fetch, guarded by itself.
+        private final HashSet<HttpURLConnection> mConnections = new HashSet<>();
+        // Requests this fetch made that haven't finished, guarded by mConnections.
+        private final HashSet<RateLimitedRequest> mRequests = new HashSet<>();
+
+        PageFetch(MovieFetcher fetcher, int firstPage, int pageCount, HashSet<Long> seenIds,
+                  int priority, PageSequencer.Callback callback) {
+            mFetcher = fetcher;
+            mSequencer = new PageSequencer(firstPage, pageCount, seenIds, callback);
+            mPriority = priority;
+        }
+
+        /**
+         * @return the RateLimiter lane the fetch's requests go in.
+         */
+        public int getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * Same as MovieFetcher.raise.
+         */
+        @Override
+        public void raise(int priority) {
+            mFetcher.raise(this, priority);
+        }
+
+        /**
+         * Pages requested from now on go in the more urgent lane. See MovieFetcher.raise for
+         * the ones already requested.
+         */
+        void raiseLane(int priority) {
+            if (priority < mPriority) {
+                mPriority = priority;
+            }
+        }
+
+        /**
+         * Stops delivering pages, takes the fetch's requests still waiting for a token out
+         * of the RateLimiter's line, so they don't use one, and disconnects any request still
+         * open, so a worker blocked reading a response gives up straight away instead of
+         * finishing a download nobody will see.
+         */
+        @Override
+        public void cancel() {
+            final ArrayList<HttpURLConnection> open;
+            ArrayList<RateLimitedRequest> requests;
+            synchronized (mConnections) {
+                mCancelled = true;
+                open = new ArrayList<>(mConnections);
+                mConnections.clear();
+                requests = new ArrayList<>(mRequests);
+                mRequests.clear();
+            }
+            for (RateLimitedRequest request : requests) {
+                request.cancel();
+            }
+            if (open.isEmpty()) {
+                return;
+            }
+            // Closing the socket can block, so it's kept off the main thread (and off the
+            // fetch workers, which may all be busy with these very requests).
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (HttpURLConnection connection : open) {
+                        connection.disconnect();
+                    }
+                }
+            }, "MovieFetcher cancel").start();
+        }
+
+        /**
+         * @return false if the fetch has already been cancelled, and the request shouldn't
+         *         be made.
+         */
+        @Override
+        public boolean onOpen(HttpURLConnection connection) {
+            synchronized (mConnections) {
+                return !mCancelled && mConnections.add(connection);
+            }
+        }
+
+        @Override
+        public void onClose(HttpURLConnection connection) {
+            synchronized (mConnections) {
+                mConnections.remove(connection);
+            }
+        }
+
+        /**
+         * @return false if the fetch has already been cancelled, and the request should be
+         *         too.
+         */
+        boolean addRequest(RateLimitedRequest request) {
+            synchronized (mConnections) {
+                return !mCancelled && mRequests.add(request);
+            }
+        }
+
+        void removeRequest(RateLimitedRequest request) {
+            synchronized (mConnections) {
+                mRequests.remove(request);
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * A newer copy of a page that was already delivered from the cache. Only movies not
+         * handed out before are passed on.
+         */
+        void onPageRefreshed(int page, ArrayList<Movie> movies) {
+            if (!mCancelled) {
+                mSequencer.onPageRefreshed(page, movies);
+            }
+        }
+
+        @Override
+        public int getNextPage() {
+            return mSequencer.getNextPage();
+        }
+
+        @Override
+        public int getTotalPages() {
+            return mTotalPages;
+        }
+
+        /**
+         * @param discoverPage null if the page couldn't be loaded.
+         */
+        void onPageArrived(int page, DiscoverPage discoverPage) {
+            if (mCancelled) {
+                return;
+            }
+            if (discoverPage != null && discoverPage.totalPages != DiscoverPage.UNKNOWN_TOTAL) {
+                // Before it's handed on, which may finish the fetch.
+                mTotalPages = discoverPage.totalPages;
+            }
+            mSequencer.onPageArrived(page, discoverPage != null ? discoverPage.movies : null);
+        }
+    }
+}
@@ -1,23 +1,84 @@
 package com.meg_codes.android.popularmoviesstage1;
 
 import android.content.Intent;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Paired with MovieGridFragment, which contains most of the functionality of
  * this screen.
- * Builds the menu (Credits and Settings).
+ * Builds the menu (Search, Credits and Settings). What's typed in the search action is
+ * handed to MovieGridFragment on every keystroke; closing it, or pressing Back, shows every
+ * movie again.
+ * Debug builds also get two menu items for Metrics: an overlay of the timings and
+ * counters over the grid, and a dump of them to a file.
  *
  */
 public class MovieGridActivity extends AppCompatActivity {
+    private static final String LOG_TAG = MovieGridActivity.class.getSimpleName();
+    private static final long METRICS_REFRESH_MILLIS = 1000;
+
+    // Null until the menu is created.
+    private SearchView mSearchView;
+    // Debug builds only: the metrics overlay, null until it's first shown.
+    private TextView mMetricsOverlay;
+    private final Runnable mRefreshMetrics = new Runnable() {
+        @Override
+        public void run() {
+            mMetricsOverlay.setText(Metrics.summary());
+            mMetricsOverlay.postDelayed(this, METRICS_REFRESH_MILLIS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_movie_grid);
+        if (BuildConfig.DEBUG && savedInstanceState != null
+                && savedInstanceState.getBoolean("metrics_overlay")) {
+            showMetricsOverlay(true);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (isMetricsOverlayShown()) {
+            mRefreshMetrics.run();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        if (mMetricsOverlay != null) {
+            mMetricsOverlay.removeCallbacks(mRefreshMetrics);
+        }
+        super.onPause();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean("metrics_overlay", isMetricsOverlayShown());
     }
 
 
@@ -25,6 +86,37 @@ public class MovieGridActivity extends AppCompatActivity {
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu_movie_grid, menu);
+
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        mSearchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        mSearchView.setQueryHint(getString(R.string.action_search));
+        mSearchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // The results are already showing, so just hide the keyboard.
+                getGridFragment().setSearchQuery(query);
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                getGridFragment().setSearchQuery(newText);
+                return true;
+            }
+        });
+        mSearchView.setOnCloseListener(new SearchView.OnCloseListener() {
+            @Override
+            public boolean onClose() {
+                // Closing the search shows every movie again.
+                getGridFragment().setSearchQuery("");
+                return false;
+            }
+        });
+
+        menu.findItem(R.id.action_metrics_overlay)
+                .setVisible(BuildConfig.DEBUG)
+                .setChecked(isMetricsOverlayShown());
+        menu.findItem(R.id.action_metrics_dump).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -42,9 +134,94 @@ public class MovieGridActivity extends AppCompatActivity {
         } else if (id == R.id.action_credits) {
             startActivity(new Intent(this, Credits.class));
             return true;
+        } else if (id == R.id.action_metrics_overlay) {
+            item.setChecked(!item.isChecked());
+            showMetricsOverlay(item.isChecked());
+            return true;
+        } else if (id == R.id.action_metrics_dump) {
+            dumpMetrics();
+            return true;
         }
 
 
         return super.onOptionsItemSelected(item);
     }
+
+    @Override
+    public void onBackPressed() {
+        // Back closes an open search before it leaves the screen.
+        if (mSearchView != null && !mSearchView.isIconified()) {
+            mSearchView.setQuery("", false);
+            mSearchView.setIconified(true);
+            return;
+        }
+        super.onBackPressed();
+    }
+
+    private boolean isMetricsOverlayShown() {
+        return mMetricsOverlay != null && mMetricsOverlay.getVisibility() == View.VISIBLE;
+    }
+
+    /**
+     * Shows or hides the metrics overlay, a small block of text over the bottom of the
+     * grid, brought up to date every second. It isn't clickable, so the grid underneath
+     * can still be scrolled and tapped.
+     */
+    private void showMetricsOverlay(boolean show) {
+        if (show && mMetricsOverlay == null) {
+            mMetricsOverlay = new TextView(this);
+            mMetricsOverlay.setTypeface(Typeface.MONOSPACE);
+            mMetricsOverlay.setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+            mMetricsOverlay.setTextColor(Color.WHITE);
+            mMetricsOverlay.setBackgroundColor(0xb0000000);
+            mMetricsOverlay.setPadding(8, 8, 8, 8);
+            addContentView(mMetricsOverlay, new FrameLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+                    Gravity.BOTTOM | Gravity.START));
+        }
+        if (mMetricsOverlay == null) {
+            return;
+        }
+        mMetricsOverlay.removeCallbacks(mRefreshMetrics);
+        mMetricsOverlay.setVisibility(show ? View.VISIBLE : View.GONE);
+        if (show) {
+            mRefreshMetrics.run();
+        }
+    }
+
+    /**
+     * Writes the metrics to a file off the main thread, and says where.
+     */
+    private void dumpMetrics() {
+        new AsyncTask<Void, Void, File>() {
+            @Override
+            protected File doInBackground(Void... params) {
+                // Read it back with
+                // "adb shell run-as com.meg_codes.android.popularmoviesstage1 cat files/...".
+                String header = "build: " + BuildConfig.VERSION_NAME + " ("
+                        + BuildConfig.VERSION_CODE + ", " + BuildConfig.BUILD_TYPE + ")\n"
+                        + "device: " + Build.MANUFACTURER + " " + Build.MODEL + ", API "
+                        + Build.VERSION.SDK_INT + "\n";
+                try {
+                    return Metrics.dumpToFile(getFilesDir(), header);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Couldn't dump metrics", e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(File file) {
+                String message = file != null
+                        ? getString(R.string.metrics_dumped, file.getAbsolutePath())
+                        : getString(R.string.metrics_dump_failed);
+                Log.d(LOG_TAG, message);
+                Toast.makeText(MovieGridActivity.this, message, Toast.LENGTH_LONG).show();
+            }
+        }.execute();
+    }
+
+    private MovieGridFragment getGridFragment() {
+        return (MovieGridFragment) getSupportFragmentManager().findFragmentById(R.id.fragment);
+    }
 }
\ No newline at end of file
@@ -1,48 +1,105 @@
 package com.meg_codes.android.popularmoviesstage1;
 
-import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
+import android.content.res.Resources;
+import android.graphics.Rect;
 import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.GridView;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
-import com.squareup.picasso.Picasso;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 
 /**
  * Main fragment for user interaction.
- * This serves as the starting screen with a grid view of the top 20
- * most popular movies from The Movie Database API. These top 20 most
- * popular can be sorted by popularity or highest average vote, descending.
+ * This serves as the starting screen with a grid view of the most popular
+ * movies from The Movie Database API, starting with the first few pages of results
+ * (20 movies each, see R.integer.discover_page_count) and loading more as the grid
+ * is scrolled. These can be sorted by popularity or highest average vote, descending,
+ * or show the newest, now playing or upcoming movies, each of which is its own query to
+ * TMDb (see DiscoverQuery).
  */
-public class MovieGridFragment extends Fragment {
+public class MovieGridFragment extends Fragment implements MovieLoaderFragment.Callbacks {
     private final String LOG_TAG = MovieGridFragment.class.getSimpleName();
-    private ImageAdapter mPosterAdapter;
+    // How long posters have to stay on screen before their detail screens are prefetched.
+    private static final long ON_SCREEN_PREFETCH_DELAY_MILLIS = 1500;
+    private PosterAdapter mPosterAdapter;
+    // Every movie loaded for the query on screen. The adapter shows the ones that pass
+    // mFilter, in the same order; with no filter or search it shows this very list.
     private ArrayList<Movie> mMovieList;
+    private MovieFilter mFilter = MovieFilter.NONE;
+    // Built from mMovieList when a filter is applied, dropped whenever mMovieList changes.
+    private MovieFilterIndex mFilterIndex;
+    // Bumped whenever movies are added to mMovieList or it's replaced. mMovieList was last
+    // sorted by mSortedCriterion at mSortedVersion, so sorting again can be skipped.
+    private int mListVersion;
+    private int mSortedVersion = -1;
+    private int mSortedCriterion = -1;
+    private final MovieSortWorker mSortWorker = new MovieSortWorker(new Executor() {
+        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mMainHandler.post(command);
+        }
+    });
+    // Titles of the movies in mMovieList, for the search action. Pages are added to it as
+    // they come in, and it's rebuilt when mMovieList is replaced.
+    private TitleIndex mTitleIndex = new TitleIndex();
+    // What's typed in the search action, empty when not searching.
+    private String mSearchQuery = "";
+    // Retained across rotation, so loading isn't restarted every time (see MovieLoaderFragment).
+    private MovieLoaderFragment mMovieLoader;
+    private PosterLoader mPosterLoader;
+    private DetailPrefetcher mDetailPrefetcher;
+    private RecyclerView mGridView;
+    private GridLayoutManager mLayoutManager;
+    // Where to scroll to once movies restored after the process died are back, or -1.
+    private int mPendingScrollPosition = -1;
+    // Posters up to this adapter position have been asked for ahead of time.
+    private int mPrefetchedUpTo;
+    private int mLastFirstVisibleItem;
+    // The grid is showing a MovieSnapshot, which the first fresh page replaces.
+    private boolean mShowingSnapshot;
+    // Debug builds only: layout passes of the grid since the last page came in.
+    private int mLayoutPasses;
+
+    // Prefetches the detail screens of the posters on screen, once the grid has stayed
+    // still for ON_SCREEN_PREFETCH_DELAY_MILLIS (see scheduleOnScreenPrefetch).
+    private final Runnable mOnScreenPrefetch = new Runnable() {
+        @Override
+        public void run() {
+            if (mGridView == null
+                    || mGridView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE) {
+                return;
+            }
+            int first = mLayoutManager.findFirstVisibleItemPosition();
+            if (first == RecyclerView.NO_POSITION) {
+                return;
+            }
+            int last = Math.min(mLayoutManager.findLastVisibleItemPosition(),
+                    mPosterAdapter.getItemCount() - 1);
+            for (int i = first; i <= last; i++) {
+                mDetailPrefetcher.prefetch(mPosterAdapter.getItem(i), DetailPrefetcher.ON_SCREEN);
+            }
+        }
+    };
 
     public MovieGridFragment() {
     }
@@ -52,304 +109,645 @@ public class MovieGridFragment extends Fragment {
                              Bundle savedInstanceState) {
         View rootView = inflater.inflate(R.layout.fragment_movie_grid, container, false);
 
-        // Grid view that is linked to mPosterAdapter. Displays movie posters.
-        GridView movieView = (GridView) rootView.findViewById(R.id.fragment_moviegrid);
+        // Grid of movie posters, linked to mPosterAdapter. The columns are worked out the
+        // way GridView's auto_fit did, and spaced out by the decoration below.
+        RecyclerView movieView = (RecyclerView) rootView.findViewById(R.id.fragment_moviegrid);
+        final int columns = PosterSizes.gridColumnCount(getActivity());
+        mLayoutManager = new GridLayoutManager(getActivity(), columns);
+        movieView.setLayoutManager(mLayoutManager);
+        // The grid fills the screen whatever it shows, so adding movies doesn't make it
+        // measure itself again.
+        movieView.setHasFixedSize(true);
+        final int spacing = getResources().getDimensionPixelSize(R.dimen.grid_horizontal_spacing);
+        final int verticalSpacing =
+                getResources().getDimensionPixelSize(R.dimen.grid_vertical_spacing);
+        movieView.addItemDecoration(new RecyclerView.ItemDecoration() {
+            @Override
+            public void getItemOffsets(Rect outRect, View view, RecyclerView parent,
+                                       RecyclerView.State state) {
+                // Splits the spacing between the columns so every cell is as wide as the
+                // others (see PosterSizes.gridPosterWidth).
+                int column = Math.max(0, parent.getChildAdapterPosition(view)) % columns;
+                outRect.left = column * spacing / columns;
+                outRect.right = spacing - (column + 1) * spacing / columns;
+                outRect.bottom = verticalSpacing;
+            }
+        });
         movieView.setAdapter(mPosterAdapter);
+        mGridView = movieView;
+
+        // Loads the next page of movies in the background once the user scrolls close
+        // to the end of the grid, and the posters of the next rows before they're visible.
+        // Poster loading is held back while the grid is flung.
+        movieView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+                    mPosterLoader.pause();
+                } else {
+                    mPosterLoader.resume();
+                }
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    scheduleOnScreenPrefetch();
+                } else {
+                    recyclerView.removeCallbacks(mOnScreenPrefetch);
+                }
+            }
 
-        // Makes each poster interactive, takes user to a fragment with details.
-        // Movie object implements Parcelable, is sent as an intent extra here.
-        movieView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            public void onItemClick(AdapterView<?> parent, View v,
-                                    int position, long id) {
-                Intent detailIntent = new Intent(v.getContext(), MovieDetailActivity.class);
-                Movie movie = mPosterAdapter.getItem(position);
-                detailIntent.putExtra("movie", movie);
-                startActivity(detailIntent);
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int firstVisibleItem = mLayoutManager.findFirstVisibleItemPosition();
+                if (firstVisibleItem == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                int visibleItemCount =
+                        mLayoutManager.findLastVisibleItemPosition() - firstVisibleItem + 1;
+                mMovieLoader.getPager().onScrolled(firstVisibleItem + visibleItemCount,
+                        mPosterAdapter.getItemCount());
+                prefetchPosters(firstVisibleItem, visibleItemCount);
             }
         });
+
+        if (BuildConfig.DEBUG) {
+            movieView.getViewTreeObserver().addOnGlobalLayoutListener(
+                    new ViewTreeObserver.OnGlobalLayoutListener() {
+                        @Override
+                        public void onGlobalLayout() {
+                            mLayoutPasses++;
+                        }
+                    });
+        }
         return rootView;
     }
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        // Initialize global ImageAdapter variable.
-        mPosterAdapter = new ImageAdapter(getActivity(), 0, new ArrayList<Movie>());
-        if (savedInstanceState == null || !savedInstanceState.containsKey("movies")) {
-            // When there is no saved instance state, query TMDb API.
-            mMovieList = new ArrayList<Movie>();
-            FetchMovieDataTask fetch = new FetchMovieDataTask();
-            fetch.execute();
-        } else {
-            // If there is a saved instance state, use that instead of API query.
-            mMovieList = savedInstanceState.getParcelableArrayList("movies");
-            if (mMovieList != null) {
-
-                for (Movie m : mMovieList) {
-                    mPosterAdapter.add(m);
-                }
+        // Initialize global PosterAdapter variable.
+        mPosterAdapter = new PosterAdapter();
+        mPosterLoader = new PosterLoader(getActivity());
+        mDetailPrefetcher = DetailPrefetcher.getInstance(getActivity());
+        mMovieLoader = MovieLoaderFragment.get(getFragmentManager());
+        mMovieList = new ArrayList<Movie>();
+        mFilter = getFilterPreference();
+        if (mMovieLoader.isStarted()) {
+            // Re-created by a rotation: the retained loader still has everything loaded so
+            // far. If nothing has come in yet, the snapshot is shown again.
+            ArrayList<Movie> movies = mMovieLoader.getMovies();
+            if (movies.isEmpty()) {
+                showSnapshot(mMovieLoader.getQuery());
+            } else {
+                showMovies(movies);
             }
+            return;
+        }
+
+        int nextPage = 1;
+        String sortOrder = getSortPreference();
+        long[] movieIds = null;
+        if (savedInstanceState != null) {
+            // The process died since the last instance saved its state. The movies it showed
+            // are looked up again by id (see onMoviesRestored), further pages carry on from
+            // where it got to, in the query it was showing. If the preference has changed
+            // since, onResume switches.
+            movieIds = savedInstanceState.getLongArray("movie_ids");
+            nextPage = savedInstanceState.getInt("next_page", 1);
+            sortOrder = savedInstanceState.getString("sort_order", sortOrder);
+            mPendingScrollPosition = savedInstanceState.getInt("scroll_position", -1);
         }
+        DiscoverQuery query = DiscoverQuery.forPreference(sortOrder);
+        if (movieIds == null) {
+            // Nothing to restore, so query TMDb API. Until the first page is back, the last
+            // good results are shown from the snapshot.
+            nextPage = 1;
+            showSnapshot(query);
+        }
+        mMovieLoader.start(getActivity(), query, nextPage, movieIds,
+                getResources().getInteger(R.integer.grid_prefetch_distance),
+                getResources().getInteger(R.integer.discover_page_count));
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        // Receives whatever finished loading while this grid wasn't attached.
+        mMovieLoader.setCallbacks(this);
+        scheduleOnScreenPrefetch();
+    }
+
+    @Override
+    public void onStop() {
+        // From here on, results are held by the loader until a grid is started again
+        // (after onSaveInstanceState, so nothing that arrives now is missing from the bundle).
+        mMovieLoader.setCallbacks(null);
+        if (mGridView != null) {
+            mGridView.removeCallbacks(mOnScreenPrefetch);
+        }
+        super.onStop();
     }
 
+    /**
+     * Saves only the ids of the movies and where the grid was scrolled to, not the movies
+     * themselves. They're only needed if the process dies: on a rotation the retained
+     * loader still has them.
+     */
     @Override
     public void onSaveInstanceState(Bundle outState) {
-        outState.putParcelableArrayList("movies", mMovieList);
+        long start = System.nanoTime();
+        // While the snapshot is up, no page has come in yet, and the next instance simply
+        // shows the snapshot again.
+        if (!mShowingSnapshot) {
+            outState.putLongArray("movie_ids", MovieRepository.idsOf(mMovieList));
+            outState.putInt("next_page", mMovieLoader.getPager().getNextPage());
+        }
+        outState.putString("sort_order", mMovieLoader.getQuery().getName());
+        if (mGridView != null) {
+            outState.putInt("scroll_position", mLayoutManager.findFirstVisibleItemPosition());
+        }
+        if (BuildConfig.DEBUG) {
+            logSavedStateSize(outState, System.nanoTime() - start);
+        }
         super.onSaveInstanceState(outState);
     }
 
+    /**
+     * Picks up changes made in SettingsActivity. Sorting happens on a worker (see
+     * sortMoviesByPref), and is skipped when nothing has changed, so coming back to the
+     * grid costs next to nothing on the main thread.
+     */
     @Override
     public void onResume() {
         super.onResume();
-        if (mPosterAdapter != null) {
-            sortMoviesByPref(mPosterAdapter, mMovieList);
+        long start = System.nanoTime();
+        MovieFilter filter = getFilterPreference();
+        if (!filter.equals(mFilter)) {
+            mFilter = filter;
+            updateAdapter();
+        }
+        DiscoverQuery query = DiscoverQuery.forPreference(getSortPreference());
+        if (query != mMovieLoader.getQuery()) {
+            // The preference was changed in SettingsActivity, so show that query's own
+            // results. Its first page has usually been loaded in the background already.
+            ArrayList<Movie> movies = mMovieLoader.switchQuery(query,
+                    getResources().getInteger(R.integer.discover_page_count));
+            showMovies(movies);
+            mShowingSnapshot = false;
+            if (movies.isEmpty()) {
+                showSnapshot(query);
+            }
+        } else if (mPosterAdapter != null) {
+            sortMoviesByPref();
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "onResume: " + (System.nanoTime() - start) / 1000
+                    + " us on the main thread");
         }
     }
 
     /**
-     * Custom Adapter for loading images into the movie grid view in the fragment_movie_grid file.
+     * Adds each page of movies to mPosterAdapter (the ones that pass the filter) as soon as
+     * MoviePager hands it over, so the grid starts filling in before the later pages have
+     * arrived. The page goes in as a single range insertion, so only the new cells are laid
+     * out, not the whole grid.
+     * Pages added below movies already in the grid are off screen, so their posters are
+     * fetched into Picasso's memory cache ahead of time, at the grid's cell size, before
+     * the user scrolls down to them.
+     *
+     * @param page the TMDb page number, pages arrive in order.
+     * @param movies the page's Movie objects, already de-duplicated against earlier pages.
      */
-    public class ImageAdapter extends ArrayAdapter<Movie> {
-        private Context context;
-        private ArrayList<Movie> movies;
-
-        public ImageAdapter(Context c, int resource, ArrayList<Movie> m) {
-            super(c, resource, m);
-            context = c;
-            movies = m;
+    @Override
+    public void onPageLoaded(int page, ArrayList<Movie> movies) {
+        if (mShowingSnapshot && movies.size() > 0) {
+            // Fresh results are in, so the snapshot's make way for them.
+            mShowingSnapshot = false;
+            showMovies(new ArrayList<Movie>());
         }
-
-        public int getCount() {
-            return movies.size();
+        if (mPosterAdapter != null && movies.size() > 0) {
+            long start = System.nanoTime();
+            if (mPosterAdapter.getItemCount() > 0) {
+                for (Movie m : movies) {
+                    if (mFilter.matches(m)) {
+                        mPosterLoader.prefetch(m.getPosterPath());
+                    }
+                }
+            }
+            mMovieList.addAll(movies);
+            mListVersion++;
+            mFilterIndex = null;
+            mTitleIndex.addAll(movies);
+            updateAdapter();
+            // The first pages fill the screen without any scrolling.
+            scheduleOnScreenPrefetch();
+            if (BuildConfig.DEBUG) {
+                Log.d(LOG_TAG, "Page " + page + ": " + movies.size() + " movies, "
+                        + (System.nanoTime() - start) / 1000 + " us on the main thread, "
+                        + mLayoutPasses + " grid layout passes since the last page");
+                mLayoutPasses = 0;
+            }
         }
+    }
 
-        public Movie getItem(int position) {
-            return movies.get(position);
+    /**
+     * Once every page of a request is in, sorts the movies by the saved user preference.
+     * If this is the initial run, the Preferences Manager sets the default to "popularity."
+     */
+    @Override
+    public void onPagesFinished() {
+        if (mPosterAdapter != null && mMovieList.size() > 0) {
+            sortMoviesByPref();
         }
+    }
 
-        public long getItemId(int position) {
-            return position;
+    /**
+     * The movies shown before the process died, looked up by the ids in the saved state.
+     */
+    @Override
+    public void onMoviesRestored(ArrayList<Movie> movies) {
+        if (mPosterAdapter == null) {
+            return;
         }
-
-        public ArrayList<Movie> getMovies() {
-            return movies;
+        mShowingSnapshot = false;
+        showMovies(movies);
+        if (mGridView != null && mPendingScrollPosition > 0
+                && mPendingScrollPosition < movies.size()) {
+            mLayoutManager.scrollToPosition(mPendingScrollPosition);
         }
+        mPendingScrollPosition = -1;
+    }
 
-        // create a new ImageView for each item referenced by the Adapter
-        public View getView(int position, View convertView, ViewGroup parent) {
-            ImageView imageView;
-            if (convertView == null) {
-                // If it isn't recycled, initialize some attributes
-                imageView = new ImageView(parent.getContext());
-                imageView.setLayoutParams(new GridView.LayoutParams(185, 278));
-                imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                imageView.setPadding(16, 4, 16, 4);
-            } else {
-                imageView = (ImageView) convertView;
-            }
-
-            // Picasso library, populates GridView with poster URLs
-            // (full URL saved into Movie object)
-            Picasso
-                    .with(context)
-                    .load(movies.get(position).getUrl())
-                    .into(imageView);
-            return imageView;
+    /**
+     * Shows the query's last good results saved in its MovieSnapshot, if there are any.
+     * Reading the snapshot is quick enough to do here, before the grid is first drawn.
+     */
+    private void showSnapshot(DiscoverQuery query) {
+        ArrayList<Movie> movies = new MovieSnapshot(getActivity(), query).read();
+        if (movies != null && movies.size() > 0) {
+            // So the detail screen can find them by id.
+            MovieRepository.getInstance(getActivity()).putAll(movies);
+            showMovies(movies);
+            mShowingSnapshot = true;
         }
     }
 
     /**
-     * Sorts the ImageAdapter's list of movies to reflect the user preference,
-     * either "sort by most popular (default)" or "sort by highest vote average."
-     *
-     * @param movies the ImageAdapter of Movie objects to be sorted, must have at least 1 object.
-     *
-     * @param movieList also needs to be sorted, is used to repopulate the image adapter (in the
-     *                  method "onSaveInstanceState" above) if the activity is re-created, for
-     *                  example on screen rotation.
+     * Replaces the grid's movies, for a switch to another query or to or from a snapshot.
      */
-    public void sortMoviesByPref(ImageAdapter movies, ArrayList movieList) {
-        // Get user preferences from the Preference Manager.
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+    private void showMovies(ArrayList<Movie> movies) {
+        mPosterLoader.cancelPrefetch();
+        mPrefetchedUpTo = 0;
+        mLastFirstVisibleItem = 0;
+        mMovieList.clear();
+        mMovieList.addAll(movies);
+        mListVersion++;
+        mFilterIndex = null;
+        mTitleIndex = new TitleIndex();
+        mTitleIndex.addAll(movies);
+        updateAdapter();
+    }
 
-        // prefs.getString will take care of assigning a default if none has been assigned yet.
-        String sortCriteria = prefs.getString(
-                getString(R.string.pref_sort_order_key),
-                getString(R.string.pref_sort_order_default));
+    /**
+     * Shows only the movies with titles matching the query, on top of the filter, as the
+     * user types in the search action. An empty query shows every movie again.
+     */
+    public void setSearchQuery(String query) {
+        query = query != null ? query : "";
+        if (query.equals(mSearchQuery)) {
+            return;
+        }
+        mSearchQuery = query;
+        if (mPosterAdapter != null) {
+            updateAdapter();
+        }
+    }
 
-        // If the ImageAdapter has at least one object, sort results by either vote or popularity.
-        // Update the Movie ArrayList to make sure state is stored
-        if (movies != null && sortCriteria != null) {
-            if (sortCriteria.equals("vote")) {
-                movies.sort(new Comparator<Movie>() {
-                    @Override
-                    public int compare(Movie lhs, Movie rhs) {
-                        return rhs.getVoteAverage().compareTo(lhs.getVoteAverage());
-                    }
-                });
-            } else if (sortCriteria.equals("popularity")) {
-                movies.sort(new Comparator<Movie>() {
-                    @Override
-                    public int compare(Movie lhs, Movie rhs) {
-                        return rhs.getPopularity().compareTo(lhs.getPopularity());
-                    }
-                });
+    /**
+     * Brings the adapter in line with mMovieList, the filter and the search query. The grid
+     * is only told what changed (see MovieListDiff), and nothing at all when the movies it
+     * shows are the same.
+     */
+    private void updateAdapter() {
+        ArrayList<Movie> visible;
+        if (mFilter.isEmpty()) {
+            visible = mMovieList;
+        } else {
+            if (mFilterIndex == null) {
+                mFilterIndex = MovieFilterIndex.build(mMovieList);
             }
-            movieList.clear();
-            movieList.addAll(movies.getMovies());
+            visible = mFilterIndex.filter(mFilter);
+        }
+        if (mSearchQuery.length() > 0) {
+            visible = mTitleIndex.filter(visible, mSearchQuery);
         }
+        mPosterAdapter.setMovies(visible);
     }
 
     /**
-     * AsyncTask that handles getting data from The Movie Database.
-     * <p/>
-     * doInBackground - gets JSON string from TMDb API, calls a method that
-     * turns the string into an array of Movie objects with details filled in, and then
-     * returns it to onPostExecute.
-     * <p/>
-     * onPostExecute - adds the Movie objects to the class variable mPosterAdapter, which
-     * is set on the opening GridView.
+     * Adapter for loading posters into the movie grid in the fragment_movie_grid file.
+     * It holds on to the list it's given rather than copying it, and keeps only the ids of
+     * what it shows, to work out what changed the next time.
      */
-    public class FetchMovieDataTask extends AsyncTask<Void, Void, ArrayList<Movie>> {
-
-        private final String LOG_TAG = FetchMovieDataTask.class.getSimpleName();
-
-        @Override
-        protected ArrayList<Movie> doInBackground(Void... params) {
-            // These two need to be declared outside the try/catch
-            // so that they can be closed in the finally block.
-            HttpURLConnection urlConnection = null;
-            BufferedReader reader = null;
-
-            // Will contain the raw JSON response as a string.
-            String movieJsonStr = null;
-
-            try {
-                // Construct the URL for the Movie Database query
-                String BASE_URL = "http://api.themoviedb.org/3/discover/movie?";
-                String POPULARITY_URL = "sort_by=popularity.desc";
-
-                // API key removed, please put yours between the empty quotation marks below.
-                String API_KEY = "&api_key=" + "";
-                URL url = new URL(BASE_URL + POPULARITY_URL + API_KEY);
-
-                // Create the request to The Movie Db, and open the connection
-                urlConnection = (HttpURLConnection) url.openConnection();
-                urlConnection.setRequestMethod("GET");
-                urlConnection.connect();
-
-                // Read the input stream into a String
-                InputStream inputStream = urlConnection.getInputStream();
-                StringBuffer buffer = new StringBuffer();
-                if (inputStream == null) {
-                    // Nothing to do.
-                    return null;
-                }
-                reader = new BufferedReader(new InputStreamReader(inputStream));
-
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                    // But it does make debugging a *lot* easier if you print out the completed
-                    // buffer for debugging.
-                    buffer.append(line + "\n");
-                }
+    public class PosterAdapter extends RecyclerView.Adapter<PosterViewHolder> {
+        private List<Movie> mMovies = new ArrayList<>();
+        private long[] mShownIds = new long[0];
+        // Passes a MovieListDiff on to the grid.
+        private final MovieListDiff.Target mDiffTarget = new MovieListDiff.Target() {
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position, count);
+            }
 
-                if (buffer.length() == 0) {
-                    // Stream was empty.  No point in parsing.
-                    return null;
-                }
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(fromPosition, toPosition);
+            }
 
-                movieJsonStr = buffer.toString();
-
-            } catch (IOException e) {
-                Log.e(LOG_TAG, "Error! No data from the API. Is the API key for TMDb missing? ", e);
-                // If the code didn't successfully get the  data, there's no point in attempting
-                // to parse it.
-                return null;
-            } finally {
-                // End connection and close the reader.
-                if (urlConnection != null) {
-                    urlConnection.disconnect();
-                }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (final IOException e) {
-                        Log.e("MovieGridFragment", "Error closing stream", e);
-                    }
-                }
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position, count);
             }
 
-            // Try to parse the JSON string
-            try {
-                return getMovieDetails(movieJsonStr);
-            } catch (JSONException e) {
-                Log.e(LOG_TAG, e.getMessage(), e);
-                e.printStackTrace();
+            @Override
+            public void onChanged() {
+                notifyDataSetChanged();
             }
-            return null;
+        };
+
+        public PosterAdapter() {
+            // Lets the grid tell a moved poster from a changed one.
+            setHasStableIds(true);
+        }
+
+        /**
+         * @return the ids of the movies the grid was last told about.
+         */
+        public long[] getShownIds() {
+            return mShownIds;
         }
 
         /**
-         * Parses the JSON string from the API query, populates an ArrayList with Movie objects
-         * constructed with the JSON data, and returns the ArrayList.
+         * Shows the movies, with a diff worked out elsewhere (see MovieSortWorker).
          *
-         * @param movieJsonString holds the JSON string taken from TMDb query.
-         * @return a string array with the full poster URLs
-         * @throws JSONException
+         * @param diffedFrom the ids the diff starts from, as returned by getShownIds.
+         * @return false, without changing anything, if the adapter has moved on since.
          */
-        private ArrayList<Movie> getMovieDetails(String movieJsonString) throws JSONException {
-            // Keys to get values from JSON arrays/objects to create Movie objects.
-            final String RESULTS_KEY = "results";
-            final String ORIGINAL_TITLE_KEY = "original_title";
-            final String BASE_URL = "http://image.tmdb.org/t/p/w185/";
-            final String POSTER_PATH_KEY = "poster_path";
-            final String RELEASE_DATE_KEY = "release_date";
-            final String VOTE_AVERAGE_KEY = "vote_average";
-            final String POPULARITY_KEY = "popularity";
-            final String OVERVIEW_KEY = "overview";
-            ArrayList<Movie> movies = new ArrayList<>();
-
-            // JSON libraries
-            JSONObject movieJson = new JSONObject(movieJsonString);
-            JSONArray resultsArray = movieJson.getJSONArray(RESULTS_KEY);
-
-            // Takes JSON key:value pairs and moves information to each Movie object in turn.
-            // Movie constructor takes 6 args: title, poster URL, release date, vote average,
-            // popularity, and overview.
-            for (int i = 0; i < resultsArray.length(); i++) {
-                movies.add(i, new Movie(
-                                resultsArray.getJSONObject(i).getString(ORIGINAL_TITLE_KEY),
-                                BASE_URL + resultsArray.getJSONObject(i).getString(POSTER_PATH_KEY),
-                                resultsArray.getJSONObject(i).getString(RELEASE_DATE_KEY),
-                                resultsArray.getJSONObject(i).getString(VOTE_AVERAGE_KEY),
-                                resultsArray.getJSONObject(i).getString(POPULARITY_KEY),
-                                resultsArray.getJSONObject(i).getString(OVERVIEW_KEY))
-                );
+        public boolean setMovies(List<Movie> movies, long[] diffedFrom, MovieListDiff diff) {
+            if (diffedFrom != mShownIds) {
+                return false;
+            }
+            long start = Metrics.start();
+            mMovies = movies;
+            if (!diff.isEmpty()) {
+                mShownIds = MovieRepository.idsOf(movies);
+                diff.dispatchTo(mDiffTarget);
             }
-            return movies;
+            Metrics.stop(Metrics.ADAPTER_UPDATE, start);
+            return true;
         }
 
         /**
-         * Populates the GridView's mPosterAdapter with the movies to be displayed,
-         * then sorts them by the saved user preference. If this is the initial run,
-         * the Preferences Manager sets the default to "popularity."
-         *
-         * @param movies the ArrayList of Movie objects returned by doInBackground.
+         * Shows the movies, and tells the grid what changed since the last call in one batch.
+         * The list may be the same one as last time, changed in place since.
          */
+        public void setMovies(List<Movie> movies) {
+            long start = Metrics.start();
+            MovieListDiff diff = MovieListDiff.compute(mShownIds, movies);
+            mMovies = movies;
+            if (!diff.isEmpty()) {
+                mShownIds = MovieRepository.idsOf(movies);
+                diff.dispatchTo(mDiffTarget);
+            }
+            Metrics.stop(Metrics.ADAPTER_UPDATE, start);
+        }
+
+        public Movie getItem(int position) {
+            return mMovies.get(position);
+        }
+
         @Override
-        protected void onPostExecute(ArrayList<Movie> movies) {
+        public int getItemCount() {
+            return mMovies.size();
+        }
 
-            if (movies != null && mPosterAdapter != null) {
-                if (movies.size() > 0) {
-                    for (Movie m : movies) {
-                        mPosterAdapter.add(m);
-                        mMovieList.add(m);
-                    }
-                    sortMoviesByPref(mPosterAdapter, mMovieList);
-                }
+        @Override
+        public long getItemId(int position) {
+            return mMovies.get(position).getId();
+        }
+
+        @Override
+        public PosterViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            // The poster fills the column's width, and PosterImageView works out the height
+            // from that.
+            ImageView imageView = new PosterImageView(parent.getContext());
+            imageView.setLayoutParams(new RecyclerView.LayoutParams(
+                    RecyclerView.LayoutParams.MATCH_PARENT,
+                    RecyclerView.LayoutParams.WRAP_CONTENT));
+            imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+            // The same padding PosterSizes.gridPosterWidth takes off the cell's width.
+            Resources resources = parent.getResources();
+            int horizontal = resources.getDimensionPixelSize(
+                    R.dimen.grid_poster_horizontal_padding);
+            int vertical = resources.getDimensionPixelSize(R.dimen.grid_poster_vertical_padding);
+            imageView.setPadding(horizontal, vertical, horizontal, vertical);
+            return new PosterViewHolder(imageView);
+        }
+
+        @Override
+        public void onBindViewHolder(PosterViewHolder holder, int position) {
+            // Picasso library (through PosterLoader), populates the grid with posters at the
+            // TMDb size that suits the grid (see PosterSizes), decoded at the size of the cell
+            long start = Metrics.start();
+            mPosterLoader.loadInto(holder.mPosterView, mMovies.get(position).getPosterPath());
+            Metrics.stop(Metrics.BIND, start);
+        }
+    }
+
+    /**
+     * A poster in the grid. Makes each poster interactive, takes user to a fragment with
+     * details. Only the movie's id is sent as an intent extra, the detail screen looks the
+     * movie up in MovieRepository.
+     * The detail screen's data is prefetched as soon as the poster is pressed, so it's
+     * usually there by the time the tap is over and the screen opens.
+     */
+    class PosterViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnTouchListener {
+        final ImageView mPosterView;
+
+        PosterViewHolder(ImageView posterView) {
+            super(posterView);
+            mPosterView = posterView;
+            posterView.setOnClickListener(this);
+            posterView.setOnTouchListener(this);
+        }
+
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            int position = getAdapterPosition();
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN
+                    && position != RecyclerView.NO_POSITION) {
+                mDetailPrefetcher.prefetch(mPosterAdapter.getItem(position),
+                        DetailPrefetcher.PRESSED);
             }
+            // Not handled, so the press still turns into a click.
+            return false;
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                // Removed from the grid, and on its way out.
+                return;
+            }
+            Intent detailIntent = new Intent(v.getContext(), MovieDetailActivity.class);
+            Movie movie = mPosterAdapter.getItem(position);
+            detailIntent.putExtra(MovieDetailFragment.EXTRA_MOVIE_ID, movie.getId());
+            startActivity(detailIntent);
+        }
+    }
+
+    /**
+     * Prefetches the detail screens of the posters on screen in a moment, unless the grid
+     * is scrolled before then or this is called again.
+     */
+    private void scheduleOnScreenPrefetch() {
+        if (mGridView != null) {
+            mGridView.removeCallbacks(mOnScreenPrefetch);
+            mGridView.postDelayed(mOnScreenPrefetch, ON_SCREEN_PREFETCH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Asks for the posters of the next screenful of the grid, below the visible rows,
+     * nearest first. If the user turns round and scrolls back up, the prefetches still
+     * waiting are dropped.
+     */
+    private void prefetchPosters(int firstVisibleItem, int visibleItemCount) {
+        int lastVisibleItem = firstVisibleItem + visibleItemCount;
+        if (firstVisibleItem < mLastFirstVisibleItem) {
+            mPosterLoader.cancelPrefetch();
+            mPrefetchedUpTo = lastVisibleItem;
+        }
+        mLastFirstVisibleItem = firstVisibleItem;
+
+        int prefetchEnd = Math.min(lastVisibleItem + visibleItemCount,
+                mPosterAdapter.getItemCount());
+        for (int i = Math.max(mPrefetchedUpTo, lastVisibleItem); i < prefetchEnd; i++) {
+            mPosterLoader.prefetch(mPosterAdapter.getItem(i).getPosterPath());
+        }
+        mPrefetchedUpTo = Math.max(mPrefetchedUpTo, prefetchEnd);
+    }
+
+    /**
+     * Logs how big the saved state is once parceled, and how long saving it took.
+     */
+    private void logSavedStateSize(Bundle outState, long saveNanos) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            outState.writeToParcel(parcel, 0);
+            Log.d(LOG_TAG, "Saved state: " + mMovieList.size() + " movies, "
+                    + parcel.dataSize() + " bytes, " + saveNanos / 1000 + " us");
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Sorts the movies to reflect the user preference, in the order of the query on screen:
+     * most popular (the default, and now playing and upcoming), highest vote average, or
+     * newest release date.
+     * mMovieList is sorted, which is also the order its ids are saved in if the activity
+     * is re-created, and the adapter follows.
+     *
+     * The sort, the filter and the diff for the adapter are done by mSortWorker on a copy
+     * of the list, and nothing is done at all if the list has already been sorted this way
+     * since it last changed. If movies come in while the worker is busy, its result is
+     * thrown away and the list is sorted again, so the grid always ends up showing the
+     * latest movies in order.
+     */
+    private void sortMoviesByPref() {
+        // MovieSorter compares the numeric values directly (the text versions used to sort
+        // "10" below "9.5").
+        final int criterion = mMovieLoader.getQuery().getSortCriterion();
+        if (mSortedVersion == mListVersion && mSortedCriterion == criterion) {
+            return;
+        }
+        final int version = mListVersion;
+        // While searching, the diff is left to updateAdapter, since TitleIndex is only
+        // used on the main thread.
+        long[] shownIds = mSearchQuery.length() == 0 ? mPosterAdapter.getShownIds() : null;
+        mSortWorker.sort(new ArrayList<>(mMovieList), criterion, mFilter, shownIds,
+                new MovieSortWorker.Callback() {
+                    @Override
+                    public void onSorted(MovieSortWorker.Result result) {
+                        if (version != mListVersion) {
+                            // Nothing else may be coming to sort what's been added.
+                            sortMoviesByPref();
+                            return;
+                        }
+                        mMovieList.clear();
+                        mMovieList.addAll(result.sorted);
+                        mSortedVersion = version;
+                        mSortedCriterion = criterion;
+                        showSorted(result);
+                    }
+                });
+    }
+
+    /**
+     * Hands a finished sort to the adapter, using the worker's filtering and diff unless
+     * the filter, the search or the adapter have changed since it started.
+     */
+    private void showSorted(MovieSortWorker.Result result) {
+        boolean sameFilter = result.filter.equals(mFilter);
+        mFilterIndex = sameFilter ? result.filterIndex : null;
+        if (!sameFilter || result.diff == null || mSearchQuery.length() > 0) {
+            updateAdapter();
+            return;
+        }
+        List<Movie> visible = mFilter.isEmpty() ? mMovieList : result.visible;
+        if (!mPosterAdapter.setMovies(visible, result.shownIds, result.diff)) {
+            updateAdapter();
+        }
+    }
+
+    /**
+     * @return the user's sort order preference, see DiscoverQuery.forPreference.
+     */
+    private String getSortPreference() {
+        // Get user preferences from the Preference Manager.
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+
+        // prefs.getString will take care of assigning a default if none has been assigned yet.
+        return prefs.getString(
+                getString(R.string.pref_sort_order_key),
+                getString(R.string.pref_sort_order_default));
+    }
+
+    private MovieFilter getFilterPreference() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+        int genreId = parseInt(prefs.getString(
+                getString(R.string.pref_filter_genre_key), null), 0);
+        int minYear = parseInt(prefs.getString(
+                getString(R.string.pref_filter_year_from_key), null), 0);
+        int maxYear = parseInt(prefs.getString(
+                getString(R.string.pref_filter_year_to_key), null), Integer.MAX_VALUE);
+        int minVoteAverage = parseInt(prefs.getString(
+                getString(R.string.pref_filter_min_vote_average_key), null), 0);
+        int minVoteCount = parseInt(prefs.getString(
+                getString(R.string.pref_filter_min_vote_count_key), null), 0);
+        return new MovieFilter(genreId != 0 ? Genres.bitForId(genreId) : 0,
+                minYear, maxYear, minVoteAverage, minVoteCount);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
         }
     }
 }
@@ -0,0 +1,151 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless fragment that owns the movie loading (MovieFetcher and a MovieLoader) for
+ * MovieGridFragment. It's retained across configuration changes, so a fetch started
+ * before the screen rotates carries on and is delivered to the new grid instead of
+ * being thrown away and requested again. What's loaded for which query, and what's held
+ * back while no grid is attached, is MovieLoader's business.
+ *
+ * The results here are also what a grid re-created by a rotation shows (see getMovies),
+ * so they don't have to go through its saved instance state. After the process has
+ * died, the grid only has the ids of the movies it showed, and start() gets the movies
+ * back through MovieRepository.
+ *
+ * The snapshots MovieLoader asks for are written as MovieSnapshots on the fetcher's
+ * workers. Loading is only cancelled, and its connections closed, when the activity is
+ * finished for good.
+ */
+public class MovieLoaderFragment extends Fragment {
+    private static final String TAG = "movie_loader";
+
+    /**
+     * Results of the loading for the query on screen, on the main thread.
+     */
+    public interface Callbacks extends MovieLoader.Callbacks {
+    }
+
+    private Context mContext;
+    private MovieFetcher mFetcher;
+    private MovieLoader mLoader;
+
+    public MovieLoaderFragment() {
+    }
+
+    /**
+     * @return the activity's loader, added to the FragmentManager the first time.
+     */
+    public static MovieLoaderFragment get(FragmentManager fragmentManager) {
+        MovieLoaderFragment loader =
+                (MovieLoaderFragment) fragmentManager.findFragmentByTag(TAG);
+        if (loader == null) {
+            loader = new MovieLoaderFragment();
+            fragmentManager.beginTransaction().add(loader, TAG).commit();
+        }
+        return loader;
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+    }
+
+    @Override
+    public void onDestroy() {
+        // Only called when the activity is finishing, not on rotation.
+        if (mLoader != null) {
+            mLoader.cancel();
+            mFetcher.shutdown();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Sets up the query's pager and starts loading, unless it has been started already.
+     * A grid re-created by a rotation finds it started (see isStarted), and the pages
+     * already requested aren't requested again.
+     *
+     * @param query the query the grid shows.
+     * @param nextPage the first page not loaded yet, 1 unless movies were restored.
+     * @param loadedIds ids of the movies the grid had, from its saved state, or null.
+     *                  They're looked up and handed back in onMoviesRestored.
+     * @param initialPageCount how many pages to request if starting from page 1.
+     */
+    public void start(Context context, final DiscoverQuery query, int nextPage,
+                      long[] loadedIds, int prefetchDistance, int initialPageCount) {
+        if (mLoader != null) {
+            return;
+        }
+        mContext = context.getApplicationContext();
+        mFetcher = new MovieFetcher(mContext);
+        mLoader = new MovieLoader(mFetcher, new MovieLoader.SnapshotWriter() {
+            @Override
+            public void saveSnapshot(DiscoverQuery query, List<Movie> movies) {
+                mFetcher.saveSnapshot(new MovieSnapshot(mContext, query), movies);
+            }
+        }, MovieSnapshot.MAX_MOVIES, prefetchDistance, initialPageCount);
+        boolean restoring = loadedIds != null && loadedIds.length > 0;
+        mLoader.start(query, nextPage, restoring);
+        if (restoring) {
+            MovieRepository.getInstance(mContext).load(loadedIds,
+                    new MovieRepository.LoadCallback() {
+                        @Override
+                        public void onMoviesLoaded(ArrayList<Movie> movies) {
+                            mLoader.onRestored(query, movies);
+                        }
+                    });
+        }
+    }
+
+    public boolean isStarted() {
+        return mLoader != null;
+    }
+
+    /**
+     * See MovieLoader.switchQuery.
+     *
+     * @return the query's movies so far, in the order they were loaded.
+     */
+    public ArrayList<Movie> switchQuery(DiscoverQuery query, int initialPageCount) {
+        return mLoader.switchQuery(query, initialPageCount);
+    }
+
+    /**
+     * @return the movies of the query on screen loaded so far.
+     */
+    public ArrayList<Movie> getMovies() {
+        return mLoader.getMovies();
+    }
+
+    /**
+     * @return the query on screen.
+     */
+    public DiscoverQuery getQuery() {
+        return mLoader.getQuery();
+    }
+
+    /**
+     * @return the pager of the query on screen.
+     */
+    public MoviePager getPager() {
+        return mLoader.getPager();
+    }
+
+    /**
+     * Attaches the grid, delivering anything that finished while none was attached, or
+     * detaches it when null.
+     */
+    public void setCallbacks(Callbacks callbacks) {
+        mLoader.setCallbacks(callbacks);
+    }
+}
@@ -0,0 +1,131 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The movies the app has loaded in this process, by TMDb id. Screens pass movies to each
+ * other, and to their saved instance state, as ids only, and look them up here, instead
+ * of parceling whole Movie objects (overviews and all) into Bundles and Intents.
+ *
+ * Only the MAX_MOVIES most recently used are kept (see MovieMemoryCache), so paging
+ * through every sort order for a long time doesn't keep every movie in memory. When the
+ * process has died in the meantime this is empty again. Either way load() goes back to
+ * MovieStore, where every fetched movie was written, for whatever isn't here.
+ *
+ * There's one instance per process (see getInstance). get and put can be called from any
+ * thread.
+ */
+public class MovieRepository {
+    // Several screens' worth of every sort order. A movie with its overview is around a
+    // kilobyte, so this is about a megabyte at most.
+    static final int MAX_MOVIES = 1000;
+
+    private static MovieRepository sInstance;
+
+    /**
+     * Receives the result of load() on the main thread.
+     */
+    public interface LoadCallback {
+        /**
+         * @param movies the movies found, in the order of the ids asked for. Ids that
+         *               aren't in MovieStore either are left out.
+         */
+        void onMoviesLoaded(ArrayList<Movie> movies);
+    }
+
+    private final MovieMemoryCache mMovies = new MovieMemoryCache(MAX_MOVIES);
+    private final MovieStore mStore;
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler;
+
+    public static synchronized MovieRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MovieRepository(MovieStore.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    private MovieRepository(MovieStore store) {
+        mStore = store;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        // Only needed after the process has died, so the thread doesn't hang around.
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public synchronized void put(Movie movie) {
+        mMovies.put(movie);
+    }
+
+    public synchronized void putAll(Collection<Movie> movies) {
+        mMovies.putAll(movies);
+    }
+
+    /**
+     * @return the movie, or null if it hasn't been loaded in this process or hasn't been
+     *         used in a while.
+     */
+    public synchronized Movie get(long id) {
+        return mMovies.get(id);
+    }
+
+    /**
+     * @return the movies in the order of the ids, or null unless every one of them is
+     *         still kept here.
+     */
+    public synchronized ArrayList<Movie> getAll(long[] ids) {
+        return mMovies.getAll(ids);
+    }
+
+    /**
+     * Looks the movies up here, and reads any that are missing from MovieStore on a
+     * worker thread. The callback is always called later, on the main thread.
+     */
+    public void load(final long[] ids, final LoadCallback callback) {
+        final ArrayList<Movie> movies = getAll(ids);
+        if (movies != null) {
+            postResult(movies, callback);
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Movie> stored = mStore.queryMoviesById(ids);
+                putAll(stored);
+                postResult(stored, callback);
+            }
+        });
+    }
+
+    private void postResult(final ArrayList<Movie> movies, final LoadCallback callback) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onMoviesLoaded(movies);
+            }
+        });
+    }
+
+    /**
+     * @return the ids of the movies, in the same order.
+     */
+    public static long[] idsOf(List<Movie> movies) {
+        long[] ids = new long[movies.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = movies.get(i).getId();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,110 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The last good list of movies for a DiscoverQuery, saved in a small binary file so a cold
+ * start can fill the grid straight away, before anything has come back from TMDb.
+ *
+ * The layout of the file is MovieSnapshotCodec's. Reading it back maps the file into
+ * memory and walks through it once, which is quick enough to do on the main thread before
+ * the grid is first drawn (see MovieSnapshotBenchmark).
+ *
+ * A file from an older version, or one that doesn't read back cleanly, is ignored. Movies
+ * that have dropped out of the query's release date window since the snapshot was saved
+ * (an upcoming movie that has come out, say) are left out.
+ */
+public class MovieSnapshot {
+    private static final String LOG_TAG = MovieSnapshot.class.getSimpleName();
+
+    // Enough for several screens of posters; the rest comes from TMDb as usual.
+    static final int MAX_MOVIES = 500;
+
+    private final File mFile;
+    private final DiscoverQuery mQuery;
+
+    public MovieSnapshot(Context context, DiscoverQuery query) {
+        mQuery = query;
+        mFile = new File(context.getFilesDir(), "snapshot_" + query.getName() + ".bin");
+    }
+
+    /**
+     * @return the saved movies, or null if there's no usable snapshot.
+     */
+    public ArrayList<Movie> read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(mFile);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ArrayList<Movie> movies = MovieSnapshotCodec.decode(buffer, MAX_MOVIES);
+            if (movies == null) {
+                return null;
+            }
+            Iterator<Movie> it = movies.iterator();
+            while (it.hasNext()) {
+                if (!mQuery.accepts(it.next())) {
+                    it.remove();
+                }
+            }
+            return movies;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(LOG_TAG, "Couldn't read " + mFile, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing else to do with it.
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the snapshot with (the first MAX_MOVIES of) the movies. Does file I/O, so
+     * keep it off the main thread.
+     */
+    public void write(List<Movie> movies) {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tempFile));
+            MovieSnapshotCodec.encode(movies, MAX_MOVIES, out);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(mFile)) {
+                Log.w(LOG_TAG, "Couldn't replace " + mFile);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't write " + mFile, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing else to do with it.
+                }
+            }
+            tempFile.delete();
+        }
+    }
+}
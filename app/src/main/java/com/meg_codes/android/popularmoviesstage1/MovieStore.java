@@ -0,0 +1,185 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.meg_codes.android.popularmoviesstage1.MovieContract.MovieEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Data access for the local movie database. Every movie fetched from TMDb is written
+ * here, so the grid can be re-sorted over everything seen so far (and after the process
+ * has died) with an indexed query instead of another network round trip.
+ *
+ * There's one instance per process (see getInstance). SQLiteDatabase does its own
+ * locking, but none of these calls should be made on the main thread.
+ */
+public class MovieStore {
+    private static MovieStore sInstance;
+
+    private final MovieDbHelper mDbHelper;
+
+    private static final String SQL_INSERT_MOVIE = "INSERT OR REPLACE INTO "
+            + MovieEntry.TABLE_NAME + " ("
+            + MovieEntry._ID + ", "
+            + MovieEntry.COLUMN_TITLE + ", "
+            + MovieEntry.COLUMN_POSTER_PATH + ", "
+            + MovieEntry.COLUMN_BACKDROP_PATH + ", "
+            + MovieEntry.COLUMN_RELEASE_DATE + ", "
+            + MovieEntry.COLUMN_VOTE_AVERAGE + ", "
+            + MovieEntry.COLUMN_VOTE_COUNT + ", "
+            + MovieEntry.COLUMN_POPULARITY + ", "
+            + MovieEntry.COLUMN_GENRES + ", "
+            + MovieEntry.COLUMN_OVERVIEW + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Column order for queries, matching the COL_ indexes below.
+    private static final String[] MOVIE_COLUMNS = {
+            MovieEntry._ID,
+            MovieEntry.COLUMN_TITLE,
+            MovieEntry.COLUMN_POSTER_PATH,
+            MovieEntry.COLUMN_BACKDROP_PATH,
+            MovieEntry.COLUMN_RELEASE_DATE,
+            MovieEntry.COLUMN_VOTE_AVERAGE,
+            MovieEntry.COLUMN_VOTE_COUNT,
+            MovieEntry.COLUMN_POPULARITY,
+            MovieEntry.COLUMN_GENRES,
+            MovieEntry.COLUMN_OVERVIEW
+    };
+    private static final int COL_ID = 0;
+    private static final int COL_TITLE = 1;
+    private static final int COL_POSTER_PATH = 2;
+    private static final int COL_BACKDROP_PATH = 3;
+    private static final int COL_RELEASE_DATE = 4;
+    private static final int COL_VOTE_AVERAGE = 5;
+    private static final int COL_VOTE_COUNT = 6;
+    private static final int COL_POPULARITY = 7;
+    private static final int COL_GENRES = 8;
+    private static final int COL_OVERVIEW = 9;
+
+    private static final int MAX_QUERY_ARGS = 500;
+
+    public static synchronized MovieStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MovieStore(new MovieDbHelper(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    MovieStore(MovieDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Inserts (or replaces, by TMDb id) a batch of movies in a single transaction.
+     */
+    public void insertMovies(List<Movie> movies) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_MOVIE);
+        db.beginTransaction();
+        try {
+            for (Movie m : movies) {
+                insert.clearBindings();
+                insert.bindLong(1, m.getId());
+                bindStringOrNull(insert, 2, m.getTitle());
+                bindStringOrNull(insert, 3, m.getPosterPath());
+                bindStringOrNull(insert, 4, m.getBackdropPath());
+                bindStringOrNull(insert, 5, m.getReleaseDate());
+                insert.bindDouble(6, m.getVoteAverage());
+                insert.bindLong(7, m.getVoteCount());
+                insert.bindDouble(8, m.getPopularity());
+                insert.bindLong(9, m.getGenreMask());
+                bindStringOrNull(insert, 10, m.getOverview());
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * @param sortColumn MovieEntry.COLUMN_POPULARITY or MovieEntry.COLUMN_VOTE_AVERAGE,
+     *                   both indexed.
+     * @return every stored movie, highest first.
+     */
+    public ArrayList<Movie> queryMovies(String sortColumn) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(MovieEntry.TABLE_NAME, MOVIE_COLUMNS,
+                null, null, null, null, sortColumn + " DESC");
+        try {
+            ArrayList<Movie> movies = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                movies.add(readMovie(cursor));
+            }
+            return movies;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the stored movies with these ids, in the same order. Ids that aren't stored
+     *         are skipped.
+     */
+    public ArrayList<Movie> queryMoviesById(long[] ids) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        HashMap<Long, Movie> found = new HashMap<>(ids.length);
+        // SQLite allows up to 999 arguments in a statement, so long lists go in batches.
+        for (int start = 0; start < ids.length; start += MAX_QUERY_ARGS) {
+            int end = Math.min(start + MAX_QUERY_ARGS, ids.length);
+            StringBuilder selection = new StringBuilder(MovieEntry._ID + " IN (");
+            String[] selectionArgs = new String[end - start];
+            for (int i = start; i < end; i++) {
+                selection.append(i > start ? ",?" : "?");
+                selectionArgs[i - start] = Long.toString(ids[i]);
+            }
+            selection.append(')');
+            Cursor cursor = db.query(MovieEntry.TABLE_NAME, MOVIE_COLUMNS,
+                    selection.toString(), selectionArgs, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    Movie m = readMovie(cursor);
+                    found.put(m.getId(), m);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        ArrayList<Movie> movies = new ArrayList<>(found.size());
+        for (long id : ids) {
+            Movie m = found.get(id);
+            if (m != null) {
+                movies.add(m);
+            }
+        }
+        return movies;
+    }
+
+    private static Movie readMovie(Cursor cursor) {
+        return new Movie(
+                cursor.getLong(COL_ID),
+                cursor.getString(COL_TITLE),
+                cursor.getString(COL_POSTER_PATH),
+                cursor.getString(COL_BACKDROP_PATH),
+                cursor.getString(COL_RELEASE_DATE),
+                cursor.getDouble(COL_VOTE_AVERAGE),
+                cursor.getInt(COL_VOTE_COUNT),
+                cursor.getDouble(COL_POPULARITY),
+                cursor.getInt(COL_GENRES),
+                cursor.getString(COL_OVERVIEW));
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
+
+/**
+ * Sets up the Picasso instance every screen uses (Picasso.with returns it), with the
+ * two-tier poster cache: decoded bitmaps in memory (PosterCache) and downloaded poster
+ * files on disk (PosterDiskCache). Both are shared by the grid and the detail screen.
+ * Also keeps the MovieTextFormat made from the current language's string resources.
+ */
+public class PopularMoviesApplication extends Application {
+    // Share of the app's memory class the decoded posters may take up.
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    private static PosterCache sPosterCache;
+    private static PosterDiskCache sPosterDiskCache;
+    private static MovieTextFormat sMovieTextFormat;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Metrics.setEnabled(BuildConfig.DEBUG);
+        sMovieTextFormat = loadMovieTextFormat(getResources());
+        ActivityManager activityManager =
+                (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryBytes = activityManager.getMemoryClass() * 1024 * 1024;
+        sPosterCache = new PosterCache(memoryBytes / MEMORY_CACHE_DIVISOR);
+        sPosterDiskCache = new PosterDiskCache(new File(getCacheDir(), "posters"),
+                DISK_CACHE_BYTES);
+        Picasso.setSingletonInstance(new Picasso.Builder(this)
+                .memoryCache(sPosterCache)
+                .downloader(sPosterDiskCache)
+                .build());
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // A new format for a new language; movies reformat their text when they next see it.
+        sMovieTextFormat = loadMovieTextFormat(getResources());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            sPosterCache.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            sPosterCache.trimToHalf();
+        }
+    }
+
+    public static PosterCache getPosterCache() {
+        return sPosterCache;
+    }
+
+    public static PosterDiskCache getPosterDiskCache() {
+        return sPosterDiskCache;
+    }
+
+    public static MovieTextFormat getMovieTextFormat() {
+        return sMovieTextFormat;
+    }
+
+    private static MovieTextFormat loadMovieTextFormat(Resources resources) {
+        return new MovieTextFormat(resources.getStringArray(R.array.month_names),
+                resources.getString(R.string.release_date_format),
+                resources.getString(R.string.release_date_year_format),
+                resources.getString(R.string.vote_average_format),
+                resources.getString(R.string.runtime_format));
+    }
+}
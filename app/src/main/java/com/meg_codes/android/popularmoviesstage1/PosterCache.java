@@ -0,0 +1,78 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Cache;
+
+/**
+ * In-memory tier of the poster cache: decoded bitmaps in an LRU bounded by their size in
+ * bytes. Installed as Picasso's memory cache (see PopularMoviesApplication), so it's shared
+ * by the grid and the detail screen.
+ *
+ * The LRU and the lookup by poster path are PosterMemoryCache's. getAnySize finds whichever
+ * copy of a poster there is, which lets the detail screen show the grid's thumbnail while
+ * the bigger poster loads.
+ *
+ * Picasso calls this from its own threads, so everything is synchronized.
+ */
+public class PosterCache implements Cache {
+    private final PosterMemoryCache<Bitmap> mBitmaps;
+
+    /**
+     * @param maxBytes the most memory the bitmaps may take up.
+     */
+    public PosterCache(int maxBytes) {
+        mBitmaps = new PosterMemoryCache<>(maxBytes, new PosterMemoryCache.Sizer<Bitmap>() {
+            @Override
+            public int sizeOf(Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        });
+    }
+
+    @Override
+    public synchronized Bitmap get(String key) {
+        return mBitmaps.get(key);
+    }
+
+    @Override
+    public synchronized void set(String key, Bitmap bitmap) {
+        mBitmaps.set(key, bitmap);
+    }
+
+    /**
+     * @param posterPath the poster's path from the API, like "/abc.jpg".
+     * @return a cached copy of the poster at whatever size it was downloaded and decoded,
+     *         or null. Doesn't count towards the hit rate.
+     */
+    public synchronized Bitmap getAnySize(String posterPath) {
+        return mBitmaps.getAnySize(posterPath);
+    }
+
+    @Override
+    public synchronized int size() {
+        return mBitmaps.size();
+    }
+
+    @Override
+    public synchronized int maxSize() {
+        return mBitmaps.maxSize();
+    }
+
+    @Override
+    public synchronized void clear() {
+        mBitmaps.clear();
+    }
+
+    @Override
+    public synchronized void clearKeyUri(String uri) {
+        mBitmaps.clearKeyUri(uri);
+    }
+
+    /**
+     * Drops the older half of the cache, for when the system is short of memory.
+     */
+    public synchronized void trimToHalf() {
+        mBitmaps.trimToHalf();
+    }
+}
@@ -0,0 +1,130 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.net.Uri;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.NetworkPolicy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Disk tier of the poster cache, installed as Picasso's Downloader (see
+ * PopularMoviesApplication). Poster files are kept as downloaded, one file per URL,
+ * in the app's cache directory. Where they go, and which are deleted to stay in the
+ * budget, is up to PosterFiles.
+ *
+ * Picasso calls load() from several of its threads at once.
+ */
+public class PosterDiskCache implements Downloader {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final PosterFiles mFiles;
+
+    /**
+     * @param maxBytes the disk budget for poster files.
+     */
+    public PosterDiskCache(File directory, long maxBytes) {
+        mFiles = new PosterFiles(directory, maxBytes);
+    }
+
+    @Override
+    public Response load(Uri uri, int networkPolicy) throws IOException {
+        File file = mFiles.fileFor(uri.toString());
+        if (NetworkPolicy.shouldReadFromDiskCache(networkPolicy) && file.exists()) {
+            Metrics.count(Metrics.POSTER_DISK_HITS);
+            mFiles.touch(file);
+            return new Response(new DecodeTimingInputStream(file), true, file.length());
+        }
+        if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
+            throw new IOException("Poster not cached and network not allowed: " + uri);
+        }
+        Metrics.count(Metrics.POSTER_DOWNLOADS);
+        download(uri.toString(), file);
+        return new Response(new DecodeTimingInputStream(file), false, file.length());
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * Downloads a poster ahead of time, unless it's on disk already. Nothing is decoded, so
+     * it costs no memory, and showing it later only costs the decoding. Call it from a
+     * worker thread.
+     *
+     * @return the bytes downloaded, 0 if the poster was already on disk.
+     */
+    public long prefetch(String url) throws IOException {
+        File file = mFiles.fileFor(url);
+        if (file.exists()) {
+            return 0;
+        }
+        download(url, file);
+        return file.length();
+    }
+
+    /**
+     * Downloads the poster into a temporary file, then has PosterFiles move it into place,
+     * so a half-downloaded poster is never read back.
+     */
+    private void download(String url, File file) throws IOException {
+        File tempFile = mFiles.createTempFile(file);
+        HttpClient.Response response = null;
+        OutputStream out = null;
+        try {
+            // Through the shared client, so posters reuse kept-alive connections too.
+            response = HttpClient.getInstance().get(url, null, null);
+            int responseCode = response.getCode();
+            if (responseCode >= 300) {
+                throw new IOException("HTTP " + responseCode + " for " + url);
+            }
+            InputStream in = response.getBody();
+            out = new FileOutputStream(tempFile);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            out.close();
+            out = null;
+            Metrics.count(Metrics.POSTER_BYTES, tempFile.length());
+            mFiles.store(tempFile, file);
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            if (response != null) {
+                response.close();
+            }
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * The poster file as handed to Picasso, which decodes it as it reads it and then closes
+     * it, so the time it's open is the read and decode time (Metrics.POSTER_DECODE).
+     */
+    private static class DecodeTimingInputStream extends FileInputStream {
+        private final long mStart = Metrics.start();
+        private boolean mClosed;
+
+        DecodeTimingInputStream(File file) throws FileNotFoundException {
+            super(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!mClosed) {
+                mClosed = true;
+                Metrics.stop(Metrics.POSTER_DECODE, mStart);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.widget.ImageView;
+
+/**
+ * ImageView for the movie grid that takes the width of its column and sets its own height
+ * to keep TMDb's 2:3 poster shape. With the size coming from the layout instead of being
+ * hard-coded in pixels, Picasso's fit() can decode each poster to exactly the cell it's
+ * shown in, on any screen.
+ */
+public class PosterImageView extends ImageView {
+    // TMDb posters are 2:3 (width:height).
+    private static final float HEIGHT_RATIO = 1.5f;
+
+    public PosterImageView(Context context) {
+        super(context);
+    }
+
+    public PosterImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        int width = getMeasuredWidth();
+        setMeasuredDimension(width, Math.round(width * HEIGHT_RATIO));
+    }
+}
@@ -0,0 +1,120 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+
+/**
+ * Loads posters for the movie grid through Picasso, sized to the grid's cells.
+ *
+ * Grid posters are decoded straight to the cell's measured size (fit() and centerCrop(),
+ * instead of the full-size image) and as RGB_565, which is half the memory of ARGB_8888
+ * and fine for an opaque thumbnail. Posters further down the grid can be prefetched,
+ * at low priority and nearest first, at that same size so they land in Picasso's memory
+ * cache under the key the grid will ask for.
+ *
+ * Which of TMDb's sizes is downloaded is worked out once from the grid's column width
+ * (see PosterSizes), so every cell and prefetch asks for the same URL.
+ *
+ * How long posters that weren't in memory take to show up goes to Metrics.POSTER_LOAD;
+ * how often they were in memory is counted by PosterCache itself.
+ */
+public class PosterLoader {
+    // Tags for Picasso, so visible and prefetch requests can be paused or cancelled as groups.
+    private static final Object GRID_TAG = new Object();
+    private static final Object PREFETCH_TAG = new Object();
+
+    private static final Bitmap.Config THUMBNAIL_CONFIG = Bitmap.Config.RGB_565;
+
+    private final Context mContext;
+    // Width the grid's posters are shown at, for picking the TMDb size to download.
+    private final int mPosterWidth;
+
+    // Size of a grid cell in pixels, known once a poster has been laid out.
+    private int mCellWidth;
+    private int mCellHeight;
+
+    public PosterLoader(Context context) {
+        mContext = context.getApplicationContext();
+        mPosterWidth = PosterSizes.gridPosterWidth(context);
+    }
+
+    /**
+     * Shows a poster in a grid cell. Re-using the view for another poster cancels this
+     * request, so cells that scrolled out of sight don't keep loading.
+     */
+    public void loadInto(final ImageView view, String posterPath) {
+        if (view.getWidth() > 0 && view.getHeight() > 0) {
+            mCellWidth = view.getWidth();
+            mCellHeight = view.getHeight();
+        }
+        final long start = Metrics.start();
+        // A memory cache hit calls onSuccess before into() returns.
+        final boolean[] returned = {false};
+        Picasso.with(mContext)
+                .load(PosterUrls.urlFor(posterPath, mPosterWidth))
+                .fit()
+                .centerCrop()
+                .config(THUMBNAIL_CONFIG)
+                .tag(GRID_TAG)
+                .into(view, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        if (returned[0]) {
+                            Metrics.stop(Metrics.POSTER_LOAD, start);
+                        }
+                    }
+
+                    @Override
+                    public void onError() {
+                        Metrics.count(Metrics.POSTER_FAILURES);
+                    }
+                });
+        returned[0] = true;
+    }
+
+    /**
+     * Loads a poster that isn't on screen yet into the memory cache, at the grid's cell
+     * size. Does nothing until the cell size is known. Requests are run by Picasso in
+     * priority order and then in the order made, so callers should go nearest first.
+     */
+    public void prefetch(String posterPath) {
+        if (mCellWidth == 0 || posterPath == null) {
+            return;
+        }
+        Picasso.with(mContext)
+                .load(PosterUrls.urlFor(posterPath, mPosterWidth))
+                .resize(mCellWidth, mCellHeight)
+                .centerCrop()
+                .config(THUMBNAIL_CONFIG)
+                .priority(Picasso.Priority.LOW)
+                .tag(PREFETCH_TAG)
+                .fetch();
+    }
+
+    /**
+     * Drops prefetches that haven't finished, for when the user scrolls the other way.
+     */
+    public void cancelPrefetch() {
+        Picasso.with(mContext).cancelTag(PREFETCH_TAG);
+    }
+
+    /**
+     * Holds back grid requests, for example while the grid is being flung and posters would
+     * be out of sight again before they're decoded.
+     */
+    public void pause() {
+        Picasso picasso = Picasso.with(mContext);
+        picasso.pauseTag(GRID_TAG);
+        picasso.pauseTag(PREFETCH_TAG);
+    }
+
+    public void resume() {
+        Picasso picasso = Picasso.with(mContext);
+        picasso.resumeTag(GRID_TAG);
+        picasso.resumeTag(PREFETCH_TAG);
+    }
+}
@@ -0,0 +1,52 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+/**
+ * Works out how wide posters are shown, in pixels, for PosterUrls to pick the TMDb size
+ * to download. Everything here is known before anything is laid out.
+ */
+public class PosterSizes {
+    private PosterSizes() {
+    }
+
+    /**
+     * Works out how many columns the grid has: as many grid_column_width columns as fit
+     * across the screen, with grid_horizontal_spacing between them (what GridView's
+     * auto_fit used to do). The columns are then stretched to fill the width.
+     */
+    public static int gridColumnCount(Context context) {
+        Resources resources = context.getResources();
+        int columnWidth = resources.getDimensionPixelSize(R.dimen.grid_column_width);
+        int spacing = resources.getDimensionPixelSize(R.dimen.grid_horizontal_spacing);
+        return Math.max(1, (gridWidth(resources) + spacing) / (columnWidth + spacing));
+    }
+
+    /**
+     * Works out how wide a poster in the grid is, in pixels, from the number of columns
+     * (see gridColumnCount), minus the cell's padding.
+     * This is known before anything is laid out, and it doesn't change from one cell
+     * to the next, so every poster in the grid gets the same size bucket.
+     */
+    public static int gridPosterWidth(Context context) {
+        Resources resources = context.getResources();
+        int spacing = resources.getDimensionPixelSize(R.dimen.grid_horizontal_spacing);
+        int columns = gridColumnCount(context);
+        int cellWidth = (gridWidth(resources) - (columns - 1) * spacing) / columns;
+        return cellWidth - 2 * resources.getDimensionPixelSize(
+                R.dimen.grid_poster_horizontal_padding);
+    }
+
+    private static int gridWidth(Resources resources) {
+        return resources.getDisplayMetrics().widthPixels
+                - 2 * resources.getDimensionPixelSize(R.dimen.grid_padding);
+    }
+
+    /**
+     * @return how wide the poster on the detail screen is, in pixels.
+     */
+    public static int detailPosterWidth(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.detail_poster_width);
+    }
+}
@@ -0,0 +1,180 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A GET request to TMDb, made the way every TMDb request is made: each try, retries
+ * included, first waits in line at the RateLimiter for a token, and only once it has one
+ * goes to the executor to be sent. So a request waiting for its turn, or waiting out a
+ * backoff before a retry, doesn't hold a worker thread, and the workers are only ever
+ * busy with requests that are actually on the wire.
+ *
+ * It's tried again as HttpClient.get would (see RetryPolicy), except that the wait is spent
+ * in the RateLimiter rather than in a sleeping thread.
+ *
+ * Subclasses get the response on a worker thread, or hear that there isn't one.
+ */
+abstract class RateLimitedRequest {
+    private static final String LOG_TAG = RateLimitedRequest.class.getSimpleName();
+
+    private final HttpClient mHttpClient;
+    private final RateLimiter mRateLimiter;
+    private final Executor mExecutor;
+    private final String mUrl;
+    private final Map<String, String> mHeaders;
+    private final HttpClient.ConnectionTracker mTracker;
+    private final RateLimiter.Ticket mTicket;
+
+    /**
+     * @param executor where the request is sent and its response read.
+     * @param headers extra request headers, or null.
+     * @param tracker told about each connection as it opens and closes, or null.
+     * @param priority the RateLimiter lane.
+     */
+    RateLimitedRequest(HttpClient httpClient, RateLimiter rateLimiter, Executor executor,
+                       String url, Map<String, String> headers,
+                       HttpClient.ConnectionTracker tracker, int priority) {
+        mHttpClient = httpClient;
+        mRateLimiter = rateLimiter;
+        mExecutor = executor;
+        mUrl = url;
+        mHeaders = headers;
+        mTracker = tracker;
+        mTicket = rateLimiter.newTicket(priority);
+    }
+
+    String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return the request's place in the RateLimiter's line, to raise it to another lane.
+     */
+    RateLimiter.Ticket getTicket() {
+        return mTicket;
+    }
+
+    /**
+     * Gets the first try in line for a token.
+     */
+    void start() {
+        waitForToken(0, 0);
+    }
+
+    /**
+     * Takes the request out of the RateLimiter's line if it's waiting for a token, so it
+     * doesn't use one, and calls onFailed. A request that already has its token is stopped
+     * by isCancelled instead, or its tracker.
+     */
+    void cancel() {
+        if (mRateLimiter.cancel(mTicket)) {
+            onFailed();
+        }
+    }
+
+    /**
+     * @return true if nobody wants the response any more. Checked once each try has its
+     *         token, before it's sent, and before trying again.
+     */
+    protected boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * The response to the last try, whatever its code, on a worker thread. It's closed
+     * afterwards.
+     *
+     * @throws IOException if reading it failed, which ends up in onFailed.
+     */
+    protected abstract void onResponse(HttpClient.Response response) throws IOException;
+
+    /**
+     * There's no response: the last try failed, the request was cancelled, or the executor
+     * was shut down. Called on any thread.
+     */
+    protected abstract void onFailed();
+
+    private void waitForToken(final int attempt, long delayMillis) {
+        mRateLimiter.acquire(mTicket, delayMillis, new Runnable() {
+            @Override
+            public void run() {
+                // On the RateLimiter's thread, or whoever called into it. The request itself
+                // goes to a worker.
+                try {
+                    mExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            send(attempt);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    onFailed();
+                }
+            }
+        });
+        // In case it was cancelled while it was getting in line, after the canceller had
+        // looked for it there.
+        if (isCancelled()) {
+            cancel();
+        }
+    }
+
+    private void send(int attempt) {
+        if (isCancelled()) {
+            onFailed();
+            return;
+        }
+        RetryPolicy retryPolicy = mHttpClient.getRetryPolicy();
+        HttpClient.Response response;
+        try {
+            response = mHttpClient.getOnce(mUrl, mHeaders, mTracker);
+        } catch (IOException e) {
+            if (isCancelled()) {
+                // Disconnected on purpose.
+                onFailed();
+            } else if (!retryPolicy.canRetry(attempt)) {
+                Metrics.count(Metrics.HTTP_FAILURES);
+                Log.e(LOG_TAG, "Request for " + mUrl + " failed", e);
+                onFailed();
+            } else {
+                Log.w(LOG_TAG, "Request for " + mUrl + " failed, trying again", e);
+                retry(attempt, null);
+            }
+            return;
+        }
+        if (response == null) {
+            // The tracker cancelled it.
+            onFailed();
+            return;
+        }
+
+        int code = response.getCode();
+        if (RetryPolicy.isRetryable(code) && retryPolicy.canRetry(attempt) && !isCancelled()) {
+            String retryAfter = response.getHeader("Retry-After");
+            response.close();
+            Log.w(LOG_TAG, "HTTP " + code + " for " + mUrl + ", trying again");
+            retry(attempt, retryAfter);
+            return;
+        }
+        try {
+            onResponse(response);
+        } catch (IOException e) {
+            if (!isCancelled()) {
+                Log.e(LOG_TAG, "Couldn't read the response for " + mUrl, e);
+            }
+            onFailed();
+        } finally {
+            response.close();
+        }
+    }
+
+    private void retry(int attempt, String retryAfter) {
+        Metrics.count(Metrics.HTTP_RETRIES);
+        waitForToken(attempt + 1, mHttpClient.getRetryPolicy().delayMillis(attempt, retryAfter));
+    }
+}
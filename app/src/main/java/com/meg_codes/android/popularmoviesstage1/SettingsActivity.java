@@ -45,6 +45,28 @@ public class SettingsActivity extends PreferenceActivity
         // For all preferences, attach an OnPreferenceChangeListener so the UI summary can be
         // updated when the preference changes.
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_sort_order_key)));
+
+        // The genre choices come from the same table the movies' genre masks use.
+        ListPreference genrePreference =
+                (ListPreference) findPreference(getString(R.string.pref_filter_genre_key));
+        CharSequence[] genreNames = new CharSequence[Genres.count() + 1];
+        CharSequence[] genreIds = new CharSequence[Genres.count() + 1];
+        genreNames[0] = getString(R.string.pref_filter_genre_any);
+        genreIds[0] = "0";
+        for (int i = 0; i < Genres.count(); i++) {
+            genreNames[i + 1] = Genres.nameAt(i);
+            genreIds[i + 1] = Integer.toString(Genres.idAt(i));
+        }
+        genrePreference.setEntries(genreNames);
+        genrePreference.setEntryValues(genreIds);
+
+        bindPreferenceSummaryToValue(genrePreference);
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_filter_year_from_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_filter_year_to_key)));
+        bindPreferenceSummaryToValue(
+                findPreference(getString(R.string.pref_filter_min_vote_average_key)));
+        bindPreferenceSummaryToValue(
+                findPreference(getString(R.string.pref_filter_min_vote_count_key)));
     }
 
     /**
@@ -0,0 +1,64 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+/**
+ * The baseline MovieJsonParser is measured against: how the app parsed discover responses
+ * before it streamed them. The whole response is read line by line into a String, then
+ * org.json builds a JSONObject tree of it, and the movies are picked out of the tree.
+ * It reads the same fields MovieJsonParser does, so the two make the same Movies.
+ */
+class DomMovieParser {
+    private DomMovieParser() {
+    }
+
+    static ArrayList<Movie> parseDiscover(byte[] response) throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(response), "UTF-8"));
+        StringBuffer buffer = new StringBuffer();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                buffer.append(line + "\n");
+            }
+        } finally {
+            reader.close();
+        }
+
+        JSONArray results = new JSONObject(buffer.toString()).getJSONArray("results");
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            int genreMask = 0;
+            JSONArray genreIds = result.optJSONArray("genre_ids");
+            if (genreIds != null) {
+                for (int g = 0; g < genreIds.length(); g++) {
+                    genreMask |= Genres.bitForId(genreIds.getInt(g));
+                }
+            }
+            movies.add(new Movie(result.getLong("id"),
+                    stringOrNull(result, "original_title"),
+                    stringOrNull(result, "poster_path"),
+                    stringOrNull(result, "backdrop_path"),
+                    stringOrNull(result, "release_date"),
+                    result.optDouble("vote_average", 0),
+                    result.optInt("vote_count", 0),
+                    result.optDouble("popularity", 0),
+                    genreMask,
+                    stringOrNull(result, "overview")));
+        }
+        return movies;
+    }
+
+    private static String stringOrNull(JSONObject object, String key) {
+        return object.isNull(key) ? null : object.optString(key);
+    }
+}
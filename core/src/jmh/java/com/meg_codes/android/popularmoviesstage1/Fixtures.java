@@ -0,0 +1,111 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * TMDb responses for the benchmarks, from src/jmh/resources/fixtures: five discover pages
+ * of 20 movies (discover-page-N.json) and one "movie/{id}" response (movie-details.json).
+ * Bigger workloads go round the pages again, or are built out of them (see
+ * discoverResponse).
+ *
+ * To record fresh ones, save TMDb's responses over the files, for example:
+ *
+ *     curl "https://api.themoviedb.org/3/discover/movie?sort_by=popularity.desc&page=1&api_key=..."
+ */
+class Fixtures {
+    static final int DISCOVER_PAGES = 5;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return the bodies of count discover pages, going round the five fixtures.
+     */
+    static byte[][] discoverPages(int count) throws IOException {
+        byte[][] pages = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            pages[i] = read("discover-page-" + (i % DISCOVER_PAGES + 1) + ".json");
+        }
+        return pages;
+    }
+
+    /**
+     * @return one discover response with resultCount results, far more than TMDb ever
+     *         sends in a page, to see how the parsers scale. The results are the fixtures'
+     *         100 over and over, as they are in the files apart from a fresh id each.
+     */
+    static byte[] discoverResponse(int resultCount) throws IOException {
+        ArrayList<String> results = new ArrayList<>();
+        for (byte[] page : discoverPages(DISCOVER_PAGES)) {
+            JSONArray pageResults = new JSONObject(new String(page, "UTF-8"))
+                    .getJSONArray("results");
+            for (int i = 0; i < pageResults.length(); i++) {
+                results.add(pageResults.getJSONObject(i).toString());
+            }
+        }
+        StringBuilder json = new StringBuilder("{\"page\":1,\"results\":[");
+        for (int i = 0; i < resultCount; i++) {
+            JSONObject result = new JSONObject(results.get(i % results.size()));
+            result.put("id", result.getLong("id") + (i / results.size()) * 1000000L);
+            json.append(i == 0 ? "" : ",").append(result.toString());
+        }
+        json.append("],\"total_pages\":1,\"total_results\":").append(resultCount).append('}');
+        return json.toString().getBytes("UTF-8");
+    }
+
+    static byte[] movieDetails() throws IOException {
+        return read("movie-details.json");
+    }
+
+    /**
+     * @return count movies parsed from the discover fixtures. Past the first 100 they're
+     *         copies, each with an id of its own and its scores nudged, so sorting them
+     *         is like sorting that many different movies.
+     */
+    static ArrayList<Movie> movies(int count) throws IOException {
+        ArrayList<Movie> parsed = new ArrayList<>();
+        for (byte[] page : discoverPages(DISCOVER_PAGES)) {
+            parsed.addAll(MovieJsonParser.parseDiscover(new ByteArrayInputStream(page)));
+        }
+        ArrayList<Movie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Movie m = parsed.get(i % parsed.size());
+            int copy = i / parsed.size();
+            if (copy == 0) {
+                movies.add(m);
+            } else {
+                movies.add(new Movie(m.getId() + copy * 1000000L, m.getTitle(),
+                        m.getPosterPath(), m.getBackdropPath(), m.getReleaseDate(),
+                        (m.getVoteAverage() * 7 + copy) % 10, m.getVoteCount(),
+                        m.getPopularity() * (1 + copy % 13) / 7, m.getGenreMask(),
+                        m.getOverview()));
+            }
+        }
+        return movies;
+    }
+
+    private static byte[] read(String name) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
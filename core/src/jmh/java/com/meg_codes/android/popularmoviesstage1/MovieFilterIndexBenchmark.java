@@ -0,0 +1,69 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying every filter at once (a genre, a range of years, a minimum vote average and a
+ * minimum vote count) to the grid's movies, through a MovieFilterIndex and, as the
+ * baseline, by checking each movie with MovieFilter.matches the way the grid used to.
+ * build is what the index costs up front, once per list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovieFilterIndexBenchmark {
+
+    // Drama, from 2000 to 2015, scoring 6 or more from at least 100 votes.
+    private static final MovieFilter FILTER =
+            new MovieFilter(Genres.bitForId(18), 2000, 2015, 6, 100);
+
+    @Param({"1000", "10000", "100000"})
+    public int movies;
+
+    private ArrayList<Movie> mMovies;
+    private MovieFilterIndex mIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        mMovies = Fixtures.movies(movies);
+        mIndex = MovieFilterIndex.build(mMovies);
+    }
+
+    @Benchmark
+    public ArrayList<Movie> filterIndexed() {
+        return mIndex.filter(FILTER);
+    }
+
+    @Benchmark
+    public ArrayList<Movie> filterEachMovie() {
+        ArrayList<Movie> matching = new ArrayList<>();
+        for (Movie movie : mMovies) {
+            if (FILTER.matches(movie)) {
+                matching.add(movie);
+            }
+        }
+        return matching;
+    }
+
+    @Benchmark
+    public MovieFilterIndex build() {
+        return MovieFilterIndex.build(mMovies);
+    }
+}
@@ -0,0 +1,77 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing TMDb responses: a first screen (1 page), the app's initial load (5 pages), a
+ * long scroll (50 pages) and one response with 10,000 results, and the detail screen's
+ * "movie/{id}" response.
+ *
+ * parseDiscoverDom is the baseline: the String and org.json JSONObject tree the app used to
+ * parse with (see DomMovieParser), on the same responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovieJsonParserBenchmark {
+
+    // Pages x results per page.
+    @Param({"1x20", "5x20", "50x20", "1x10000"})
+    public String responses;
+
+    private byte[][] mPages;
+    private byte[] mDetails;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] size = responses.split("x");
+        int pageCount = Integer.parseInt(size[0]);
+        int resultCount = Integer.parseInt(size[1]);
+        if (resultCount == 20) {
+            mPages = Fixtures.discoverPages(pageCount);
+        } else {
+            mPages = new byte[pageCount][];
+            for (int i = 0; i < pageCount; i++) {
+                mPages[i] = Fixtures.discoverResponse(resultCount);
+            }
+        }
+        mDetails = Fixtures.movieDetails();
+    }
+
+    @Benchmark
+    public void parseDiscover(Blackhole blackhole) throws IOException {
+        for (byte[] page : mPages) {
+            blackhole.consume(MovieJsonParser.parseDiscover(new ByteArrayInputStream(page)));
+        }
+    }
+
+    @Benchmark
+    public void parseDiscoverDom(Blackhole blackhole) throws IOException {
+        for (byte[] page : mPages) {
+            blackhole.consume(DomMovieParser.parseDiscover(page));
+        }
+    }
+
+    @Benchmark
+    public MovieDetails parseDetails() throws IOException {
+        return MovieJsonParser.parseDetails(new ByteArrayInputStream(mDetails));
+    }
+}
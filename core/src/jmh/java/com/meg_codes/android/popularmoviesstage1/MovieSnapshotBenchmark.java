@@ -0,0 +1,58 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a cold start gets out of MovieSnapshot: decoding a snapshot of the same movies
+ * against parsing them out of one TMDb response, for a first screen (20), a long scroll
+ * (1,000) and far more than the app ever saves (10,000).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovieSnapshotBenchmark {
+
+    @Param({"20", "1000", "10000"})
+    public int movies;
+
+    private byte[] mSnapshot;
+    private byte[] mResponse;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MovieSnapshotCodec.encode(Fixtures.movies(movies), movies, out);
+        mSnapshot = out.toByteArray();
+        mResponse = Fixtures.discoverResponse(movies);
+    }
+
+    @Benchmark
+    public ArrayList<Movie> decodeSnapshot() throws IOException {
+        return MovieSnapshotCodec.decode(ByteBuffer.wrap(mSnapshot), movies);
+    }
+
+    @Benchmark
+    public ArrayList<Movie> parseJson() throws IOException {
+        return MovieJsonParser.parseDiscover(new ByteArrayInputStream(mResponse));
+    }
+}
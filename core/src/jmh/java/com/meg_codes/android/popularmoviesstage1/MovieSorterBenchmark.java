@@ -0,0 +1,102 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting the grid's movies, from one page up to well past MovieSorter.PARALLEL_THRESHOLD,
+ * where the sort goes parallel. Each sort works on a fresh copy of the fixture order, so
+ * it never gets an already sorted list; copyOnly is that copy on its own, to subtract.
+ *
+ * sortByText is the baseline: how the grid sorted before the scores were kept as numbers,
+ * Collections.sort with a Comparator comparing the values as the Strings TMDb sent them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovieSorterBenchmark {
+
+    @Param({"20", "1000", "10000", "100000"})
+    public int movies;
+
+    @Param({"" + MovieSorter.BY_POPULARITY, "" + MovieSorter.BY_VOTE_AVERAGE,
+            "" + MovieSorter.BY_RELEASE_DATE})
+    public int criterion;
+
+    /**
+     * A movie with its sort key the way Movie used to keep it, as text.
+     */
+    private static class TextKeyed {
+        final Movie mMovie;
+        final String mKey;
+
+        TextKeyed(Movie movie, String key) {
+            mMovie = movie;
+            mKey = key;
+        }
+    }
+
+    private static final Comparator<TextKeyed> DESCENDING_TEXT = new Comparator<TextKeyed>() {
+        @Override
+        public int compare(TextKeyed lhs, TextKeyed rhs) {
+            return rhs.mKey.compareTo(lhs.mKey);
+        }
+    };
+
+    private ArrayList<Movie> mMovies;
+    private ArrayList<TextKeyed> mTextKeyed;
+
+    @Setup
+    public void setUp() throws IOException {
+        mMovies = Fixtures.movies(movies);
+        mTextKeyed = new ArrayList<>(movies);
+        for (Movie m : mMovies) {
+            String key;
+            if (criterion == MovieSorter.BY_POPULARITY) {
+                key = String.valueOf(m.getPopularity());
+            } else if (criterion == MovieSorter.BY_VOTE_AVERAGE) {
+                key = String.valueOf(m.getVoteAverage());
+            } else {
+                key = m.getReleaseDate() != null ? m.getReleaseDate() : "";
+            }
+            mTextKeyed.add(new TextKeyed(m, key));
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Movie> sort() {
+        ArrayList<Movie> copy = new ArrayList<>(mMovies);
+        MovieSorter.sort(copy, criterion);
+        return copy;
+    }
+
+    @Benchmark
+    public ArrayList<TextKeyed> sortByText() {
+        ArrayList<TextKeyed> copy = new ArrayList<>(mTextKeyed);
+        Collections.sort(copy, DESCENDING_TEXT);
+        return copy;
+    }
+
+    @Benchmark
+    public ArrayList<Movie> copyOnly() {
+        return new ArrayList<>(mMovies);
+    }
+}
@@ -0,0 +1,72 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting the text the detail screen shows for each movie, for a page of movies and
+ * for a long scroll's worth. Movie keeps its text once formatted, so after warm-up the
+ * text benchmarks should show about 0 B/op in -prof gc (gc.alloc.rate.norm); the format
+ * benchmarks are the cost of formatting every time, as before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReleaseDateBenchmark {
+
+    @Param({"20", "1000"})
+    public int movies;
+
+    private ArrayList<Movie> mMovies;
+
+    @Setup
+    public void setUp() throws IOException {
+        mMovies = Fixtures.movies(movies);
+    }
+
+    @Benchmark
+    public void textReleaseDate(Blackhole blackhole) {
+        for (Movie movie : mMovies) {
+            blackhole.consume(movie.getTextReleaseDate(MovieTextFormat.ENGLISH));
+        }
+    }
+
+    @Benchmark
+    public void textVoteAverage(Blackhole blackhole) {
+        for (Movie movie : mMovies) {
+            blackhole.consume(movie.getTextVoteAverage(MovieTextFormat.ENGLISH));
+        }
+    }
+
+    @Benchmark
+    public void formatReleaseDate(Blackhole blackhole) {
+        for (Movie movie : mMovies) {
+            blackhole.consume(
+                    MovieTextFormat.ENGLISH.formatReleaseDate(movie.getReleaseDateValue()));
+        }
+    }
+
+    @Benchmark
+    public void releaseDateValue(Blackhole blackhole) {
+        for (Movie movie : mMovies) {
+            blackhole.consume(Movie.packDate(movie.getReleaseDate()));
+        }
+    }
+}
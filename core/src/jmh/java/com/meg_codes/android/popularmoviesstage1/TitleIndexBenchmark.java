@@ -0,0 +1,97 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching the grid's titles on a keystroke: a single letter, which matches a lot of
+ * them, a couple of words, and a whole title. The fixture titles repeat past the first
+ * 100, so every match comes in that many copies.
+ *
+ * There are two baselines, both going through every movie instead of the trigram index.
+ * searchEachTitle normalizes each title as it goes, which is what a search without an index
+ * would cost. searchNormalizedTitles only compares: its titles were normalized ahead of
+ * time, in the list's order, which is as cheap as going through every title gets, but
+ * would have to be redone whenever the grid is sorted or filtered.
+ *
+ * addAll is what the index costs up front. With -prof gc, its allocation per operation is
+ * roughly the index's size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleIndexBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int movies;
+
+    @Param({"w", "wild k", "the hollow orbit"})
+    public String query;
+
+    private ArrayList<Movie> mMovies;
+    private String[] mNormalizedTitles;
+    private TitleIndex mIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        mMovies = Fixtures.movies(movies);
+        mNormalizedTitles = new String[mMovies.size()];
+        for (int i = 0; i < mNormalizedTitles.length; i++) {
+            mNormalizedTitles[i] = TitleIndex.normalize(mMovies.get(i).getTitle());
+        }
+        mIndex = new TitleIndex();
+        mIndex.addAll(mMovies);
+    }
+
+    @Benchmark
+    public ArrayList<Movie> searchIndexed() {
+        return mIndex.filter(mMovies, query);
+    }
+
+    @Benchmark
+    public ArrayList<Movie> searchEachTitle() {
+        String normalized = TitleIndex.normalize(query);
+        ArrayList<Movie> matching = new ArrayList<>();
+        for (Movie movie : mMovies) {
+            if (TitleIndex.normalize(movie.getTitle()).contains(normalized)) {
+                matching.add(movie);
+            }
+        }
+        return matching;
+    }
+
+    @Benchmark
+    public ArrayList<Movie> searchNormalizedTitles() {
+        String normalized = TitleIndex.normalize(query);
+        ArrayList<Movie> matching = new ArrayList<>();
+        for (int i = 0; i < mNormalizedTitles.length; i++) {
+            if (mNormalizedTitles[i].contains(normalized)) {
+                matching.add(mMovies.get(i));
+            }
+        }
+        return matching;
+    }
+
+    @Benchmark
+    public TitleIndex addAll() {
+        TitleIndex index = new TitleIndex();
+        index.addAll(mMovies);
+        return index;
+    }
+}
@@ -0,0 +1,93 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * A TMDb response as DiscoverCache keeps it: the raw body, the ETag and Last-Modified
+ * headers to ask TMDb whether it has changed with (a conditional request), and the time it
+ * stops being fresh. Until then it's used as is; after that it's still shown, but checked
+ * with TMDb (see MovieFetcher).
+ */
+public class CachedResponse {
+    // How long a response is used without checking with TMDb, unless its headers say otherwise.
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    // The largest max-age taken at its word, in seconds (RFC 7234 says to treat anything
+    // bigger as this), so a huge one can't overflow when it's turned into milliseconds.
+    static final long MAX_AGE_SECONDS = Integer.MAX_VALUE;
+
+    public final String etag;
+    public final String lastModified;
+    public final long expiresAt;
+    public final byte[] body;
+
+    public CachedResponse(String etag, String lastModified, long expiresAt, byte[] body) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expiresAt = expiresAt;
+        this.body = body;
+    }
+
+    public boolean isFresh(long now) {
+        return now < expiresAt;
+    }
+
+    /**
+     * @return the same response, good until a new expiry time (after a 304).
+     */
+    public CachedResponse withExpiry(long expiresAt) {
+        return new CachedResponse(etag, lastModified, expiresAt, body);
+    }
+
+    /**
+     * @return the headers that make a request conditional on this response having changed.
+     *         Empty if it had neither an ETag nor a Last-Modified, so TMDb can only answer
+     *         with the whole response.
+     */
+    public HashMap<String, String> conditionalHeaders() {
+        HashMap<String, String> headers = new HashMap<>();
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+        return headers;
+    }
+
+    /**
+     * @param now when the response arrived.
+     * @param cacheControl its Cache-Control header, or null.
+     * @return when a response stops being fresh: after its max-age, right away if it's not
+     *         to be used without checking (no-cache or no-store), or else after
+     *         DEFAULT_TTL_MILLIS.
+     */
+    public static long expiresAt(long now, String cacheControl) {
+        return now + maxAgeMillis(cacheControl);
+    }
+
+    static long maxAgeMillis(String cacheControl) {
+        if (cacheControl == null) {
+            return DEFAULT_TTL_MILLIS;
+        }
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim().toLowerCase(Locale.US);
+            if (directive.equals("no-cache") || directive.equals("no-store")) {
+                return 0;
+            }
+            if (directive.startsWith("max-age=")) {
+                String seconds = directive.substring(8);
+                try {
+                    long maxAge = Long.parseLong(seconds);
+                    return Math.max(0, Math.min(maxAge, MAX_AGE_SECONDS)) * 1000;
+                } catch (NumberFormatException e) {
+                    // Too many digits for a long is still just a very long time.
+                    return seconds.matches("[0-9]+")
+                            ? MAX_AGE_SECONDS * 1000 : DEFAULT_TTL_MILLIS;
+                }
+            }
+        }
+        return DEFAULT_TTL_MILLIS;
+    }
+}
@@ -0,0 +1,113 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * What to make of TMDb's answer to a request that may have been conditional (see
+ * CachedResponse.conditionalHeaders), so MovieFetcher only has to store and hand on the
+ * result:
+ * - a 304 for a cached response is NOT_MODIFIED: the cached response is good for a while
+ *   longer, and the body isn't read or parsed at all;
+ * - a 200 is MODIFIED: the body is parsed as it's read, and kept as the new cached
+ *   response along with its validators;
+ * - anything else is FAILED.
+ *
+ * @param <T> what the body is parsed into.
+ */
+public class ConditionalGet<T> {
+    public static final int NOT_MODIFIED = 0;
+    public static final int MODIFIED = 1;
+    public static final int FAILED = 2;
+
+    /**
+     * The parts of an HTTP response used here (HttpClient.Response in the app).
+     */
+    public interface Response {
+        int getCode();
+
+        String getHeader(String name);
+
+        InputStream getBody();
+    }
+
+    public interface Parser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    public final int outcome;
+    // The response to cache from now on, or null if FAILED.
+    public final CachedResponse entry;
+    // The parsed body, or null unless MODIFIED.
+    public final T parsed;
+
+    private ConditionalGet(int outcome, CachedResponse entry, T parsed) {
+        this.outcome = outcome;
+        this.entry = entry;
+        this.parsed = parsed;
+    }
+
+    /**
+     * @param cached the response the request was made conditional on, or null.
+     * @param now when the response arrived.
+     * @throws IOException if reading or parsing the body failed.
+     */
+    public static <T> ConditionalGet<T> read(CachedResponse cached, Response response,
+                                             long now, Parser<T> parser) throws IOException {
+        long expiresAt = CachedResponse.expiresAt(now, response.getHeader("Cache-Control"));
+        int code = response.getCode();
+        if (cached != null && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            // Unchanged: nothing to download or parse, just good for a while longer.
+            Metrics.count(Metrics.PAGES_NOT_MODIFIED);
+            return new ConditionalGet<>(NOT_MODIFIED, cached.withExpiry(expiresAt), null);
+        }
+        if (code != HttpURLConnection.HTTP_OK) {
+            return new ConditionalGet<>(FAILED, null, null);
+        }
+
+        // The body is copied aside as the parser reads it, then kept for next time.
+        CopyingInputStream body = new CopyingInputStream(response.getBody());
+        long start = Metrics.start();
+        T parsed = parser.parse(body);
+        Metrics.stop(Metrics.PARSE, start);
+        CachedResponse entry = new CachedResponse(response.getHeader("ETag"),
+                response.getHeader("Last-Modified"), expiresAt, body.toByteArray());
+        return new ConditionalGet<>(MODIFIED, entry, parsed);
+    }
+
+    /**
+     * Passes the stream through unchanged, keeping a copy of every byte read.
+     */
+    private static class CopyingInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream mCopy = new ByteArrayOutputStream(16 * 1024);
+
+        CopyingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCopy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                mCopy.write(buffer, offset, n);
+            }
+            return n;
+        }
+
+        byte[] toByteArray() {
+            return mCopy.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+
+/**
+ * One page of a discover response: its movies, and how many pages TMDb says the query
+ * has, so MoviePager knows when to stop.
+ */
+public class DiscoverPage {
+    // Stands in for a response without "total_pages".
+    public static final int UNKNOWN_TOTAL = 0;
+
+    public final ArrayList<Movie> movies;
+    public final int totalPages;
+
+    public DiscoverPage(ArrayList<Movie> movies, int totalPages) {
+        this.movies = movies;
+        this.totalPages = totalPages;
+    }
+}
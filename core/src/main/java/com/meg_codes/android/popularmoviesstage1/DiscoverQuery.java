@@ -0,0 +1,231 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * The discover queries the grid can show, one per sort order preference. Each one is
+ * its own query to TMDb (so "vote" really is the highest rated movies, not the most
+ * popular ones re-sorted), and so gets its own pages, cached responses and results.
+ *
+ * The newest, now playing and upcoming queries are discover queries too, limited to a
+ * window of release dates around today, the same way TMDb's own "movie/now_playing" and
+ * "movie/upcoming" lists are made. Going through discover keeps them in the same pager,
+ * cache and parser as the others, and TMDb's primary release date is the one Movie has,
+ * so the window can be checked here too (see accepts), against the packed date, without
+ * comparing any strings. The dates are in the URL, so each day has its own cache entries.
+ */
+public class DiscoverQuery {
+    // Without a minimum, the top of the vote sort is movies with a single 10/10 vote.
+    private static final int MIN_VOTE_COUNT = 100;
+    // Without one, the newest movies are mostly ones nobody has heard of.
+    private static final int MIN_NEWEST_VOTE_COUNT = 10;
+    // How far back "now playing" goes, and how far ahead "upcoming" looks, in days.
+    private static final int NOW_PLAYING_DAYS = 30;
+    private static final int UPCOMING_DAYS = 60;
+    // A window with no start or no end.
+    private static final int OPEN = Integer.MIN_VALUE;
+
+    public static final DiscoverQuery POPULARITY = new DiscoverQuery(
+            "popularity", "sort_by=popularity.desc", MovieSorter.BY_POPULARITY);
+    public static final DiscoverQuery VOTE_AVERAGE = new DiscoverQuery(
+            "vote", "sort_by=vote_average.desc&vote_count.gte=" + MIN_VOTE_COUNT,
+            MovieSorter.BY_VOTE_AVERAGE);
+    // Released up to today, newest first.
+    public static final DiscoverQuery NEWEST = new DiscoverQuery(
+            "newest", "sort_by=primary_release_date.desc&vote_count.gte=" + MIN_NEWEST_VOTE_COUNT,
+            MovieSorter.BY_RELEASE_DATE, OPEN, 0);
+    // Released in the last few weeks, most popular first.
+    public static final DiscoverQuery NOW_PLAYING = new DiscoverQuery(
+            "now_playing", "sort_by=popularity.desc", MovieSorter.BY_POPULARITY,
+            -NOW_PLAYING_DAYS, 0);
+    // Coming out in the next few weeks, most popular first.
+    public static final DiscoverQuery UPCOMING = new DiscoverQuery(
+            "upcoming", "sort_by=popularity.desc", MovieSorter.BY_POPULARITY,
+            1, UPCOMING_DAYS);
+
+    private static final DiscoverQuery[] ALL =
+            {POPULARITY, VOTE_AVERAGE, NEWEST, NOW_PLAYING, UPCOMING};
+
+    private final String mName;
+    private final String mParameters;
+    private final int mSortCriterion;
+    // The release date window, in days from today, or OPEN.
+    private final int mFromDay;
+    private final int mToDay;
+
+    // The window worked out for today (see updateWindow), as yyyymmdd like
+    // Movie.getReleaseDateValue, and the parameters with it, good from today's midnight
+    // until the next. Guarded by this.
+    private long mWindowStartsMillis;
+    private long mWindowExpiresMillis;
+    private int mWindowFrom;
+    private int mWindowTo;
+    private String mWindowParameters;
+
+    private DiscoverQuery(String name, String parameters, int sortCriterion) {
+        this(name, parameters, sortCriterion, OPEN, OPEN);
+    }
+
+    private DiscoverQuery(String name, String parameters, int sortCriterion,
+                          int fromDay, int toDay) {
+        mName = name;
+        mParameters = parameters;
+        mSortCriterion = sortCriterion;
+        mFromDay = fromDay;
+        mToDay = toDay;
+    }
+
+    /**
+     * @param sortOrder the sort order preference, "popularity", "vote", "newest",
+     *                  "now_playing" or "upcoming".
+     * @return the matching query, POPULARITY if the value isn't known.
+     */
+    public static DiscoverQuery forPreference(String sortOrder) {
+        for (DiscoverQuery query : ALL) {
+            if (query.mName.equals(sortOrder)) {
+                return query;
+            }
+        }
+        return POPULARITY;
+    }
+
+    /**
+     * @return every query, for prefetching the ones not on screen.
+     */
+    public static DiscoverQuery[] all() {
+        return ALL.clone();
+    }
+
+    /**
+     * @return the preference value this query is for.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Called for every page, from the fetch workers.
+     *
+     * @return the query's parameters for the discover URL, without the page or API key,
+     *         with today's release date window if it has one.
+     */
+    public String getParameters() {
+        return getParameters(System.currentTimeMillis());
+    }
+
+    /**
+     * Same as getParameters, for a given time rather than now.
+     */
+    String getParameters(long nowMillis) {
+        if (!hasWindow()) {
+            return mParameters;
+        }
+        synchronized (this) {
+            updateWindow(nowMillis);
+            return mWindowParameters;
+        }
+    }
+
+    /**
+     * Checks a movie's release date against today's window, for movies that were loaded on
+     * an earlier day (see MovieSnapshot). Movies without a date are never in a window.
+     *
+     * @return true if the movie belongs in the query's results.
+     */
+    public boolean accepts(Movie movie) {
+        return accepts(movie, System.currentTimeMillis());
+    }
+
+    /**
+     * Same as accepts, for a given time rather than now.
+     */
+    boolean accepts(Movie movie, long nowMillis) {
+        if (!hasWindow()) {
+            return true;
+        }
+        int date = movie.getReleaseDateValue();
+        synchronized (this) {
+            updateWindow(nowMillis);
+            return date != 0 && date >= mWindowFrom && date <= mWindowTo;
+        }
+    }
+
+    private boolean hasWindow() {
+        return mFromDay != OPEN || mToDay != OPEN;
+    }
+
+    /**
+     * Works out the window again if the day has changed since it was last worked out,
+     * either way (the clock can be set back). Otherwise this is just a comparison, so it's
+     * fine for every movie in a list.
+     */
+    private void updateWindow(long nowMillis) {
+        if (nowMillis >= mWindowStartsMillis && nowMillis < mWindowExpiresMillis) {
+            return;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(nowMillis);
+        StringBuilder parameters = new StringBuilder(mParameters);
+        mWindowFrom = 0;
+        if (mFromDay != OPEN) {
+            mWindowFrom = packDate(daysFrom(calendar, mFromDay));
+            parameters.append("&primary_release_date.gte=").append(formatDate(mWindowFrom));
+        }
+        mWindowTo = Integer.MAX_VALUE;
+        if (mToDay != OPEN) {
+            mWindowTo = packDate(daysFrom(calendar, mToDay));
+            parameters.append("&primary_release_date.lte=").append(formatDate(mWindowTo));
+        }
+        mWindowParameters = parameters.toString();
+
+        mWindowStartsMillis = midnight(calendar, 0);
+        mWindowExpiresMillis = midnight(calendar, 1);
+    }
+
+    /**
+     * @return the start of the day that many days from today.
+     */
+    private static long midnight(Calendar today, int days) {
+        Calendar midnight = daysFrom(today, days);
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        return midnight.getTimeInMillis();
+    }
+
+    private static Calendar daysFrom(Calendar today, int days) {
+        Calendar day = (Calendar) today.clone();
+        day.add(Calendar.DAY_OF_MONTH, days);
+        return day;
+    }
+
+    /**
+     * @return the day as yyyymmdd, like Movie.getReleaseDateValue.
+     */
+    private static int packDate(Calendar day) {
+        return day.get(Calendar.YEAR) * 10000 + (day.get(Calendar.MONTH) + 1) * 100
+                + day.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * @return a yyyymmdd date as TMDb takes it, "YYYY-MM-DD".
+     */
+    private static String formatDate(int date) {
+        return String.format(Locale.US, "%04d-%02d-%02d",
+                date / 10000, date / 100 % 100, date % 100);
+    }
+
+    /**
+     * @return the MovieSorter criterion that keeps the results in the query's order.
+     */
+    public int getSortCriterion() {
+        return mSortCriterion;
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
@@ -0,0 +1,73 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+/**
+ * TMDb's movie genres, as one table shared by every Movie.
+ *
+ * A movie keeps its genres as an int with one bit per genre, the bit being the genre's
+ * position in this table, rather than as a list of ids. That's 4 bytes per movie no
+ * matter how many genres it has, and "does it have this genre" is a single AND.
+ * TMDb has 19 movie genres, so there's plenty of room in an int.
+ */
+public class Genres {
+    // TMDb's genre ids ("genre_ids" in the discover results) and their names, in the same
+    // order. A genre's bit in a mask is its index here.
+    private static final int[] IDS = {
+            28, 12, 16, 35, 80, 99, 18, 10751, 14, 36,
+            27, 10402, 9648, 10749, 878, 10770, 53, 10752, 37};
+    private static final String[] NAMES = {
+            "Action", "Adventure", "Animation", "Comedy", "Crime", "Documentary", "Drama",
+            "Family", "Fantasy", "History", "Horror", "Music", "Mystery", "Romance",
+            "Science Fiction", "TV Movie", "Thriller", "War", "Western"};
+
+    private Genres() {
+    }
+
+    /**
+     * @return the number of genres in the table.
+     */
+    public static int count() {
+        return IDS.length;
+    }
+
+    /**
+     * @return the bit for a TMDb genre id, or 0 for an id that isn't in the table.
+     */
+    public static int bitForId(int genreId) {
+        for (int i = 0; i < IDS.length; i++) {
+            if (IDS[i] == genreId) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the TMDb genre id of the genre at this index in the table.
+     */
+    public static int idAt(int index) {
+        return IDS[index];
+    }
+
+    /**
+     * @return the name of the genre at this index in the table.
+     */
+    public static String nameAt(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * @return the names of the genres in the mask, separated by ", ".
+     */
+    public static String names(int genreMask) {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < IDS.length; i++) {
+            if ((genreMask & (1 << i)) != 0) {
+                if (names.length() > 0) {
+                    names.append(", ");
+                }
+                names.append(NAMES[i]);
+            }
+        }
+        return names.toString();
+    }
+}
@@ -0,0 +1,296 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Where the time goes between asking TMDb for a page and its posters being on screen,
+ * stage by stage, plus the counters of what the caches, the HTTP client, the RateLimiter
+ * and the DetailPrefetcher did, so builds can be compared on real devices. This is the
+ * one place they're all kept. Shown by the debug overlay in MovieGridActivity, and
+ * written to a file with dumpToFile.
+ *
+ * A stage is timed with start() and stop(), on any thread:
+ *
+ *     long start = Metrics.start();
+ *     ...
+ *     Metrics.stop(Metrics.PARSE, start);
+ *
+ * Recording doesn't allocate. Each stage's timings go into a fixed histogram of
+ * power-of-two buckets in microseconds, so percentiles are only known to within a factor
+ * of two, which is plenty to spot a regression. Times come from System.nanoTime, which
+ * doesn't jump when the wall clock is changed.
+ *
+ * Metrics start off. The app turns them on in debug builds (see PopularMoviesApplication),
+ * and the core module's tests and benchmarks leave them off. When off, start() returns 0
+ * and stop() does nothing with it, so what's left is reading one volatile.
+ */
+public final class Metrics {
+
+    // Timed stages.
+    // DNS lookup and the TCP and TLS handshakes (HttpURLConnection doesn't time them
+    // separately). Next to nothing for a kept-alive connection.
+    public static final int CONNECT = 0;
+    // From sending a request to its response headers arriving.
+    public static final int TTFB = 1;
+    // From the response headers to the end of the body. Discover pages are parsed as
+    // they download, so this includes their PARSE.
+    public static final int DOWNLOAD = 2;
+    public static final int PARSE = 3;
+    // From a fetch worker picking a page up to handing it to the main thread, cache or not.
+    public static final int PAGE = 4;
+    public static final int SORT = 5;
+    // Filtering the sorted movies and working out the adapter's changes.
+    public static final int DIFF = 6;
+    // Handing a list to the grid's adapter and notifying it, on the main thread.
+    public static final int ADAPTER_UPDATE = 7;
+    public static final int BIND = 8;
+    // From a poster being asked for to it being on screen, when it wasn't in memory.
+    public static final int POSTER_LOAD = 9;
+    // Reading a poster file and decoding it (Picasso does both in one go).
+    public static final int POSTER_DECODE = 10;
+    // Time a TMDb request waited for a RateLimiter token, one stage per lane
+    // (TOKEN_WAIT_VISIBLE + lane).
+    public static final int TOKEN_WAIT_VISIBLE = 11;
+    public static final int TOKEN_WAIT_PREFETCH = 12;
+    public static final int TOKEN_WAIT_REFRESH = 13;
+    private static final String[] STAGE_NAMES = {"connect", "ttfb", "download", "parse",
+            "page", "sort", "diff", "adapter", "bind", "poster", "decode", "token-vis",
+            "token-pre", "token-ref"};
+
+    // Counters.
+    public static final int HTTP_REQUESTS = 0;
+    public static final int HTTP_RETRIES = 1;
+    public static final int HTTP_FAILURES = 2;
+    public static final int HTTP_WIRE_BYTES = 3;
+    // The same responses unzipped, next to HTTP_WIRE_BYTES to see what gzip saves.
+    public static final int HTTP_BODY_BYTES = 4;
+    // Discover pages served from DiscoverCache without asking TMDb, and stale ones TMDb
+    // answered with 304.
+    public static final int PAGES_CACHED = 5;
+    public static final int PAGES_NOT_MODIFIED = 6;
+    // Lookups in the decoded poster cache (PosterCache), for any screen, and bitmaps it
+    // dropped to stay in its budget.
+    public static final int POSTER_MEMORY_HITS = 7;
+    public static final int POSTER_MEMORY_MISSES = 8;
+    public static final int POSTER_MEMORY_EVICTIONS = 9;
+    // The same for the poster files (PosterDiskCache), where a miss is a download.
+    public static final int POSTER_DISK_HITS = 10;
+    public static final int POSTER_DOWNLOADS = 11;
+    public static final int POSTER_DISK_EVICTIONS = 12;
+    // Grid posters that couldn't be shown.
+    public static final int POSTER_FAILURES = 13;
+    // Movies DetailPrefetcher prefetched, the bytes that took, and the ones it skipped
+    // because its budget was spent.
+    public static final int DETAILS_PREFETCHED = 14;
+    public static final int DETAILS_PREFETCHED_BYTES = 15;
+    public static final int DETAILS_SKIPPED = 16;
+    // Detail screens opened with their details there already, still on their way, or
+    // not prefetched at all.
+    public static final int DETAILS_READY = 17;
+    public static final int DETAILS_LATE = 18;
+    public static final int DETAILS_NOT_PREFETCHED = 19;
+    // Prefetched movies dropped from DetailPrefetcher without having been opened.
+    public static final int DETAILS_WASTED = 20;
+    public static final int DETAILS_WASTED_BYTES = 21;
+    // RateLimiter tokens handed out, one counter per lane (TOKENS_VISIBLE + lane).
+    public static final int TOKENS_VISIBLE = 22;
+    public static final int TOKENS_PREFETCH = 23;
+    public static final int TOKENS_REFRESH = 24;
+    // Bytes of the poster files downloaded (see PosterUrls).
+    public static final int POSTER_BYTES = 25;
+    private static final String[] COUNTER_NAMES = {"http requests", "http retries",
+            "http failures", "http wire bytes", "http body bytes", "pages cached",
+            "pages 304", "poster memory hits", "poster memory misses",
+            "poster memory evictions", "poster disk hits", "poster downloads",
+            "poster disk evictions", "poster failures", "details prefetched",
+            "details prefetched bytes", "details skipped", "details ready", "details late",
+            "details not prefetched", "details wasted", "details wasted bytes",
+            "tokens visible", "tokens prefetch", "tokens refresh", "poster bytes"};
+
+    // Bucket b holds times of 2^(b-1) to 2^b - 1 us (bucket 0 is under 1 us). The last one
+    // takes everything from about 4 seconds up.
+    private static final int BUCKETS = 24;
+
+    private static final Object sLock = new Object();
+    private static final long[] sBuckets = new long[STAGE_NAMES.length * BUCKETS];
+    private static final long[] sCounts = new long[STAGE_NAMES.length];
+    private static final long[] sTotalMicros = new long[STAGE_NAMES.length];
+    private static final long[] sMaxMicros = new long[STAGE_NAMES.length];
+    private static final long[] sCounters = new long[COUNTER_NAMES.length];
+    private static volatile boolean sEnabled;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * @return the time to pass to stop, or 0 if metrics are off.
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since start in the stage's histogram.
+     */
+    public static void stop(int stage, long start) {
+        if (start != 0) {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a time that was measured some other way.
+     */
+    public static void record(int stage, long nanos) {
+        if (!sEnabled) {
+            return;
+        }
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        synchronized (sLock) {
+            sBuckets[stage * BUCKETS + bucket]++;
+            sCounts[stage]++;
+            sTotalMicros[stage] += micros;
+            sMaxMicros[stage] = Math.max(sMaxMicros[stage], micros);
+        }
+    }
+
+    public static void count(int counter) {
+        count(counter, 1);
+    }
+
+    public static void count(int counter, long amount) {
+        if (!sEnabled) {
+            return;
+        }
+        synchronized (sLock) {
+            sCounters[counter] += amount;
+        }
+    }
+
+    /**
+     * @return a counter's total so far, for tests.
+     */
+    static long getCounter(int counter) {
+        synchronized (sLock) {
+            return sCounters[counter];
+        }
+    }
+
+    /**
+     * Starts counting from scratch, for measuring one scenario on its own.
+     */
+    public static void reset() {
+        synchronized (sLock) {
+            Arrays.fill(sBuckets, 0);
+            Arrays.fill(sCounts, 0);
+            Arrays.fill(sTotalMicros, 0);
+            Arrays.fill(sMaxMicros, 0);
+            Arrays.fill(sCounters, 0);
+        }
+    }
+
+    /**
+     * @return a few lines for the overlay: the median, 90th percentile and longest time of
+     *         each stage that has been timed, in milliseconds, then the counters that
+     *         aren't 0.
+     */
+    public static String summary() {
+        StringBuilder out = new StringBuilder();
+        synchronized (sLock) {
+            out.append(String.format(Locale.US, "%-9s %6s %7s %7s %7s%n",
+                    "stage", "n", "p50", "p90", "max"));
+            for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+                if (sCounts[stage] == 0) {
+                    continue;
+                }
+                out.append(String.format(Locale.US, "%-9s %6d %7.1f %7.1f %7.1f%n",
+                        STAGE_NAMES[stage], sCounts[stage],
+                        percentileMicros(stage, 0.5) / 1000.0,
+                        percentileMicros(stage, 0.9) / 1000.0,
+                        sMaxMicros[stage] / 1000.0));
+            }
+            for (int counter = 0; counter < COUNTER_NAMES.length; counter++) {
+                if (sCounters[counter] == 0) {
+                    continue;
+                }
+                out.append(COUNTER_NAMES[counter]).append(": ").append(sCounters[counter])
+                        .append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes everything, full histograms included, to a new file in the directory.
+     *
+     * @param header lines to start the file with, like the build and the device.
+     * @return the file written.
+     */
+    public static File dumpToFile(File directory, String header) throws IOException {
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "metrics-" + time + ".txt");
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.print(header);
+            out.println("time: " + time);
+            out.println();
+            out.print(summary());
+            out.println();
+            out.println("histograms (upper bound of bucket in us: count)");
+            synchronized (sLock) {
+                for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+                    out.print(STAGE_NAMES[stage] + ": total " + sTotalMicros[stage] + " us,");
+                    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                        long count = sBuckets[stage * BUCKETS + bucket];
+                        if (count > 0) {
+                            out.print(" " + bucketLimitMicros(bucket) + ":" + count);
+                        }
+                    }
+                    out.println();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Couldn't write " + file);
+        }
+        return file;
+    }
+
+    /**
+     * @return the upper bound of the bucket the percentile falls in, or the longest time
+     *         recorded if that's less. Called holding sLock.
+     */
+    private static long percentileMicros(int stage, double percentile) {
+        long wanted = (long) Math.ceil(sCounts[stage] * percentile);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += sBuckets[stage * BUCKETS + bucket];
+            if (seen >= wanted && bucket < BUCKETS - 1) {
+                return Math.min(bucketLimitMicros(bucket), sMaxMicros[stage]);
+            }
+        }
+        return sMaxMicros[stage];
+    }
+
+    private static long bucketLimitMicros(int bucket) {
+        return (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,209 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+/**
+ * Movie class for storing Movie object characteristics.
+ * Movie objects are created from the JSON data, retrieved from the query to the
+ * TMDb API (see MovieJsonParser).
+ *
+ * Part of the core module, which is plain Java so it can be benchmarked on any JVM, so
+ * nothing in here uses Android. It used to be Parcelable, but screens only pass movie
+ * ids around now (see MovieRepository).
+ *
+ * The text the detail screen shows is worked out the first time it's asked for and kept,
+ * in the words of the MovieTextFormat it was asked with, so showing a movie again costs
+ * nothing. Sorting and filtering only ever use the numbers.
+ *
+ */
+public class Movie {
+    // Movie details taken from the JSON string from The Movie Database.
+    private long mId;
+    private String mTitle;
+    // Path of the poster on TMDb's image server, like "/abc.jpg". The size is picked when
+    // it's shown (see PosterUrls.urlFor).
+    private String mPosterPath;
+    // Path of the backdrop image, same as the poster's.
+    private String mBackdropPath;
+    private String mReleaseDate;
+    // The release date packed into one int, see getReleaseDateValue.
+    private int mReleaseDateValue;
+    // Numeric values are kept as numbers, so sorting never has to parse or format them.
+    private double mVoteAverage;
+    private int mVoteCount;
+    private double mPopularity;
+    // One bit per genre, see Genres.
+    private int mGenreMask;
+    private String mOverview;
+
+    // Display text, null until first asked for, and the format it was worked out with.
+    // Only used from the main thread.
+    private MovieTextFormat mTextFormat;
+    private String mTextReleaseDate;
+    private String mTextVoteAverage;
+
+    // Constructor requires all details (may make this an array or array list later).
+    // The TMDb id is what identifies the same movie showing up on more than one page.
+    public Movie(long id, String title, String posterPath, String backdropPath,
+                 String releaseDate, double voteAverage, int voteCount, double popularity,
+                 int genreMask, String overview) {
+        mId = id;
+        mTitle = title;
+        mPosterPath = posterPath;
+        mBackdropPath = backdropPath;
+        mReleaseDate = releaseDate;
+        mReleaseDateValue = packDate(releaseDate);
+        mVoteAverage = voteAverage;
+        mVoteCount = voteCount;
+        mPopularity = popularity;
+        mGenreMask = genreMask;
+        mOverview = overview;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getPosterPath() {
+        return mPosterPath;
+    }
+
+    public String getBackdropPath() {
+        return mBackdropPath;
+    }
+
+    /**
+     * @return the release date for the user, like "Released in Month, Year", or null if
+     *         TMDb doesn't have one.
+     */
+    public String getTextReleaseDate(MovieTextFormat format) {
+        useFormat(format);
+        if (mTextReleaseDate == null) {
+            mTextReleaseDate = format.formatReleaseDate(mReleaseDateValue);
+        }
+        return mTextReleaseDate;
+    }
+
+    /**
+     * @return the release date as TMDb sends it, "YYYY-MM-DD".
+     */
+    public String getReleaseDate() {
+        return mReleaseDate;
+    }
+
+    /**
+     * @return the release date as the number yyyymmdd (20150612 for "2015-06-12"), so dates
+     *         compare as ints, or 0 if there isn't one. A month or day that's missing is 0.
+     */
+    public int getReleaseDateValue() {
+        return mReleaseDateValue;
+    }
+
+    /**
+     * @return the year the movie was released, or 0 if that isn't known.
+     */
+    public int getReleaseYear() {
+        return mReleaseDateValue / 10000;
+    }
+
+    /**
+     * @return the average user score out of 10.
+     */
+    public double getVoteAverage() {
+        return mVoteAverage;
+    }
+
+    public String getTextVoteAverage(MovieTextFormat format) {
+        // Database form does not have the " / 10" included for the user, the format adds it.
+        useFormat(format);
+        if (mTextVoteAverage == null) {
+            mTextVoteAverage = format.formatVoteAverage(mVoteAverage);
+        }
+        return mTextVoteAverage;
+    }
+
+    /**
+     * Forgets the text worked out in another format, after the language has changed.
+     */
+    private void useFormat(MovieTextFormat format) {
+        if (format != mTextFormat) {
+            mTextFormat = format;
+            mTextReleaseDate = null;
+            mTextVoteAverage = null;
+        }
+    }
+
+    /**
+     * Reads "YYYY-MM-DD" (or as much of it as is there) digit by digit, without any
+     * substrings.
+     *
+     * @return the date as yyyymmdd, or 0 if it doesn't start with a year.
+     */
+    static int packDate(String date) {
+        if (date == null) {
+            return 0;
+        }
+        int year = digits(date, 0, 4);
+        if (year <= 0) {
+            return 0;
+        }
+        int month = digits(date, 5, 2);
+        int day = digits(date, 8, 2);
+        if (month < 1 || month > 12) {
+            return year * 10000;
+        }
+        return year * 10000 + month * 100 + Math.max(0, Math.min(day, 31));
+    }
+
+    /**
+     * @return the number made of count digits from start, or -1 if they aren't all there.
+     */
+    private static int digits(String s, int start, int count) {
+        if (s.length() < start + count) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @return how many users voted for the vote average.
+     */
+    public int getVoteCount() {
+        return mVoteCount;
+    }
+
+    public double getPopularity() {
+        return mPopularity;
+    }
+
+    /**
+     * @return the movie's genres, one bit each (see Genres).
+     */
+    public int getGenreMask() {
+        return mGenreMask;
+    }
+
+    public boolean hasGenre(int genreBit) {
+        return (mGenreMask & genreBit) != 0;
+    }
+
+    public String getOverview() {
+        return mOverview;
+    }
+
+    public String toString() {
+        return mId + "--" + mTitle + "--" + mPosterPath + "--" + mBackdropPath
+                + "--" + mReleaseDate + "--" + mVoteAverage + "--" + mVoteCount
+                + "--" + mPopularity + "--" + Genres.names(mGenreMask) + "--" + mOverview;
+    }
+}
@@ -0,0 +1,43 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+/**
+ * What the detail screen shows about a movie on top of what discover sends (see Movie),
+ * from TMDb's "movie/{id}" request. Fetched ahead of time by DetailPrefetcher.
+ */
+public class MovieDetails {
+    private final long mId;
+    // In minutes, 0 when TMDb doesn't know it.
+    private final int mRuntime;
+    // Null when the movie doesn't have one.
+    private final String mTagline;
+
+    public MovieDetails(long id, int runtime, String tagline) {
+        mId = id;
+        mRuntime = runtime;
+        mTagline = tagline != null && tagline.length() > 0 ? tagline : null;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public int getRuntime() {
+        return mRuntime;
+    }
+
+    /**
+     * @return the runtime for the user, or null when it isn't known.
+     */
+    public String getTextRuntime(MovieTextFormat format) {
+        return format.formatRuntime(mRuntime);
+    }
+
+    public String getTagline() {
+        return mTagline;
+    }
+
+    @Override
+    public String toString() {
+        return "MovieDetails{" + mId + ", " + mRuntime + " min, " + mTagline + "}";
+    }
+}
@@ -0,0 +1,97 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+/**
+ * The filter preferences (genre, release year range, minimum vote average and minimum
+ * vote count), as MovieGridFragment reads them from SettingsActivity's preferences. Each
+ * one is off when left at its default. MovieFilterIndex applies them to the loaded movies.
+ */
+public class MovieFilter {
+    // A filter that lets every movie through.
+    public static final MovieFilter NONE = new MovieFilter(0, 0, Integer.MAX_VALUE, 0, 0);
+
+    private final int mGenreBit;
+    private final int mMinYear;
+    private final int mMaxYear;
+    private final double mMinVoteAverage;
+    private final int mMinVoteCount;
+
+    /**
+     * @param genreBit the Genres bit movies must have, 0 for any genre.
+     * @param minYear the earliest release year, 0 for no limit.
+     * @param maxYear the latest release year, Integer.MAX_VALUE for no limit.
+     */
+    public MovieFilter(int genreBit, int minYear, int maxYear, double minVoteAverage,
+                       int minVoteCount) {
+        mGenreBit = genreBit;
+        mMinYear = minYear;
+        mMaxYear = maxYear;
+        mMinVoteAverage = minVoteAverage;
+        mMinVoteCount = minVoteCount;
+    }
+
+    /**
+     * @return true if the filter lets every movie through.
+     */
+    public boolean isEmpty() {
+        return mGenreBit == 0 && !hasYearRange() && mMinVoteAverage <= 0 && mMinVoteCount <= 0;
+    }
+
+    /**
+     * Checks a single movie, for movies added after the index was built.
+     */
+    public boolean matches(Movie movie) {
+        if (mGenreBit != 0 && !movie.hasGenre(mGenreBit)) {
+            return false;
+        }
+        if (hasYearRange()) {
+            int year = movie.getReleaseYear();
+            if (year < mMinYear || year > mMaxYear) {
+                return false;
+            }
+        }
+        return movie.getVoteAverage() >= mMinVoteAverage
+                && movie.getVoteCount() >= mMinVoteCount;
+    }
+
+    public int getGenreBit() {
+        return mGenreBit;
+    }
+
+    public boolean hasYearRange() {
+        return mMinYear > 0 || mMaxYear < Integer.MAX_VALUE;
+    }
+
+    public int getMinYear() {
+        return mMinYear;
+    }
+
+    public int getMaxYear() {
+        return mMaxYear;
+    }
+
+    public double getMinVoteAverage() {
+        return mMinVoteAverage;
+    }
+
+    public int getMinVoteCount() {
+        return mMinVoteCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MovieFilter)) {
+            return false;
+        }
+        MovieFilter other = (MovieFilter) o;
+        return mGenreBit == other.mGenreBit && mMinYear == other.mMinYear
+                && mMaxYear == other.mMaxYear && mMinVoteAverage == other.mMinVoteAverage
+                && mMinVoteCount == other.mMinVoteCount;
+    }
+
+    @Override
+    public int hashCode() {
+        long voteAverageBits = Double.doubleToLongBits(mMinVoteAverage);
+        int result = ((mGenreBit * 31 + mMinYear) * 31 + mMaxYear) * 31 + mMinVoteCount;
+        return result * 31 + (int) (voteAverageBits ^ (voteAverageBits >>> 32));
+    }
+}
@@ -0,0 +1,216 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Indexes over a list of movies for applying a MovieFilter without checking every movie,
+ * so combining every filter over 10k+ movies stays well inside a frame.
+ *
+ * Built once per list (see build), it holds:
+ * - a BitSet per genre, with the positions of the movies that have it, and its size;
+ * - for release year, vote average and vote count, the positions sorted by that value
+ *   (highest first) next to the sorted values.
+ *
+ * Each filter then narrows the list to a set of candidates: the genre's set as it is, and
+ * a binary search in the sorted values for the others, which gives a run of positions.
+ * Only the smallest of them is gone through, checking the other filters on each movie in
+ * it with MovieFilter.matches. Going through one set is cheaper than building every set
+ * and ANDing them together, since a range as wide as the list would cost as much as
+ * checking every movie (see MovieFilterIndexBenchmark).
+ */
+public class MovieFilterIndex {
+    private final List<Movie> mMovies;
+    private final int mSize;
+    private final BitSet[] mGenreSets;
+    private final int[] mGenreCounts;
+
+    private final int[] mYearOrder;
+    private final double[] mSortedYears;
+    private final int[] mVoteAverageOrder;
+    private final double[] mSortedVoteAverages;
+    private final int[] mVoteCountOrder;
+    private final double[] mSortedVoteCounts;
+
+    private MovieFilterIndex(List<Movie> movies) {
+        mMovies = movies;
+        mSize = movies.size();
+        mGenreSets = new BitSet[Genres.count()];
+        for (int g = 0; g < mGenreSets.length; g++) {
+            mGenreSets[g] = new BitSet(mSize);
+        }
+
+        double[] years = new double[mSize];
+        double[] voteAverages = new double[mSize];
+        double[] voteCounts = new double[mSize];
+        for (int i = 0; i < mSize; i++) {
+            Movie m = movies.get(i);
+            int mask = m.getGenreMask();
+            for (int g = 0; mask != 0; g++, mask >>>= 1) {
+                if ((mask & 1) != 0) {
+                    mGenreSets[g].set(i);
+                }
+            }
+            years[i] = m.getReleaseYear();
+            voteAverages[i] = m.getVoteAverage();
+            voteCounts[i] = m.getVoteCount();
+        }
+
+        mGenreCounts = new int[mGenreSets.length];
+        for (int g = 0; g < mGenreSets.length; g++) {
+            mGenreCounts[g] = mGenreSets[g].cardinality();
+        }
+
+        mYearOrder = sortedPositions(years);
+        mSortedYears = sortedValues(years, mYearOrder);
+        mVoteAverageOrder = sortedPositions(voteAverages);
+        mSortedVoteAverages = sortedValues(voteAverages, mVoteAverageOrder);
+        mVoteCountOrder = sortedPositions(voteCounts);
+        mSortedVoteCounts = sortedValues(voteCounts, mVoteCountOrder);
+    }
+
+    /**
+     * Indexes the movies. The list mustn't change while the index is in use.
+     */
+    public static MovieFilterIndex build(List<Movie> movies) {
+        return new MovieFilterIndex(movies);
+    }
+
+    /**
+     * @return the positions of the movies that pass the filter.
+     */
+    public BitSet matching(MovieFilter filter) {
+        BitSet result = new BitSet(mSize);
+        if (filter.isEmpty()) {
+            result.set(0, mSize);
+            return result;
+        }
+
+        // The narrowest of the filters' candidates: either a genre's set, or a run of
+        // positions in one of the sorted orders.
+        int genreBit = filter.getGenreBit();
+        BitSet genreSet = null;
+        int smallest = mSize;
+        if (genreBit != 0) {
+            int g = Integer.numberOfTrailingZeros(genreBit);
+            genreSet = mGenreSets[g];
+            smallest = mGenreCounts[g];
+        }
+        int[] order = null;
+        int from = 0;
+        int to = mSize;
+        if (filter.hasYearRange()) {
+            // Sorted highest first: years above the maximum come before the range,
+            // years below the minimum after it.
+            int above = countAbove(mSortedYears, filter.getMaxYear());
+            int atLeast = countAtLeast(mSortedYears, filter.getMinYear());
+            if (atLeast - above < smallest) {
+                order = mYearOrder;
+                from = above;
+                to = Math.max(above, atLeast);
+                smallest = to - from;
+            }
+        }
+        if (filter.getMinVoteAverage() > 0) {
+            int atLeast = countAtLeast(mSortedVoteAverages, filter.getMinVoteAverage());
+            if (atLeast < smallest) {
+                order = mVoteAverageOrder;
+                from = 0;
+                to = atLeast;
+                smallest = atLeast;
+            }
+        }
+        if (filter.getMinVoteCount() > 0) {
+            int atLeast = countAtLeast(mSortedVoteCounts, filter.getMinVoteCount());
+            if (atLeast < smallest) {
+                order = mVoteCountOrder;
+                from = 0;
+                to = atLeast;
+            }
+        }
+
+        if (order != null) {
+            for (int i = from; i < to; i++) {
+                int position = order[i];
+                if (filter.matches(mMovies.get(position))) {
+                    result.set(position);
+                }
+            }
+        } else if (genreSet != null) {
+            for (int i = genreSet.nextSetBit(0); i >= 0; i = genreSet.nextSetBit(i + 1)) {
+                if (filter.matches(mMovies.get(i))) {
+                    result.set(i);
+                }
+            }
+        } else {
+            // None of the filters leaves anything out, like a range of years wider than
+            // the list's.
+            result.set(0, mSize);
+        }
+        return result;
+    }
+
+    /**
+     * @return the movies that pass the filter, in the list's order.
+     */
+    public ArrayList<Movie> filter(MovieFilter filter) {
+        BitSet matching = matching(filter);
+        ArrayList<Movie> movies = new ArrayList<>(matching.cardinality());
+        for (int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1)) {
+            movies.add(mMovies.get(i));
+        }
+        return movies;
+    }
+
+    private static int[] sortedPositions(double[] values) {
+        int[] order = new int[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        MovieSorter.sortDescending(values, order);
+        return order;
+    }
+
+    private static double[] sortedValues(double[] values, int[] order) {
+        double[] sorted = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = values[order[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * @return how many of the values (sorted highest first) are at least the threshold.
+     */
+    private static int countAtLeast(double[] sortedDescending, double threshold) {
+        int low = 0;
+        int high = sortedDescending.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedDescending[middle] >= threshold) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return how many of the values (sorted highest first) are above the threshold.
+     */
+    private static int countAbove(double[] sortedDescending, double threshold) {
+        int low = 0;
+        int high = sortedDescending.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedDescending[middle] > threshold) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,202 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+/**
+ * Streaming (pull) parser for the "discover/movie" response from the TMDb API.
+ *
+ * Reads the HttpURLConnection's input stream token by token and builds Movie objects
+ * as it goes, so the response is never held in memory as one big String or as a
+ * JSONObject tree. Keys that the app doesn't use are skipped without being decoded.
+ *
+ * Uses Gson's JsonReader, which Android's android.util.JsonReader was copied from, so the
+ * core module runs on a plain JVM.
+ *
+ * Also reads the "movie/{id}" response, for the few details discover doesn't have (see
+ * MovieDetails).
+ */
+public class MovieJsonParser {
+    // Keys to get values from the JSON response to create Movie objects.
+    private static final String RESULTS_KEY = "results";
+    private static final String TOTAL_PAGES_KEY = "total_pages";
+    private static final String ID_KEY = "id";
+    private static final String ORIGINAL_TITLE_KEY = "original_title";
+    private static final String POSTER_PATH_KEY = "poster_path";
+    private static final String BACKDROP_PATH_KEY = "backdrop_path";
+    private static final String RELEASE_DATE_KEY = "release_date";
+    private static final String VOTE_AVERAGE_KEY = "vote_average";
+    private static final String VOTE_COUNT_KEY = "vote_count";
+    private static final String GENRE_IDS_KEY = "genre_ids";
+    private static final String POPULARITY_KEY = "popularity";
+    private static final String OVERVIEW_KEY = "overview";
+    private static final String RUNTIME_KEY = "runtime";
+    private static final String TAGLINE_KEY = "tagline";
+
+    private MovieJsonParser() {
+    }
+
+    /**
+     * Parses a discover response straight from the stream. The stream is closed when done.
+     *
+     * @param in the response body, as returned by HttpURLConnection.getInputStream().
+     * @return the movies in the order they appear in the "results" array.
+     * @throws IOException if the stream can't be read or isn't the expected JSON.
+     */
+    public static ArrayList<Movie> parseDiscover(InputStream in) throws IOException {
+        return parseDiscoverPage(in).movies;
+    }
+
+    /**
+     * Same as parseDiscover, along with the query's number of pages.
+     */
+    public static DiscoverPage parseDiscoverPage(InputStream in) throws IOException {
+        ArrayList<Movie> movies = new ArrayList<>();
+        int totalPages = DiscoverPage.UNKNOWN_TOTAL;
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (RESULTS_KEY.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        movies.add(readMovie(reader));
+                    }
+                    reader.endArray();
+                } else if (TOTAL_PAGES_KEY.equals(name)) {
+                    totalPages = (int) nextDoubleOrZero(reader);
+                } else {
+                    // "page" and "total_results" aren't used.
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return new DiscoverPage(movies, totalPages);
+    }
+
+    /**
+     * Parses a "movie/{id}" response straight from the stream. The stream is closed when
+     * done. Everything but the runtime and tagline is skipped, the rest is already known
+     * from discover.
+     *
+     * @throws IOException if the stream can't be read or isn't the expected JSON.
+     */
+    public static MovieDetails parseDetails(InputStream in) throws IOException {
+        long id = 0;
+        int runtime = 0;
+        String tagline = null;
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (ID_KEY.equals(name)) {
+                    id = reader.nextLong();
+                } else if (RUNTIME_KEY.equals(name)) {
+                    runtime = (int) nextDoubleOrZero(reader);
+                } else if (TAGLINE_KEY.equals(name)) {
+                    tagline = nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return new MovieDetails(id, runtime, tagline);
+    }
+
+    /**
+     * Reads a single entry of the "results" array.
+     */
+    private static Movie readMovie(JsonReader reader) throws IOException {
+        long id = 0;
+        String title = null;
+        String posterPath = null;
+        String backdropPath = null;
+        String releaseDate = null;
+        double voteAverage = 0;
+        int voteCount = 0;
+        double popularity = 0;
+        int genreMask = 0;
+        String overview = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (ID_KEY.equals(name)) {
+                id = reader.nextLong();
+            } else if (ORIGINAL_TITLE_KEY.equals(name)) {
+                title = nextStringOrNull(reader);
+            } else if (POSTER_PATH_KEY.equals(name)) {
+                posterPath = nextStringOrNull(reader);
+            } else if (BACKDROP_PATH_KEY.equals(name)) {
+                backdropPath = nextStringOrNull(reader);
+            } else if (RELEASE_DATE_KEY.equals(name)) {
+                releaseDate = nextStringOrNull(reader);
+            } else if (VOTE_AVERAGE_KEY.equals(name)) {
+                voteAverage = nextDoubleOrZero(reader);
+            } else if (VOTE_COUNT_KEY.equals(name)) {
+                voteCount = (int) nextDoubleOrZero(reader);
+            } else if (GENRE_IDS_KEY.equals(name)) {
+                genreMask = readGenreMask(reader);
+            } else if (POPULARITY_KEY.equals(name)) {
+                popularity = nextDoubleOrZero(reader);
+            } else if (OVERVIEW_KEY.equals(name)) {
+                overview = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Movie(id, title, posterPath, backdropPath, releaseDate,
+                voteAverage, voteCount, popularity, genreMask, overview);
+    }
+
+    /**
+     * Reads the "genre_ids" array straight into a Genres mask, no list of ids is built.
+     */
+    private static int readGenreMask(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        int mask = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            mask |= Genres.bitForId(reader.nextInt());
+        }
+        reader.endArray();
+        return mask;
+    }
+
+    /**
+     * TMDb sends null for some missing posters and dates.
+     */
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static double nextDoubleOrZero(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextDouble();
+    }
+}
@@ -0,0 +1,226 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The changes that turn the movies a RecyclerView shows into a new list, compared by TMDb
+ * id, as one batch of notifications: removals, then moves, then insertions.
+ *
+ * The old list is given as the ids the adapter last showed, since the new list is often
+ * the same ArrayList changed in place (a page appended to it, or a re-sort).
+ *
+ * For the moves, the movies kept from the old list that are already in the right order
+ * relative to each other (the longest such run, see stayingPut) don't move at all, and
+ * each of the others is moved to just after the movie that comes before it in the new
+ * list. A re-sort after a few late pages only moves those pages' movies, not everything
+ * below them. When that's still a lot of moves, there's nothing worth animating, and
+ * dispatchTo just tells the adapter everything changed.
+ *
+ * The adapter is told through a Target, so the grid's RecyclerView.Adapter can forward to
+ * its notify methods and the tests can write the changes down.
+ */
+public class MovieListDiff {
+    /**
+     * Where the changes go, in the order they're to be made.
+     */
+    public interface Target {
+        void onRemoved(int position, int count);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onInserted(int position, int count);
+
+        /**
+         * Too much changed to say what.
+         */
+        void onChanged();
+    }
+
+    // More moves than this and dispatchTo falls back to Target.onChanged.
+    static final int MAX_MOVES = 100;
+
+    // Positions in the old list, highest first, so removing them in turn works.
+    private final int[] mRemoved;
+    // Moves in turn, after the removals: from mMovedFrom[i] to mMovedTo[i].
+    private final int[] mMovedFrom;
+    private final int[] mMovedTo;
+    // Positions in the new list, lowest first, so inserting them in turn works.
+    private final int[] mInserted;
+    private final boolean mTooManyMoves;
+
+    private MovieListDiff(int[] removed, int[] movedFrom, int[] movedTo, int[] inserted,
+                          boolean tooManyMoves) {
+        mRemoved = removed;
+        mMovedFrom = movedFrom;
+        mMovedTo = movedTo;
+        mInserted = inserted;
+        mTooManyMoves = tooManyMoves;
+    }
+
+    public static MovieListDiff compute(long[] oldIds, List<Movie> newList) {
+        HashMap<Long, Integer> newPositions = new HashMap<>(newList.size() * 2);
+        for (int i = 0; i < newList.size(); i++) {
+            newPositions.put(newList.get(i).getId(), i);
+        }
+
+        // What's left of the old list once the removals are done, as positions in the new
+        // list, in the old order.
+        int[] removed = new int[oldIds.length];
+        int removedCount = 0;
+        int[] kept = new int[oldIds.length];
+        int keptCount = 0;
+        HashSet<Long> keptIds = new HashSet<>(oldIds.length * 2);
+        for (int i = oldIds.length - 1; i >= 0; i--) {
+            Integer position = newPositions.get(oldIds[i]);
+            if (position == null) {
+                removed[removedCount++] = i;
+            } else {
+                keptIds.add(oldIds[i]);
+            }
+        }
+        for (long id : oldIds) {
+            Integer position = newPositions.get(id);
+            if (position != null) {
+                kept[keptCount++] = position;
+            }
+        }
+        kept = Arrays.copyOf(kept, keptCount);
+
+        int[] inserted = new int[newList.size()];
+        int insertedCount = 0;
+        for (int i = 0; i < newList.size(); i++) {
+            if (!keptIds.contains(newList.get(i).getId())) {
+                inserted[insertedCount++] = i;
+            }
+        }
+
+        boolean[] staying = stayingPut(kept);
+        int moveCount = 0;
+        for (boolean s : staying) {
+            if (!s) {
+                moveCount++;
+            }
+        }
+        if (moveCount > MAX_MOVES) {
+            return new MovieListDiff(new int[0], new int[0], new int[0], new int[0], true);
+        }
+
+        // Plays the moves out on the kept list (as new positions), in the new list's order.
+        // Each movie that moves goes just after the kept movie before it in the new list,
+        // or to the top if there isn't one.
+        int[] movedFrom = new int[moveCount];
+        int[] movedTo = new int[moveCount];
+        if (moveCount > 0) {
+            boolean[] moving = new boolean[newList.size()];
+            for (int i = 0; i < kept.length; i++) {
+                moving[kept[i]] = !staying[i];
+            }
+            ArrayList<Integer> current = new ArrayList<>(kept.length);
+            for (int position : kept) {
+                current.add(position);
+            }
+            int previousKept = -1;
+            int move = 0;
+            for (int i = 0; i < newList.size(); i++) {
+                if (!keptIds.contains(newList.get(i).getId())) {
+                    continue;
+                }
+                if (moving[i]) {
+                    int from = current.indexOf(i);
+                    current.remove(from);
+                    int to = previousKept < 0 ? 0 : current.indexOf(previousKept) + 1;
+                    current.add(to, i);
+                    movedFrom[move] = from;
+                    movedTo[move] = to;
+                    move++;
+                }
+                previousKept = i;
+            }
+        }
+
+        return new MovieListDiff(Arrays.copyOf(removed, removedCount), movedFrom, movedTo,
+                Arrays.copyOf(inserted, insertedCount), false);
+    }
+
+    /**
+     * Picks the movies that can stay where they are: the longest run of the kept list that's
+     * already in increasing new position (patience sorting, n log n).
+     *
+     * @param positions new positions of the kept movies, in the old order.
+     * @return for each of them, whether it stays put.
+     */
+    private static boolean[] stayingPut(int[] positions) {
+        int n = positions.length;
+        // tails[k]: index of the smallest last element of a run of length k + 1.
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (positions[tails[middle]] < positions[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] staying = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            staying[i] = true;
+        }
+        return staying;
+    }
+
+    /**
+     * @return true if the two lists hold the same movies in the same order.
+     */
+    public boolean isEmpty() {
+        return !mTooManyMoves && mRemoved.length == 0 && mMovedFrom.length == 0
+                && mInserted.length == 0;
+    }
+
+    /**
+     * Tells the adapter, which must already be showing the new list, what changed. Runs
+     * of neighbouring removals and insertions go out as a single range each.
+     */
+    public void dispatchTo(Target target) {
+        if (mTooManyMoves) {
+            target.onChanged();
+            return;
+        }
+        // Highest first, so a run is a descending sequence ending at its lowest position.
+        for (int i = 0; i < mRemoved.length; ) {
+            int run = 1;
+            while (i + run < mRemoved.length && mRemoved[i + run] == mRemoved[i] - run) {
+                run++;
+            }
+            target.onRemoved(mRemoved[i] - run + 1, run);
+            i += run;
+        }
+        for (int i = 0; i < mMovedFrom.length; i++) {
+            if (mMovedFrom[i] != mMovedTo[i]) {
+                target.onMoved(mMovedFrom[i], mMovedTo[i]);
+            }
+        }
+        for (int i = 0; i < mInserted.length; ) {
+            int run = 1;
+            while (i + run < mInserted.length && mInserted[i + run] == mInserted[i] + run) {
+                run++;
+            }
+            target.onInserted(mInserted[i], run);
+            i += run;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The movie loading behind the grid, kept apart from the Android side so it can be tested
+ * (see MovieLoaderFragment, which keeps one across rotation, and MovieLoaderTest).
+ *
+ * Each DiscoverQuery (sort order) has its own pager and its own results, kept here.
+ * Only the query on screen is delivered to the grid. Once the grid's first pages are
+ * in, the first page of every other query is loaded in the background, so changing
+ * the sort order in the settings shows the right movies straight away (see switchQuery).
+ *
+ * After every request that loads all its pages, the query's results are handed to the
+ * SnapshotWriter, to be shown on the next cold start until fresh pages arrive.
+ *
+ * The grid attaches itself while it is started (see setCallbacks). Anything that
+ * finishes while no grid is attached is held back and delivered, in order, to the
+ * next one that attaches.
+ *
+ * Everything here happens on the main thread.
+ */
+public class MovieLoader {
+    /**
+     * Results of the loading for the query on screen.
+     */
+    public interface Callbacks extends MoviePager.Listener {
+        /**
+         * The movies that start() was told were being restored, once they're back.
+         */
+        void onMoviesRestored(ArrayList<Movie> movies);
+    }
+
+    /**
+     * Saves the first movies of a query for the next cold start.
+     */
+    public interface SnapshotWriter {
+        void saveSnapshot(DiscoverQuery query, List<Movie> movies);
+    }
+
+    private final MoviePager.PageSource mSource;
+    private final SnapshotWriter mSnapshotWriter;
+    private final int mSnapshotSize;
+    private final int mPrefetchDistance;
+    private final int mInitialPageCount;
+    // Pager and results of every query started so far, by query name.
+    private final HashMap<String, QueryResults> mResults = new HashMap<>();
+    private QueryResults mCurrent;
+    private boolean mPrefetchedOtherQueries;
+
+    private Callbacks mCallbacks;
+    private final ArrayList<Runnable> mPendingResults = new ArrayList<>();
+
+    /**
+     * @param snapshotSize how many movies the snapshot keeps. It's only written again once
+     *                     those have changed.
+     * @param initialPageCount how many pages to request for a query starting from page 1.
+     */
+    public MovieLoader(MoviePager.PageSource source, SnapshotWriter snapshotWriter,
+                       int snapshotSize, int prefetchDistance, int initialPageCount) {
+        mSource = source;
+        mSnapshotWriter = snapshotWriter;
+        mSnapshotSize = snapshotSize;
+        mPrefetchDistance = prefetchDistance;
+        mInitialPageCount = initialPageCount;
+    }
+
+    /**
+     * Sets up the pager of the query on screen and starts loading.
+     *
+     * @param nextPage the first page not loaded yet, 1 unless movies are being restored.
+     * @param restoring the movies the grid had are being looked up, and will be passed to
+     *                  onRestored. Nothing is loaded until then.
+     */
+    public void start(DiscoverQuery query, int nextPage, boolean restoring) {
+        mCurrent = resultsFor(query, nextPage);
+        if (!restoring && nextPage == 1) {
+            mCurrent.mPager.loadPages(mInitialPageCount, RateLimiter.VISIBLE);
+        }
+    }
+
+    /**
+     * The movies the grid had before the process died are back. If none of them could
+     * be found, the query starts again from the first page.
+     */
+    public void onRestored(DiscoverQuery query, final ArrayList<Movie> movies) {
+        QueryResults results = mResults.get(query.getName());
+        if (movies.isEmpty()) {
+            results.mPager.cancel();
+            mResults.remove(query.getName());
+            QueryResults restarted = resultsFor(query, 1);
+            if (mCurrent == results) {
+                mCurrent = restarted;
+            }
+            restarted.mPager.loadPages(mInitialPageCount, RateLimiter.VISIBLE);
+            return;
+        }
+        results.mMovies.addAll(0, movies);
+        results.mPager.markLoaded(movies);
+        if (mCurrent == results) {
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    mCallbacks.onMoviesRestored(movies);
+                }
+            });
+        }
+        prefetchOtherQueries();
+    }
+
+    /**
+     * Makes another query the one on screen. Its results so far (usually at least the
+     * first page, loaded in the background) are returned, and it carries on loading
+     * from there. A query with nothing loaded yet starts with initialPageCount pages.
+     * Pages it was still prefetching are moved up to the VISIBLE lane, so they don't wait
+     * behind the prefetches of the other queries.
+     *
+     * @return the query's movies so far, in the order they were loaded.
+     */
+    public ArrayList<Movie> switchQuery(DiscoverQuery query, int initialPageCount) {
+        mCurrent = resultsFor(query, 1);
+        if (mCurrent.mPager.isLoading()) {
+            mCurrent.mPager.raise(RateLimiter.VISIBLE);
+        } else if (mCurrent.mMovies.isEmpty()) {
+            mCurrent.mPager.loadPages(initialPageCount, RateLimiter.VISIBLE);
+        }
+        return new ArrayList<>(mCurrent.mMovies);
+    }
+
+    /**
+     * @return the movies of the query on screen loaded so far.
+     */
+    public ArrayList<Movie> getMovies() {
+        return new ArrayList<>(mCurrent.mMovies);
+    }
+
+    /**
+     * @return the query on screen.
+     */
+    public DiscoverQuery getQuery() {
+        return mCurrent.mPager.getQuery();
+    }
+
+    /**
+     * @return the pager of the query on screen.
+     */
+    public MoviePager getPager() {
+        return mCurrent.mPager;
+    }
+
+    /**
+     * Attaches the grid, delivering anything that finished while none was attached, or
+     * detaches it when null.
+     */
+    public void setCallbacks(Callbacks callbacks) {
+        mCallbacks = callbacks;
+        while (mCallbacks != null && !mPendingResults.isEmpty()) {
+            mPendingResults.remove(0).run();
+        }
+    }
+
+    /**
+     * Cancels every query's fetch, for good.
+     */
+    public void cancel() {
+        for (QueryResults results : mResults.values()) {
+            results.mPager.cancel();
+        }
+    }
+
+    private QueryResults resultsFor(DiscoverQuery query, int nextPage) {
+        QueryResults results = mResults.get(query.getName());
+        if (results == null) {
+            results = new QueryResults(query, nextPage);
+            mResults.put(query.getName(), results);
+        }
+        return results;
+    }
+
+    /**
+     * Loads the first page of every query that hasn't been started yet, once.
+     */
+    private void prefetchOtherQueries() {
+        if (mPrefetchedOtherQueries) {
+            return;
+        }
+        mPrefetchedOtherQueries = true;
+        for (DiscoverQuery query : DiscoverQuery.all()) {
+            if (!mResults.containsKey(query.getName())) {
+                resultsFor(query, 1).mPager.loadPages(1, RateLimiter.PREFETCH);
+            }
+        }
+    }
+
+    private void deliver(Runnable result) {
+        if (mCallbacks != null) {
+            result.run();
+        } else {
+            mPendingResults.add(result);
+        }
+    }
+
+    /**
+     * A query's pager and every movie it has loaded, in page order. Pages are passed on
+     * to the grid only while the query is the one on screen.
+     */
+    private class QueryResults implements MoviePager.Listener {
+        final MoviePager mPager;
+        final ArrayList<Movie> mMovies = new ArrayList<>();
+        // The ids of the movies last saved in the snapshot, so it's only written again once
+        // the pages it covers have changed, not after every page past them.
+        long[] mSnapshotIds;
+
+        QueryResults(DiscoverQuery query, int nextPage) {
+            mPager = new MoviePager(mSource, query, nextPage, null, mPrefetchDistance, this);
+        }
+
+        @Override
+        public void onPageLoaded(final int page, final ArrayList<Movie> movies) {
+            mMovies.addAll(movies);
+            if (mCurrent != this) {
+                return;
+            }
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    mCallbacks.onPageLoaded(page, movies);
+                }
+            });
+        }
+
+        @Override
+        public void onPagesFinished() {
+            if (mPager.isLastRequestComplete() && !mMovies.isEmpty()) {
+                long[] ids = MovieSnapshotCodec.ids(mMovies, mSnapshotSize);
+                if (!Arrays.equals(ids, mSnapshotIds)) {
+                    mSnapshotIds = ids;
+                    mSnapshotWriter.saveSnapshot(mPager.getQuery(), mMovies);
+                }
+            }
+            if (mCurrent != this) {
+                return;
+            }
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    mCallbacks.onPagesFinished();
+                }
+            });
+            // Only once what's on screen is in, so it isn't held up by the prefetch.
+            prefetchOtherQueries();
+        }
+    }
+}
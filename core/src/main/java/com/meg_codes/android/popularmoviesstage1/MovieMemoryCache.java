@@ -0,0 +1,78 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The movies MovieRepository keeps in memory, by TMDb id, apart from the Android side so it
+ * can be tested: an LRU bounded by the number of movies. Every movie was written to
+ * MovieStore when it was fetched, so one that's been dropped here is read back from there
+ * (see MovieRepository.load), the same as after the process has died.
+ *
+ * Not thread-safe; MovieRepository synchronizes around it.
+ */
+public class MovieMemoryCache {
+    private final int mMaxMovies;
+    // Least recently used first.
+    private final LinkedHashMap<Long, Movie> mMovies;
+
+    /**
+     * @param maxMovies the most movies kept. The least recently used ones past that are
+     *                  dropped.
+     */
+    public MovieMemoryCache(final int maxMovies) {
+        mMaxMovies = maxMovies;
+        mMovies = new LinkedHashMap<Long, Movie>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Movie> eldest) {
+                return size() > maxMovies;
+            }
+        };
+    }
+
+    public void put(Movie movie) {
+        mMovies.put(movie.getId(), movie);
+    }
+
+    public void putAll(Collection<Movie> movies) {
+        for (Movie m : movies) {
+            mMovies.put(m.getId(), m);
+        }
+    }
+
+    /**
+     * @return the movie, now the most recently used, or null.
+     */
+    public Movie get(long id) {
+        return mMovies.get(id);
+    }
+
+    /**
+     * @return the movies in the order of the ids, each now recently used, or null unless
+     *         every one of them is here.
+     */
+    public ArrayList<Movie> getAll(long[] ids) {
+        ArrayList<Movie> movies = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Movie m = mMovies.get(id);
+            if (m == null) {
+                return null;
+            }
+            movies.add(m);
+        }
+        return movies;
+    }
+
+    /**
+     * @return how many movies are kept.
+     */
+    public int size() {
+        return mMovies.size();
+    }
+
+    public int maxSize() {
+        return mMaxMovies;
+    }
+}
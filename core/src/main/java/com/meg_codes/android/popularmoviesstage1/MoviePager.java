@@ -0,0 +1,230 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * Keeps track of which pages of a discover query have been loaded, so the grid can keep
+ * asking for "the next page" as it is scrolled (infinite scroll). There's one pager per
+ * DiscoverQuery.
+ *
+ * Only one fetch runs at a time; asking for more pages while one is in flight does
+ * nothing, so the stream of scroll events near the end of the grid turns into a single
+ * request. Pages are never requested twice unless they failed, in which case the next
+ * request starts again from the first failed page. Nothing is requested past the query's
+ * last page, once a response has said which one that is. Everything here happens on the
+ * main thread.
+ *
+ * The pages come from a PageSource, MovieFetcher in the app.
+ */
+public class MoviePager implements PageSequencer.Callback {
+    // TMDb doesn't serve discover pages past this one.
+    public static final int MAX_PAGE = 1000;
+
+    /**
+     * Loads pages of a query, calling back in page order (see PageSequencer).
+     */
+    public interface PageSource {
+        /**
+         * Starts loading pages firstPage to firstPage + pageCount - 1.
+         *
+         * @param seenIds movies not to hand out again, added to as more are.
+         * @param priority the RateLimiter lane.
+         */
+        Fetch fetchPages(DiscoverQuery query, int firstPage, int pageCount,
+                         HashSet<Long> seenIds, int priority, PageSequencer.Callback callback);
+    }
+
+    /**
+     * A running call to PageSource.fetchPages.
+     */
+    public interface Fetch {
+        /**
+         * @return the first page that hasn't been delivered to the callback yet.
+         */
+        int getNextPage();
+
+        /**
+         * @return the number of pages the query has, going by the last response, or
+         *         DiscoverPage.UNKNOWN_TOTAL if none has said.
+         */
+        int getTotalPages();
+
+        /**
+         * Moves the fetch up to a more urgent RateLimiter lane.
+         */
+        void raise(int priority);
+
+        /**
+         * Stops it, so the callback isn't called again.
+         */
+        void cancel();
+    }
+
+    /**
+     * Receives the loaded pages on the main thread, in page order.
+     */
+    public interface Listener {
+        void onPageLoaded(int page, ArrayList<Movie> movies);
+
+        /**
+         * Called when a request (one or more pages) has finished.
+         */
+        void onPagesFinished();
+    }
+
+    private final PageSource mSource;
+    private final DiscoverQuery mQuery;
+    private final Listener mListener;
+    private final int mPrefetchDistance;
+
+    // Ids of every movie handed to the listener so far, across all pages.
+    private final HashSet<Long> mSeenIds = new HashSet<>();
+
+    // First page that hasn't been requested yet.
+    private int mNextPage;
+    // The query's last page, as far as is known.
+    private int mLastPage = MAX_PAGE;
+    // Lowest page of the current request that failed, 0 if none did.
+    private int mFirstFailedPage;
+    // Whether every page of the last finished request was loaded.
+    private boolean mLastRequestComplete;
+    private Fetch mInFlight;
+
+    /**
+     * @param nextPage the first page to request, 1 unless pages were restored.
+     * @param loadedMovies movies restored from an earlier instance, so they aren't added again.
+     * @param prefetchDistance how many items from the end of the grid the next page is requested.
+     */
+    public MoviePager(PageSource source, DiscoverQuery query, int nextPage,
+                      Collection<Movie> loadedMovies, int prefetchDistance, Listener listener) {
+        mSource = source;
+        mQuery = query;
+        mNextPage = nextPage;
+        mPrefetchDistance = prefetchDistance;
+        mListener = listener;
+        if (loadedMovies != null) {
+            for (Movie m : loadedMovies) {
+                mSeenIds.add(m.getId());
+            }
+        }
+    }
+
+    /**
+     * Requests the next pageCount pages, unless a request is already in flight or there
+     * are no more.
+     *
+     * @param priority the RateLimiter lane: VISIBLE for pages the grid is showing or about
+     *                 to, PREFETCH for pages of a query that isn't on screen.
+     * @return true if a request was started.
+     */
+    public boolean loadPages(int pageCount, int priority) {
+        if (mInFlight != null || mNextPage > mLastPage) {
+            return false;
+        }
+        int count = Math.min(pageCount, mLastPage - mNextPage + 1);
+        int firstPage = mNextPage;
+        mNextPage += count;
+        mFirstFailedPage = 0;
+        mInFlight = mSource.fetchPages(mQuery, firstPage, count, mSeenIds, priority, this);
+        return true;
+    }
+
+    /**
+     * Moves the request in flight, if there is one, up to a more urgent RateLimiter lane.
+     */
+    public void raise(int priority) {
+        if (mInFlight != null) {
+            mInFlight.raise(priority);
+        }
+    }
+
+    /**
+     * Called as the grid scrolls. Loads the next page once the last visible item is within
+     * the prefetch distance of the end of the list.
+     *
+     * @param lastVisiblePosition one past the last visible adapter position.
+     * @param itemCount the number of items in the adapter.
+     */
+    public void onScrolled(int lastVisiblePosition, int itemCount) {
+        if (itemCount > 0 && itemCount - lastVisiblePosition <= mPrefetchDistance) {
+            // The user is heading for it, so it goes in the same lane as the pages on screen.
+            loadPages(1, RateLimiter.VISIBLE);
+        }
+    }
+
+    /**
+     * Records movies that reached the grid some other way (from MovieStore), so pages
+     * loaded afterwards don't add them a second time.
+     */
+    public void markLoaded(Collection<Movie> movies) {
+        for (Movie m : movies) {
+            mSeenIds.add(m.getId());
+        }
+    }
+
+    public DiscoverQuery getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * @return true if every page of the last request loaded, false if any failed or
+     *         nothing has finished yet.
+     */
+    public boolean isLastRequestComplete() {
+        return mLastRequestComplete;
+    }
+
+    public boolean isLoading() {
+        return mInFlight != null;
+    }
+
+    /**
+     * @return the first page not loaded yet, to be passed back in when the pager is re-created.
+     */
+    public int getNextPage() {
+        int nextPage = mInFlight != null ? mInFlight.getNextPage() : mNextPage;
+        return mFirstFailedPage != 0 ? Math.min(mFirstFailedPage, nextPage) : nextPage;
+    }
+
+    /**
+     * Drops the request in flight, if there is one. Its undelivered pages will be
+     * requested again.
+     */
+    public void cancel() {
+        if (mInFlight != null) {
+            mNextPage = getNextPage();
+            mInFlight.cancel();
+            mInFlight = null;
+            mFirstFailedPage = 0;
+        }
+    }
+
+    @Override
+    public void onPageLoaded(int page, ArrayList<Movie> movies) {
+        mListener.onPageLoaded(page, movies);
+    }
+
+    @Override
+    public void onPageFailed(int page) {
+        if (mFirstFailedPage == 0) {
+            mFirstFailedPage = page;
+        }
+    }
+
+    @Override
+    public void onFetchFinished() {
+        int totalPages = mInFlight.getTotalPages();
+        if (totalPages != DiscoverPage.UNKNOWN_TOTAL) {
+            mLastPage = Math.min(totalPages, MAX_PAGE);
+        }
+        mInFlight = null;
+        mLastRequestComplete = mFirstFailedPage == 0;
+        // Go back to the failed page, if there was one. Pages after it come back again,
+        // but their movies are already in mSeenIds and get dropped.
+        mNextPage = getNextPage();
+        mFirstFailedPage = 0;
+        mListener.onPagesFinished();
+    }
+}
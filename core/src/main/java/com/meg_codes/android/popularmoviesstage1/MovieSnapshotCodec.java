@@ -0,0 +1,132 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary layout of a MovieSnapshot: a version number, a count, and then each movie's
+ * fields one after the other: numbers as they are, strings as their UTF-8 length and bytes
+ * (-1 for null). There's no JSON to parse and nothing in it depends on the Parcel format,
+ * so decoding is one walk through the bytes.
+ *
+ * The file could be cut short or damaged, so decode checks every count and length against
+ * what's actually left before it allocates anything for it.
+ */
+public class MovieSnapshotCodec {
+    // Increment when the layout of a movie changes.
+    static final int FORMAT_VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MovieSnapshotCodec() {
+    }
+
+    /**
+     * @return the ids of the movies encode would write, in order, to tell whether a saved
+     *         snapshot is still the same.
+     */
+    public static long[] ids(List<Movie> movies, int maxMovies) {
+        long[] ids = new long[Math.min(movies.size(), maxMovies)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = movies.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the first maxMovies of the movies. The stream is flushed but not closed.
+     */
+    public static void encode(List<Movie> movies, int maxMovies, OutputStream stream)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        int count = Math.min(movies.size(), maxMovies);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            Movie m = movies.get(i);
+            out.writeLong(m.getId());
+            writeString(out, m.getTitle());
+            writeString(out, m.getPosterPath());
+            writeString(out, m.getBackdropPath());
+            writeString(out, m.getReleaseDate());
+            out.writeDouble(m.getVoteAverage());
+            out.writeInt(m.getVoteCount());
+            out.writeDouble(m.getPopularity());
+            out.writeInt(m.getGenreMask());
+            writeString(out, m.getOverview());
+        }
+        out.flush();
+    }
+
+    /**
+     * @param maxMovies more than this many is taken as a damaged file.
+     * @return the movies, or null if they were saved in an older layout.
+     * @throws IOException if the bytes aren't a snapshot of at most maxMovies.
+     */
+    public static ArrayList<Movie> decode(ByteBuffer buffer, int maxMovies)
+            throws IOException {
+        try {
+            if (buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || count > maxMovies) {
+                throw new IOException("Snapshot claims " + count + " movies");
+            }
+            ArrayList<Movie> movies = new ArrayList<>(count);
+            // Scratch space for decoding strings; longer ones get an array of their own.
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                String title = readString(buffer, bytes);
+                String posterPath = readString(buffer, bytes);
+                String backdropPath = readString(buffer, bytes);
+                String releaseDate = readString(buffer, bytes);
+                double voteAverage = buffer.getDouble();
+                int voteCount = buffer.getInt();
+                double popularity = buffer.getDouble();
+                int genreMask = buffer.getInt();
+                String overview = readString(buffer, bytes);
+                movies.add(new Movie(id, title, posterPath, backdropPath, releaseDate,
+                        voteAverage, voteCount, popularity, genreMask, overview));
+            }
+            return movies;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot is cut short", e);
+        }
+    }
+
+    /**
+     * Strings aren't written with writeUTF, which uses a modified UTF-8 and can't go past
+     * 64KB, but as their plain UTF-8 length and bytes.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) throws IOException {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Snapshot string of " + length + " bytes, "
+                    + buffer.remaining() + " left");
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, UTF_8);
+    }
+}
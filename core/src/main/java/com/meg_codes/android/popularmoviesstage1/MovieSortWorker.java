@@ -0,0 +1,130 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-sorts the grid's movies on a worker thread, and hands the new order back to the main
+ * thread ready to show: the movies that pass the filter, and what changed for the adapter
+ * (see MovieListDiff). All the main thread has left to do is copy the list and notify.
+ *
+ * Only the latest sort asked for is worth finishing, so a sort that's still waiting when
+ * another one is asked for is skipped, and one that finishes after another was asked for
+ * isn't handed back. The latest one always is.
+ */
+public class MovieSortWorker {
+
+    /**
+     * Receives a finished sort on the main thread.
+     */
+    public interface Callback {
+        void onSorted(Result result);
+    }
+
+    /**
+     * A finished sort, for the list given to sort().
+     */
+    public static class Result {
+        // Every movie, in the new order.
+        public final ArrayList<Movie> sorted;
+        // The filter the rest was worked out for.
+        public final MovieFilter filter;
+        // Built over sorted, or null when the filter is empty.
+        public final MovieFilterIndex filterIndex;
+        // The movies that pass the filter, in order (sorted itself when the filter is empty).
+        public final ArrayList<Movie> visible;
+        // From the ids the adapter was showing to visible, or null if none were given.
+        public final long[] shownIds;
+        public final MovieListDiff diff;
+
+        Result(ArrayList<Movie> sorted, MovieFilter filter, MovieFilterIndex filterIndex,
+               ArrayList<Movie> visible, long[] shownIds, MovieListDiff diff) {
+            this.sorted = sorted;
+            this.filter = filter;
+            this.filterIndex = filterIndex;
+            this.visible = visible;
+            this.shownIds = shownIds;
+            this.diff = diff;
+        }
+    }
+
+    private final Executor mExecutor;
+    private final Executor mMainThread;
+    // Incremented for each sort asked for, so the worker can tell which one is the latest.
+    private volatile int mLatest;
+
+    /**
+     * @param mainThread runs the callbacks on the main thread (a Handler, in the app).
+     */
+    public MovieSortWorker(Executor mainThread) {
+        this(newWorkerThread(), mainThread);
+    }
+
+    MovieSortWorker(Executor worker, Executor mainThread) {
+        mExecutor = worker;
+        mMainThread = mainThread;
+    }
+
+    private static Executor newWorkerThread() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "MovieSortWorker");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // Sorts only happen when pages come in or the screen comes back.
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @param movies a copy of the movies, which the worker sorts and then owns.
+     * @param criterion MovieSorter.BY_POPULARITY, BY_VOTE_AVERAGE or BY_RELEASE_DATE.
+     * @param shownIds the ids the adapter is showing, to work out the diff against, or null
+     *                 if the main thread is going to do that itself (while searching).
+     * @param callback called on the main thread, unless another sort is asked for first.
+     */
+    public void sort(final ArrayList<Movie> movies, final int criterion,
+                     final MovieFilter filter, final long[] shownIds, final Callback callback) {
+        final int request = ++mLatest;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request != mLatest) {
+                    return;
+                }
+                long start = Metrics.start();
+                MovieSorter.sort(movies, criterion);
+                Metrics.stop(Metrics.SORT, start);
+                start = Metrics.start();
+                MovieFilterIndex filterIndex = null;
+                ArrayList<Movie> visible = movies;
+                if (!filter.isEmpty()) {
+                    filterIndex = MovieFilterIndex.build(movies);
+                    visible = filterIndex.filter(filter);
+                }
+                MovieListDiff diff = shownIds != null
+                        ? MovieListDiff.compute(shownIds, visible) : null;
+                Metrics.stop(Metrics.DIFF, start);
+                final Result result =
+                        new Result(movies, filter, filterIndex, visible, shownIds, diff);
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Another sort was asked for while this one was running.
+                        if (request == mLatest) {
+                            callback.onSorted(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,206 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sorts movies by one of their numeric fields, highest (or newest) first.
+ *
+ * The sort keys are copied out of the Movie objects into a double array once, and then
+ * an array of positions is sorted against that array, so comparing two movies is a
+ * primitive comparison with no method calls, boxing or string building. The sort is
+ * stable, so movies with the same value keep their existing (page) order.
+ *
+ * Past PARALLEL_THRESHOLD movies, and on a device with more than one core, the array is
+ * cut into one chunk per core, the chunks are sorted at the same time, and then merged.
+ */
+public class MovieSorter {
+    public static final int BY_POPULARITY = 0;
+    public static final int BY_VOTE_AVERAGE = 1;
+    // Newest first, by Movie.getReleaseDateValue. Movies without a date go last.
+    public static final int BY_RELEASE_DATE = 2;
+
+    // Below this, starting threads costs more than the sort itself.
+    static final int PARALLEL_THRESHOLD = 8192;
+    // The most chunks a sort is cut into, however many cores there are.
+    private static final int MAX_CHUNKS = 4;
+    private static final int CHUNKS = Math.min(MAX_CHUNKS,
+            Runtime.getRuntime().availableProcessors());
+    // Threads for the chunks other than the caller's own. Only started for a big sort.
+    private static ExecutorService sChunkExecutor;
+
+    private MovieSorter() {
+    }
+
+    /**
+     * Re-orders the list in place.
+     *
+     * @param criterion BY_POPULARITY, BY_VOTE_AVERAGE or BY_RELEASE_DATE.
+     */
+    public static void sort(List<Movie> movies, int criterion) {
+        int size = movies.size();
+        if (size < 2) {
+            return;
+        }
+        int[] order = sortedOrder(movies, criterion);
+        Movie[] sorted = new Movie[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = movies.get(order[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            movies.set(i, sorted[i]);
+        }
+    }
+
+    /**
+     * @return the positions of the movies in the list, in sorted order. The list isn't changed.
+     */
+    public static int[] sortedOrder(List<Movie> movies, int criterion) {
+        int size = movies.size();
+        double[] keys = new double[size];
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            Movie m = movies.get(i);
+            keys[i] = sortKey(m, criterion);
+            order[i] = i;
+        }
+        sortDescending(keys, order);
+        return order;
+    }
+
+    private static double sortKey(Movie m, int criterion) {
+        switch (criterion) {
+            case BY_VOTE_AVERAGE:
+                return m.getVoteAverage();
+            case BY_RELEASE_DATE:
+                return m.getReleaseDateValue();
+            default:
+                return m.getPopularity();
+        }
+    }
+
+    /**
+     * Stable merge sort of the positions in order, by keys[position], highest first.
+     */
+    static void sortDescending(double[] keys, int[] order) {
+        int[] buffer = new int[order.length];
+        if (order.length < PARALLEL_THRESHOLD || CHUNKS < 2) {
+            mergePasses(keys, order, buffer, 0, order.length, 1);
+            return;
+        }
+
+        // Each chunk only touches its own part of order and buffer. The caller sorts the
+        // first one itself while the others are sorted on the chunk threads.
+        int chunkSize = (order.length + CHUNKS - 1) / CHUNKS;
+        List<Future<?>> chunks = new ArrayList<>(CHUNKS - 1);
+        for (int start = chunkSize; start < order.length; start += chunkSize) {
+            chunks.add(getChunkExecutor().submit(sortChunk(keys, order, buffer, start,
+                    Math.min(start + chunkSize, order.length))));
+        }
+        mergePasses(keys, order, buffer, 0, chunkSize, 1);
+        for (Future<?> chunk : chunks) {
+            waitFor(chunk);
+        }
+        // The chunks are sorted runs, so the merging carries on from runs of chunkSize.
+        mergePasses(keys, order, buffer, 0, order.length, chunkSize);
+    }
+
+    private static Runnable sortChunk(final double[] keys, final int[] order,
+                                      final int[] buffer, final int start, final int end) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mergePasses(keys, order, buffer, start, end, 1);
+            }
+        };
+    }
+
+    /**
+     * Bottom-up: merges runs of width, 2 * width, 4 * width... of order[start, end), back
+     * and forth between order and buffer, leaving the result in order.
+     */
+    private static void mergePasses(double[] keys, int[] order, int[] buffer,
+                                    int start, int end, int width) {
+        int[] from = order;
+        int[] to = buffer;
+        for (; width < end - start; width *= 2) {
+            for (int left = start; left < end; left += 2 * width) {
+                int middle = Math.min(left + width, end);
+                int right = Math.min(left + 2 * width, end);
+                merge(keys, from, to, left, middle, right);
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != order) {
+            System.arraycopy(from, start, order, start, end - start);
+        }
+    }
+
+    // Waits for a chunk, even if interrupted: the caller can't go on to merge without it.
+    private static void waitFor(Future<?> chunk) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    chunk.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getChunkExecutor() {
+        if (sChunkExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(CHUNKS - 1, CHUNKS - 1,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger(1);
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r,
+                                    "MovieSorter #" + mCount.getAndIncrement());
+                            // A sort never needs to hold up the process from exiting.
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // Big sorts are rare, so the threads don't hang around in between.
+            executor.allowCoreThreadTimeOut(true);
+            sChunkExecutor = executor;
+        }
+        return sChunkExecutor;
+    }
+
+    private static void merge(double[] keys, int[] from, int[] to,
+                              int left, int middle, int right) {
+        int i = left;
+        int j = middle;
+        for (int k = left; k < right; k++) {
+            // Take from the left run on ties, which is what keeps the sort stable.
+            if (i < middle && (j >= right || keys[from[i]] >= keys[from[j]])) {
+                to[k] = from[i++];
+            } else {
+                to[k] = from[j++];
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+/**
+ * The words the detail screen puts around a movie's numbers: month names and the
+ * patterns for the release date, the score and the runtime. The app makes one from its
+ * string resources, so they follow the device's language (see PopularMoviesApplication);
+ * ENGLISH is the same text, for where there are no resources (the benchmarks).
+ *
+ * Movie keeps what it formats with this, so a movie is formatted once per format.
+ */
+public class MovieTextFormat {
+    public static final MovieTextFormat ENGLISH = new MovieTextFormat(
+            new String[]{"January", "February", "March", "April", "May", "June", "July",
+                    "August", "September", "October", "November", "December"},
+            "Released in %1$s, %2$d", "Released in %1$d", "Average user score: %1$s / 10",
+            "Runtime: %1$d min");
+
+    private final String[] mMonthNames;
+    private final String mReleaseDatePattern;
+    private final String mReleaseYearPattern;
+    private final String mVoteAveragePattern;
+    private final String mRuntimePattern;
+
+    /**
+     * @param monthNames January to December.
+     * @param releaseDatePattern with the month name as %1$s and the year as %2$d.
+     * @param releaseYearPattern for when the month isn't known, with the year as %1$d.
+     * @param voteAveragePattern with the score as %1$s.
+     * @param runtimePattern with the minutes as %1$d.
+     */
+    public MovieTextFormat(String[] monthNames, String releaseDatePattern,
+                           String releaseYearPattern, String voteAveragePattern,
+                           String runtimePattern) {
+        if (monthNames.length != 12) {
+            throw new IllegalArgumentException("Need 12 month names, got " + monthNames.length);
+        }
+        mMonthNames = monthNames.clone();
+        mReleaseDatePattern = releaseDatePattern;
+        mReleaseYearPattern = releaseYearPattern;
+        mVoteAveragePattern = voteAveragePattern;
+        mRuntimePattern = runtimePattern;
+    }
+
+    /**
+     * @param date as returned by Movie.getReleaseDateValue.
+     * @return null if there's no date.
+     */
+    public String formatReleaseDate(int date) {
+        int year = date / 10000;
+        int month = date / 100 % 100;
+        if (year == 0) {
+            return null;
+        }
+        if (month == 0) {
+            return String.format(mReleaseYearPattern, year);
+        }
+        return String.format(mReleaseDatePattern, mMonthNames[month - 1], year);
+    }
+
+    public String formatVoteAverage(double voteAverage) {
+        // As the score always was shown, "7.5" or "10.0", whatever the language.
+        return String.format(mVoteAveragePattern, String.valueOf(voteAverage));
+    }
+
+    /**
+     * @return null if the runtime isn't known (0).
+     */
+    public String formatRuntime(int minutes) {
+        if (minutes <= 0) {
+            return null;
+        }
+        return String.format(mRuntimePattern, minutes);
+    }
+}
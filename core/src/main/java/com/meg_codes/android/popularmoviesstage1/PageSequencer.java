@@ -0,0 +1,115 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Puts the pages of a fetch back in order. Pages are requested all at once and come back
+ * in any order; they're handed to the Callback strictly in page order, each as soon as it
+ * and every page before it are in. Pages that arrive early wait here until then.
+ *
+ * Movies already handed out by an earlier page are dropped (TMDb's paging can shift while
+ * a list is being read), and so are any in seenIds to start with, so consecutive fetches
+ * can be de-duplicated against each other.
+ *
+ * Used by MovieFetcher.PageFetch. Not thread safe: it's only used on the main thread.
+ */
+public class PageSequencer {
+    // Stands in for a page that couldn't be loaded, only ever compared by reference.
+    private static final ArrayList<Movie> FAILED_PAGE = new ArrayList<>();
+
+    /**
+     * Receives the pages in order.
+     */
+    public interface Callback {
+        /**
+         * @param page the TMDb page number, called in increasing order. A page served from a
+         *             stale cache entry may be called again later, out of order, with only
+         *             the movies that weren't in the cached copy.
+         * @param movies the movies on that page not already seen on an earlier page.
+         */
+        void onPageLoaded(int page, ArrayList<Movie> movies);
+
+        /**
+         * Called instead of onPageLoaded, in the same order, if the page couldn't be loaded.
+         */
+        void onPageFailed(int page);
+
+        /**
+         * Called once after the last page has been delivered.
+         */
+        void onFetchFinished();
+    }
+
+    private final int mLastPage;
+    private final HashSet<Long> mSeenIds;
+    private final Callback mCallback;
+    private final HashMap<Integer, ArrayList<Movie>> mArrived = new HashMap<>();
+    private int mNextPage;
+
+    /**
+     * @param seenIds the ids of movies already handed out, added to as more are.
+     */
+    public PageSequencer(int firstPage, int pageCount, HashSet<Long> seenIds,
+                         Callback callback) {
+        mNextPage = firstPage;
+        mLastPage = firstPage + pageCount - 1;
+        mSeenIds = seenIds;
+        mCallback = callback;
+    }
+
+    /**
+     * @return the first page that hasn't been delivered to the callback yet.
+     */
+    public int getNextPage() {
+        return mNextPage;
+    }
+
+    /**
+     * @param movies the page's movies, or null if it couldn't be loaded.
+     */
+    public void onPageArrived(int page, ArrayList<Movie> movies) {
+        if (page < mNextPage || page > mLastPage) {
+            return;
+        }
+        // A failed page still has to take its turn, or the pages after it would wait forever.
+        mArrived.put(page, movies != null ? movies : FAILED_PAGE);
+
+        boolean delivered = false;
+        while (mNextPage <= mLastPage && mArrived.containsKey(mNextPage)) {
+            ArrayList<Movie> pageMovies = mArrived.remove(mNextPage);
+            if (pageMovies == FAILED_PAGE) {
+                mCallback.onPageFailed(mNextPage);
+            } else {
+                mCallback.onPageLoaded(mNextPage, newMovies(pageMovies));
+            }
+            mNextPage++;
+            delivered = true;
+        }
+        if (delivered && mNextPage > mLastPage) {
+            mCallback.onFetchFinished();
+        }
+    }
+
+    /**
+     * A newer copy of a page that was already delivered from the cache. Only movies not
+     * handed out before are passed on, if there are any.
+     */
+    public void onPageRefreshed(int page, ArrayList<Movie> movies) {
+        ArrayList<Movie> newMovies = newMovies(movies);
+        if (newMovies.size() > 0) {
+            mCallback.onPageLoaded(page, newMovies);
+        }
+    }
+
+    private ArrayList<Movie> newMovies(ArrayList<Movie> movies) {
+        ArrayList<Movie> newMovies = new ArrayList<>(movies.size());
+        for (Movie m : movies) {
+            if (mSeenIds.add(m.getId())) {
+                newMovies.add(m);
+            }
+        }
+        return newMovies;
+    }
+}
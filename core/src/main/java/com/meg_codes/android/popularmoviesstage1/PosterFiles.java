@@ -0,0 +1,138 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The directory behind the app's disk poster cache (PosterDiskCache), apart from the
+ * downloading so it can be tested: one file per poster URL, and a budget for the lot.
+ * When the files add up to more than the budget, the least recently used ones are
+ * deleted.
+ *
+ * Downloads go to a temporary file first and are then moved into place (see store), so a
+ * half-downloaded poster is never read back. Several threads can download at once, even
+ * the same poster, so everything that changes the directory is synchronized.
+ */
+public class PosterFiles {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // Size of the files in mDirectory, -1 until first counted.
+    private long mTotalBytes = -1;
+
+    /**
+     * @param maxBytes the disk budget for poster files.
+     */
+    public PosterFiles(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return where the poster at this URL is kept, whether it's there yet or not.
+     */
+    public File fileFor(String url) {
+        // The poster's file name on TMDb is unique, but the size in the path matters too.
+        return new File(mDirectory, Integer.toHexString(url.hashCode()) + "_"
+                + url.substring(url.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * @return a new, empty file to download the poster into, next to where it'll go.
+     */
+    public File createTempFile(File file) throws IOException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + mDirectory);
+        }
+        return File.createTempFile(file.getName(), TEMP_SUFFIX, mDirectory);
+    }
+
+    /**
+     * Marks the file as recently used, so it's among the last to be deleted.
+     */
+    public void touch(File file) {
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Moves a finished download into place and counts it towards the budget, deleting
+     * the least recently used files if that goes over. If another download of the same
+     * poster got there first, theirs is kept and this one is deleted, so the poster is
+     * only counted once.
+     *
+     * @throws IOException if the file couldn't be moved.
+     */
+    public synchronized void store(File tempFile, File file) throws IOException {
+        if (file.exists()) {
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Couldn't store poster " + file.getName());
+        }
+        if (mTotalBytes < 0) {
+            // The first time, the new file is counted along with everything else.
+            mTotalBytes = directoryBytes();
+        } else {
+            mTotalBytes += file.length();
+        }
+        if (mTotalBytes > mMaxBytes) {
+            trimToSize();
+        }
+    }
+
+    /**
+     * @return the size of the files as counted, or -1 if nothing has been stored yet.
+     */
+    synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    private long directoryBytes() {
+        long bytes = 0;
+        for (File f : listPosters()) {
+            bytes += f.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the poster files, without the downloads still being written.
+     */
+    private File[] listPosters() {
+        File[] files = mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !file.getName().endsWith(TEMP_SUFFIX);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    /**
+     * Deletes the least recently used files until the directory fits in the budget.
+     */
+    private void trimToSize() {
+        File[] files = listPosters();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && mTotalBytes > mMaxBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                mTotalBytes -= length;
+                Metrics.count(Metrics.POSTER_DISK_EVICTIONS);
+            }
+        }
+    }
+}
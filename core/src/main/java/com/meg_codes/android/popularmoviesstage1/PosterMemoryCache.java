@@ -0,0 +1,148 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The bookkeeping of the app's in-memory poster cache (PosterCache), apart from the
+ * bitmaps themselves so it can be tested: an LRU bounded by the size of its values in
+ * bytes, and which key holds the latest copy of each poster, at any TMDb size.
+ *
+ * Keys are Picasso's: the poster URL, then a line per option (the size it was decoded at,
+ * and so on). So one poster can be in here at the grid's size and the detail screen's
+ * size at once, and the URLs differ too (see PosterUrls).
+ *
+ * Not thread-safe; PosterCache synchronizes around it.
+ *
+ * @param <V> the cached values, bitmaps in the app.
+ */
+public class PosterMemoryCache<V> {
+    /**
+     * How much memory a value takes up.
+     */
+    public interface Sizer<V> {
+        int sizeOf(V value);
+    }
+
+    private final Sizer<V> mSizer;
+    private final int mMaxBytes;
+    private int mBytes;
+    // Least recently used first.
+    private final LinkedHashMap<String, V> mValues = new LinkedHashMap<>(16, 0.75f, true);
+    // Poster path -> key of the latest value cached for it, at any TMDb size.
+    private final HashMap<String, String> mKeysByPath = new HashMap<>();
+
+    /**
+     * @param maxBytes the most memory the values may take up.
+     */
+    public PosterMemoryCache(int maxBytes, Sizer<V> sizer) {
+        mMaxBytes = maxBytes;
+        mSizer = sizer;
+    }
+
+    /**
+     * @return the value, now the most recently used, or null. Counts as a hit or a miss.
+     */
+    public V get(String key) {
+        V value = mValues.get(key);
+        Metrics.count(value != null
+                ? Metrics.POSTER_MEMORY_HITS : Metrics.POSTER_MEMORY_MISSES);
+        return value;
+    }
+
+    /**
+     * Adds or replaces the value, then drops the least recently used ones until everything
+     * fits in the budget. A value bigger than the whole budget doesn't stay.
+     */
+    public void set(String key, V value) {
+        V old = mValues.put(key, value);
+        if (old != null) {
+            mBytes -= mSizer.sizeOf(old);
+        }
+        mBytes += mSizer.sizeOf(value);
+        mKeysByPath.put(pathOf(urlOf(key)), key);
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * @param posterPath the poster's path from the API, like "/abc.jpg".
+     * @return a cached copy of the poster at whatever size it was downloaded and decoded,
+     *         or null. Doesn't count towards the hit rate.
+     */
+    public V getAnySize(String posterPath) {
+        String key = mKeysByPath.get(posterPath);
+        return key != null ? mValues.get(key) : null;
+    }
+
+    /**
+     * @return the bytes the values take up.
+     */
+    public int size() {
+        return mBytes;
+    }
+
+    public int maxSize() {
+        return mMaxBytes;
+    }
+
+    public void clear() {
+        mValues.clear();
+        mKeysByPath.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * Drops every copy of the poster at this URL, whatever size it was decoded at.
+     */
+    public void clearKeyUri(String uri) {
+        for (String key : new ArrayList<>(mValues.keySet())) {
+            if (urlOf(key).equals(uri)) {
+                mBytes -= mSizer.sizeOf(mValues.remove(key));
+            }
+        }
+        String path = pathOf(uri);
+        String key = mKeysByPath.get(path);
+        if (key != null && urlOf(key).equals(uri)) {
+            mKeysByPath.remove(path);
+        }
+    }
+
+    /**
+     * Drops the older half of the cache, for when the system is short of memory.
+     */
+    public void trimToHalf() {
+        trimToSize(mMaxBytes / 2);
+    }
+
+    private void trimToSize(int maxBytes) {
+        Iterator<Map.Entry<String, V>> eldest = mValues.entrySet().iterator();
+        while (mBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, V> entry = eldest.next();
+            eldest.remove();
+            mBytes -= mSizer.sizeOf(entry.getValue());
+            Metrics.count(Metrics.POSTER_MEMORY_EVICTIONS);
+            String path = pathOf(urlOf(entry.getKey()));
+            if (entry.getKey().equals(mKeysByPath.get(path))) {
+                mKeysByPath.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Picasso's keys start with the URL, followed by a line per option (size, crop...).
+     */
+    private static String urlOf(String key) {
+        int newline = key.indexOf('\n');
+        return newline >= 0 ? key.substring(0, newline) : key;
+    }
+
+    /**
+     * The poster's path is the end of the URL, after the size ("/t/p/w185/abc.jpg").
+     */
+    private static String pathOf(String url) {
+        return url.substring(url.lastIndexOf('/'));
+    }
+}
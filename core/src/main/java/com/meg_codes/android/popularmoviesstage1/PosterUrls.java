@@ -0,0 +1,43 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+/**
+ * Picks which of TMDb's poster sizes to download. TMDb serves each poster at a fixed set
+ * of widths ("w92" up to "original"), and the smallest one at least as wide as the view
+ * is used, so small screens don't download more than they show and large, dense screens
+ * don't scale up a blurry w185. How wide the view is comes from PosterSizes in the app.
+ *
+ * Metrics.POSTER_BYTES over Metrics.POSTER_DOWNLOADS is what a poster costs on the device
+ * in practice, for comparing one choice of sizes against another.
+ */
+public class PosterUrls {
+    private static final String IMAGE_BASE_URL = "https://image.tmdb.org/t/p/";
+
+    // TMDb's poster widths in pixels, smallest first, and their names in the URL.
+    private static final int[] WIDTHS = {92, 154, 185, 342, 500, 780};
+    private static final String[] SIZE_NAMES = {"w92", "w154", "w185", "w342", "w500", "w780"};
+    static final String ORIGINAL = "original";
+
+    private PosterUrls() {
+    }
+
+    /**
+     * @param posterPath the poster's path from the API, like "/abc.jpg".
+     * @param widthPx how wide the poster will be shown, in pixels.
+     * @return the URL of the smallest size that covers widthPx, or null if there's no poster.
+     */
+    public static String urlFor(String posterPath, int widthPx) {
+        if (posterPath == null) {
+            return null;
+        }
+        return IMAGE_BASE_URL + sizeFor(widthPx) + posterPath;
+    }
+
+    static String sizeFor(int widthPx) {
+        for (int i = 0; i < WIDTHS.length; i++) {
+            if (WIDTHS[i] >= widthPx) {
+                return SIZE_NAMES[i];
+            }
+        }
+        return ORIGINAL;
+    }
+}
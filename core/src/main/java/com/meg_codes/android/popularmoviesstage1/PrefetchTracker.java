@@ -0,0 +1,283 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DetailPrefetcher's bookkeeping, apart from the downloading itself (see Fetcher): what's
+ * known about each movie asked for, which fetches to start, and the budget for guessing.
+ *
+ * Prefetching is a guess, so it's kept within a budget: the bytes fetched for movies that
+ * are never opened (maxUnusedBytes). Once it's spent, only pressed movies are prefetched.
+ * Opening a prefetched movie pays its bytes back, and so does it being pushed out of the
+ * last maxEntries movies asked for, which are the only ones kept.
+ *
+ * A poster only counts as fetched once its download has succeeded, so one that failed is
+ * tried again the next time the movie is asked for.
+ *
+ * Not thread safe: DetailPrefetcher only uses it on the main thread, and reports the
+ * Fetcher's results back on it.
+ */
+public class PrefetchTracker {
+    // Why a movie is prefetched.
+    // Its poster was pressed in the grid, it's very likely about to be opened.
+    public static final int PRESSED = 0;
+    // It's been on screen a while, it might be.
+    public static final int ON_SCREEN = 1;
+
+    /**
+     * Does the downloading. Each fetch it's asked for has to be answered with one call to
+     * the matching on...Fetched method, with the same entry.
+     */
+    public interface Fetcher {
+        /**
+         * Starts fetching a movie's details, at a RateLimiter lane.
+         *
+         * @return the request's ticket, for raising it later.
+         */
+        RateLimiter.Ticket fetchDetails(Entry entry, int lane);
+
+        /**
+         * Moves a details request that's still waiting up to RateLimiter.VISIBLE.
+         */
+        void raise(RateLimiter.Ticket ticket);
+
+        /**
+         * Starts downloading a movie's poster for the detail screen, to disk, and into
+         * memory too if it was pressed.
+         */
+        void fetchPoster(Entry entry, String posterPath, boolean pressed);
+    }
+
+    /**
+     * Receives a movie's details, or null if they couldn't be loaded.
+     */
+    public interface Callback {
+        void onDetailsLoaded(MovieDetails details);
+    }
+
+    /**
+     * What's known about one movie.
+     */
+    public static class Entry {
+        private final long mId;
+        private MovieDetails mDetails;
+        // While the details are being fetched: the request's ticket, and the detail
+        // screens waiting for it.
+        private boolean mFetching;
+        private RateLimiter.Ticket mTicket;
+        private ArrayList<Callback> mWaiting = new ArrayList<>();
+        // Asked for by prefetch, not by a detail screen.
+        private boolean mSpeculative;
+        private boolean mOpened;
+        // Posters that are here, and the downloads on their way.
+        private boolean mPosterOnDisk;
+        private boolean mPosterInMemory;
+        private boolean mDownloadingToDisk;
+        private boolean mDownloadingToMemory;
+        // Bytes fetched for the movie, counted against maxUnusedBytes until it's opened.
+        private long mBytes;
+        // Let go of, for being pushed out or a failed fetch. Fetches still on their way
+        // are answered all the same.
+        private boolean mDropped;
+
+        Entry(long id) {
+            mId = id;
+        }
+
+        public long getId() {
+            return mId;
+        }
+    }
+
+    private final int mMaxEntries;
+    private final long mMaxUnusedBytes;
+    private final Fetcher mFetcher;
+    // The last mMaxEntries movies asked for, least recently first.
+    private final LinkedHashMap<Long, Entry> mEntries;
+    // Bytes fetched for the movies in mEntries that haven't been opened (yet).
+    private long mUnusedBytes;
+
+    public PrefetchTracker(int maxEntries, long maxUnusedBytes, Fetcher fetcher) {
+        mMaxEntries = maxEntries;
+        mMaxUnusedBytes = maxUnusedBytes;
+        mFetcher = fetcher;
+        mEntries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            // (Entry on its own means Map.Entry in here.)
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Long, PrefetchTracker.Entry> eldest) {
+                if (size() <= mMaxEntries) {
+                    return false;
+                }
+                PrefetchTracker.Entry entry = eldest.getValue();
+                if (entry.mSpeculative && !entry.mOpened) {
+                    Metrics.count(Metrics.DETAILS_WASTED);
+                    Metrics.count(Metrics.DETAILS_WASTED_BYTES, entry.mBytes);
+                }
+                dropped(entry);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets a movie's detail screen ready, as far as it isn't already.
+     *
+     * @param reason PRESSED or ON_SCREEN.
+     */
+    public void prefetch(long id, String posterPath, int reason) {
+        boolean pressed = reason == PRESSED;
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            if (!pressed && mUnusedBytes >= mMaxUnusedBytes) {
+                Metrics.count(Metrics.DETAILS_SKIPPED);
+                return;
+            }
+            entry = new Entry(id);
+            entry.mSpeculative = true;
+            mEntries.put(id, entry);
+            Metrics.count(Metrics.DETAILS_PREFETCHED);
+            fetchDetails(entry, pressed ? RateLimiter.VISIBLE : RateLimiter.PREFETCH);
+        } else if (pressed && entry.mFetching) {
+            mFetcher.raise(entry.mTicket);
+        }
+
+        if (posterPath == null || entry.mPosterInMemory || entry.mDownloadingToMemory) {
+            return;
+        }
+        if (pressed) {
+            entry.mDownloadingToMemory = true;
+        } else if (entry.mPosterOnDisk || entry.mDownloadingToDisk) {
+            return;
+        } else {
+            entry.mDownloadingToDisk = true;
+        }
+        mFetcher.fetchPoster(entry, posterPath, pressed);
+    }
+
+    /**
+     * For the detail screen: the movie's details if they're here already, or else they're
+     * fetched (if they aren't on their way already) and handed to the callback.
+     *
+     * @return the details, or null if the callback is going to get them instead.
+     */
+    public MovieDetails getDetails(long id, Callback callback) {
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            Metrics.count(Metrics.DETAILS_NOT_PREFETCHED);
+            entry = new Entry(id);
+            mEntries.put(id, entry);
+            fetchDetails(entry, RateLimiter.VISIBLE);
+        } else if (!entry.mOpened && entry.mSpeculative) {
+            Metrics.count(entry.mDetails != null
+                    ? Metrics.DETAILS_READY : Metrics.DETAILS_LATE);
+        }
+        if (!entry.mOpened) {
+            entry.mOpened = true;
+            mUnusedBytes -= entry.mBytes;
+        }
+        if (entry.mDetails != null) {
+            return entry.mDetails;
+        }
+        if (entry.mFetching) {
+            mFetcher.raise(entry.mTicket);
+        } else {
+            // The last try failed.
+            fetchDetails(entry, RateLimiter.VISIBLE);
+        }
+        entry.mWaiting.add(callback);
+        return null;
+    }
+
+    /**
+     * A details fetch's result.
+     *
+     * @param details null if it failed.
+     * @param bytes the size of the response.
+     */
+    public void onDetailsFetched(Entry entry, MovieDetails details, long bytes) {
+        entry.mFetching = false;
+        entry.mTicket = null;
+        ArrayList<Callback> waiting = entry.mWaiting;
+        entry.mWaiting = new ArrayList<>();
+        if (entry.mDropped) {
+            // Pushed out in the meantime by movies asked for since. A detail screen may still
+            // be waiting for it, so it's handed the details all the same.
+            if (entry.mSpeculative && !entry.mOpened) {
+                Metrics.count(Metrics.DETAILS_WASTED_BYTES, bytes);
+            }
+        } else {
+            addBytes(entry, bytes);
+            if (details != null) {
+                entry.mDetails = details;
+            } else if (!entry.mOpened) {
+                // So it's tried again when the movie is opened.
+                mEntries.remove(entry.mId);
+                dropped(entry);
+            }
+        }
+        for (Callback callback : waiting) {
+            callback.onDetailsLoaded(details);
+        }
+    }
+
+    /**
+     * A poster download's result.
+     *
+     * @param pressed as passed to Fetcher.fetchPoster.
+     * @param bytes the bytes downloaded, 0 if it was on disk already.
+     * @param succeeded false if it couldn't be downloaded, to be tried again next time.
+     */
+    public void onPosterFetched(Entry entry, boolean pressed, long bytes, boolean succeeded) {
+        if (pressed) {
+            entry.mDownloadingToMemory = false;
+        } else {
+            entry.mDownloadingToDisk = false;
+        }
+        if (!succeeded) {
+            return;
+        }
+        entry.mPosterOnDisk = true;
+        entry.mPosterInMemory |= pressed;
+        if (!entry.mDropped) {
+            addBytes(entry, bytes);
+        } else if (entry.mSpeculative && !entry.mOpened) {
+            Metrics.count(Metrics.DETAILS_WASTED_BYTES, bytes);
+        }
+    }
+
+    /**
+     * @return the bytes fetched for movies that haven't been opened, counted against the
+     *         budget.
+     */
+    public long getUnusedBytes() {
+        return mUnusedBytes;
+    }
+
+    private void fetchDetails(Entry entry, int lane) {
+        entry.mFetching = true;
+        entry.mTicket = mFetcher.fetchDetails(entry, lane);
+    }
+
+    private void addBytes(Entry entry, long bytes) {
+        entry.mBytes += bytes;
+        if (entry.mSpeculative) {
+            Metrics.count(Metrics.DETAILS_PREFETCHED_BYTES, bytes);
+        }
+        if (!entry.mOpened) {
+            mUnusedBytes += bytes;
+        }
+    }
+
+    /**
+     * An entry was let go, so its bytes no longer count against the budget.
+     */
+    private void dropped(Entry entry) {
+        entry.mDropped = true;
+        if (!entry.mOpened) {
+            mUnusedBytes -= entry.mBytes;
+        }
+    }
+}
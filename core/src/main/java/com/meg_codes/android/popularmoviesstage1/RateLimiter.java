@@ -0,0 +1,272 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket in front of the TMDb API, so the app stays under its request quota however
+ * many pages, prefetches and refreshes are going on at once.
+ *
+ * The bucket holds up to capacity tokens and gains refillPerSecond tokens a second. Each
+ * request takes one, waiting in line for it if the bucket is empty. Waiting requests are
+ * let through by priority lane first (see VISIBLE, PREFETCH and REFRESH), then in the
+ * order they started waiting, so a page the user is waiting on never queues behind
+ * prefetches.
+ *
+ * Nothing blocks while it waits: acquire takes a callback, run when the token is granted,
+ * and the Clock wakes the limiter up when the next token is due. So a request waiting for
+ * a token doesn't hold a worker thread. The callback runs on whichever thread granted it
+ * (the Clock's, or one calling into the limiter), so it should only hand the request to
+ * an executor.
+ */
+public class RateLimiter {
+    // Lanes, most urgent first.
+    // Pages the user is looking at or about to scroll to.
+    public static final int VISIBLE = 0;
+    // Pages of other queries, loaded ahead in case the user switches to them.
+    public static final int PREFETCH = 1;
+    // Revalidating stale cached pages that have already been shown.
+    public static final int REFRESH = 2;
+
+    // TMDb allowed 40 requests every 10 seconds. In any 10 seconds the bucket lets through
+    // at most what it holds plus what it gains, 10 + 10 * 3 = 40, so even a full bucket
+    // followed by a steady stream stays inside the quota.
+    static final int TMDB_CAPACITY = 10;
+    static final double TMDB_REFILL_PER_SECOND = 3;
+
+    private static final long NO_WAKE_UP = Long.MAX_VALUE;
+
+    private static RateLimiter sTmdbInstance;
+
+    /**
+     * Where the time comes from, and what wakes the limiter when a token is due, so both
+     * can be swapped out (the tests drive it with a fake one).
+     */
+    public interface Clock {
+        long elapsedMillis();
+
+        /**
+         * Runs the task on another thread once delayMillis have gone by.
+         */
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * The Clock the app uses: System.nanoTime, with one daemon thread for the wake-ups.
+     * nanoTime doesn't count time the device spends asleep, which only ever makes the
+     * bucket refill slower than it could, never faster.
+     */
+    public static class SystemClock implements Clock {
+        private final ScheduledThreadPoolExecutor mTimer =
+                new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "RateLimiter");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        @Override
+        public long elapsedMillis() {
+            return System.nanoTime() / 1000000;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mTimer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A request's place in line. Its lane can be raised while it waits (see raise), and it
+     * can wait for a token more than once, for a request that's tried again.
+     */
+    public static class Ticket {
+        private int mPriority;
+        private final long mSequence;
+        // While it's waiting: what to run when it's granted, when it started waiting, and
+        // when it's allowed to go.
+        private Runnable mOnGranted;
+        private long mWaitStart;
+        private long mNotBefore;
+
+        Ticket(int priority, long sequence) {
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        boolean isAhead(Ticket other) {
+            return mPriority < other.mPriority
+                    || (mPriority == other.mPriority && mSequence < other.mSequence);
+        }
+    }
+
+    private final int mCapacity;
+    private final double mRefillPerMilli;
+    private final Clock mClock;
+    private final ArrayList<Ticket> mWaiting = new ArrayList<>();
+    private final Runnable mWakeUp = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (RateLimiter.this) {
+                mWakeAt = NO_WAKE_UP;
+            }
+            dispatch();
+        }
+    };
+    private double mTokens;
+    private long mLastRefill;
+    private long mNextSequence;
+    // When the scheduled wake-up is due, or NO_WAKE_UP if there isn't one.
+    private long mWakeAt = NO_WAKE_UP;
+
+    public static synchronized RateLimiter getTmdbInstance() {
+        if (sTmdbInstance == null) {
+            sTmdbInstance = new RateLimiter(TMDB_CAPACITY, TMDB_REFILL_PER_SECOND,
+                    new SystemClock());
+        }
+        return sTmdbInstance;
+    }
+
+    public RateLimiter(int capacity, double refillPerSecond, Clock clock) {
+        mCapacity = capacity;
+        mRefillPerMilli = refillPerSecond / 1000;
+        mClock = clock;
+        mTokens = capacity;
+        mLastRefill = clock.elapsedMillis();
+    }
+
+    /**
+     * @return a ticket for a request in the lane, to pass to acquire.
+     */
+    public synchronized Ticket newTicket(int priority) {
+        return new Ticket(priority, mNextSequence++);
+    }
+
+    /**
+     * Moves a ticket to a more urgent lane, for a request a more urgent one is waiting on
+     * (see MovieFetcher's coalescing). Does nothing if it's already in that lane or higher.
+     */
+    public synchronized void raise(Ticket ticket, int priority) {
+        if (priority < ticket.mPriority) {
+            ticket.mPriority = priority;
+        }
+    }
+
+    /**
+     * Puts the ticket in line, and runs onGranted once it's at the front and there's a
+     * token, which may be right away, on this thread.
+     */
+    public void acquire(Ticket ticket, Runnable onGranted) {
+        acquire(ticket, 0, onGranted);
+    }
+
+    /**
+     * The same, but the ticket isn't let through before delayMillis have gone by, for a
+     * retry that has to wait. It keeps its place in line, so once the time's up it goes
+     * ahead of anything that started waiting after it.
+     */
+    public void acquire(Ticket ticket, long delayMillis, Runnable onGranted) {
+        synchronized (this) {
+            if (ticket.mOnGranted != null) {
+                throw new IllegalStateException("The ticket is already waiting");
+            }
+            long now = mClock.elapsedMillis();
+            ticket.mOnGranted = onGranted;
+            ticket.mNotBefore = now + Math.max(0, delayMillis);
+            ticket.mWaitStart = ticket.mNotBefore;
+            mWaiting.add(ticket);
+        }
+        dispatch();
+    }
+
+    /**
+     * Takes the ticket out of line, if it's still waiting, so it won't use a token.
+     *
+     * @return true if it was waiting, false if it had already been granted (or never
+     *         waited).
+     */
+    public synchronized boolean cancel(Ticket ticket) {
+        if (!mWaiting.remove(ticket)) {
+            return false;
+        }
+        ticket.mOnGranted = null;
+        return true;
+    }
+
+    /**
+     * Hands out whatever tokens there are to the tickets at the front of the line, and
+     * makes sure the limiter is woken up when the next one can go. The callbacks are run
+     * outside the lock, so they can call back in.
+     */
+    private void dispatch() {
+        ArrayList<Runnable> granted = null;
+        synchronized (this) {
+            long now = mClock.elapsedMillis();
+            refill(now);
+            while (mTokens >= 1) {
+                Ticket next = firstReady(now);
+                if (next == null) {
+                    break;
+                }
+                mTokens -= 1;
+                mWaiting.remove(next);
+                int lane = Math.min(next.mPriority, REFRESH);
+                Metrics.count(Metrics.TOKENS_VISIBLE + lane);
+                Metrics.record(Metrics.TOKEN_WAIT_VISIBLE + lane,
+                        (now - next.mWaitStart) * 1000000);
+                if (granted == null) {
+                    granted = new ArrayList<>();
+                }
+                granted.add(next.mOnGranted);
+                next.mOnGranted = null;
+            }
+            scheduleWakeUp(now);
+        }
+        if (granted != null) {
+            for (Runnable onGranted : granted) {
+                onGranted.run();
+            }
+        }
+    }
+
+    /**
+     * @return the ticket furthest ahead of those whose delay is up, or null if none is.
+     */
+    private Ticket firstReady(long now) {
+        Ticket first = null;
+        for (Ticket ticket : mWaiting) {
+            if (ticket.mNotBefore <= now && (first == null || ticket.isAhead(first))) {
+                first = ticket;
+            }
+        }
+        return first;
+    }
+
+    private void scheduleWakeUp(long now) {
+        if (mWaiting.isEmpty()) {
+            return;
+        }
+        // Nothing can go before there's a token and one of the tickets' delay is up.
+        long nextToken = mTokens >= 1
+                ? now : now + (long) Math.ceil((1 - mTokens) / mRefillPerMilli);
+        long nextReady = Long.MAX_VALUE;
+        for (Ticket ticket : mWaiting) {
+            nextReady = Math.min(nextReady, ticket.mNotBefore);
+        }
+        long wakeAt = Math.max(nextToken, nextReady);
+        // An earlier wake-up that's already scheduled will schedule the next one.
+        if (wakeAt < mWakeAt) {
+            mWakeAt = wakeAt;
+            mClock.schedule(mWakeUp, Math.max(1, wakeAt - now));
+        }
+    }
+
+    private void refill(long now) {
+        mTokens = Math.min(mCapacity, mTokens + (now - mLastRefill) * mRefillPerMilli);
+        mLastRefill = now;
+    }
+}
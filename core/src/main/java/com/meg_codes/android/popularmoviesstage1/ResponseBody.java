@@ -0,0 +1,151 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Turns the raw stream of an HTTP response into the body HttpClient hands out:
+ *
+ * - unzipped, if it was sent gzipped (HttpClient asks for that itself, so
+ *   HttpURLConnection leaves it zipped);
+ * - counted twice, as it came over the wire and unzipped (see Metrics.HTTP_WIRE_BYTES);
+ * - checked against its Content-Length, so a connection dropped part way through is an
+ *   IOException rather than a short body that ends up in a cache;
+ * - read to the end when it's closed, since a connection is only reused if its last
+ *   response was, and the JSON parser closes the stream as soon as it's done.
+ */
+public final class ResponseBody {
+    private ResponseBody() {
+    }
+
+    /**
+     * @param raw the response's stream, or null if it has none.
+     * @param code the status code. A 304 or 204 has no body to unzip or check the length
+     *             of, whatever its headers say.
+     * @param contentEncoding the Content-Encoding header, or null.
+     * @param contentLength the Content-Length header, or null. It's the length on the
+     *                      wire, so gzipped if the body is.
+     * @throws IOException if a gzipped body doesn't start with a gzip header.
+     */
+    public static InputStream open(InputStream raw, int code, String contentEncoding,
+                                   String contentLength) throws IOException {
+        if (raw == null) {
+            raw = new EmptyInputStream();
+        }
+        // 304 Not Modified and 204 No Content.
+        boolean hasBody = code != 304 && code != 204;
+        InputStream body = new CountingInputStream(raw, Metrics.HTTP_WIRE_BYTES,
+                hasBody ? parseLength(contentLength) : -1);
+        if (hasBody && "gzip".equalsIgnoreCase(contentEncoding)) {
+            body = new CountingInputStream(new GZIPInputStream(body),
+                    Metrics.HTTP_BODY_BYTES, -1);
+        } else {
+            body = new CountingInputStream(body, Metrics.HTTP_BODY_BYTES, -1);
+        }
+        return new DrainingInputStream(body);
+    }
+
+    /**
+     * @return the length, or -1 if there isn't a usable one.
+     */
+    static long parseLength(String contentLength) {
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            long length = Long.parseLong(contentLength.trim());
+            return length >= 0 ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, and if it knows how many there should be, fails
+     * when the stream ends short of them.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final int mCounter;
+        private final long mExpected;
+        private long mCount;
+
+        CountingInputStream(InputStream in, int counter, long expected) {
+            super(in);
+            mCounter = counter;
+            mExpected = expected;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                counted(1);
+            } else {
+                checkEnd();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                counted(n);
+            } else if (n == -1) {
+                checkEnd();
+            }
+            return n;
+        }
+
+        private void counted(int n) {
+            mCount += n;
+            Metrics.count(mCounter, n);
+        }
+
+        private void checkEnd() throws IOException {
+            if (mExpected >= 0 && mCount < mExpected) {
+                throw new IOException("Response ended after " + mCount + " of " + mExpected
+                        + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Reads to the end before closing.
+     */
+    private static class DrainingInputStream extends FilterInputStream {
+        private boolean mClosed;
+        // For Metrics.DOWNLOAD, from when the headers were in.
+        private final long mStart = Metrics.start();
+
+        DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // Skipping to the end.
+                }
+            } finally {
+                in.close();
+                Metrics.stop(Metrics.DOWNLOAD, mStart);
+            }
+        }
+    }
+
+    private static class EmptyInputStream extends InputStream {
+        @Override
+        public int read() {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.Random;
+
+/**
+ * When a failed HTTP request is worth another try, and how long to wait before it. Used by
+ * HttpClient for every request the app makes.
+ *
+ * Requests that fail with 429 or a 5xx, or with an IOException, are tried again up to
+ * maxRetries times. The wait is a random time up to an exponentially growing limit ("full
+ * jitter", so requests that failed together don't all retry at the same moment), unless
+ * the response had a Retry-After header, which is waited out instead (up to a limit).
+ *
+ * Safe to use from any thread.
+ */
+public class RetryPolicy {
+    private final int mMaxRetries;
+    private final long mBaseBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final long mMaxRetryAfterMillis;
+    private final Random mRandom;
+
+    /**
+     * @param baseBackoffMillis the limit of the wait after the first try.
+     * @param maxBackoffMillis the limit never grows past this.
+     * @param maxRetryAfterMillis a longer Retry-After is cut down to this.
+     * @param random where the jitter comes from.
+     */
+    public RetryPolicy(int maxRetries, long baseBackoffMillis, long maxBackoffMillis,
+                       long maxRetryAfterMillis, Random random) {
+        mMaxRetries = maxRetries;
+        mBaseBackoffMillis = baseBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mMaxRetryAfterMillis = maxRetryAfterMillis;
+        mRandom = random;
+    }
+
+    /**
+     * @return true for the response codes that might well be different next time: 429
+     *         (too many requests) and the 5xx server errors.
+     */
+    public static boolean isRetryable(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    /**
+     * @param attempt the try that just failed, 0 for the first.
+     * @return true if there are retries left after it.
+     */
+    public boolean canRetry(int attempt) {
+        return attempt < mMaxRetries;
+    }
+
+    /**
+     * @param attempt the try that just failed, 0 for the first.
+     * @param retryAfter the failed response's Retry-After header, or null if it had none
+     *                   (or there was no response).
+     * @return how long to wait before the next try.
+     */
+    public long delayMillis(int attempt, String retryAfter) {
+        long wait = retryAfterMillis(retryAfter);
+        return wait >= 0 ? wait : backoffMillis(attempt);
+    }
+
+    /**
+     * @return a random wait up to baseBackoffMillis * 2^attempt, capped at maxBackoffMillis.
+     */
+    long backoffMillis(int attempt) {
+        long limit = Math.min(mMaxBackoffMillis, mBaseBackoffMillis << Math.min(attempt, 16));
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * limit);
+        }
+    }
+
+    /**
+     * @return the wait a Retry-After header in seconds asks for, at most
+     *         maxRetryAfterMillis, or -1 if there's no usable one. An HTTP date instead of
+     *         seconds isn't worth parsing here; the usual backoff will do.
+     */
+    long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            long seconds = Long.parseLong(retryAfter.trim());
+            if (seconds < 0) {
+                return -1;
+            }
+            return Math.min(mMaxRetryAfterMillis, seconds * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
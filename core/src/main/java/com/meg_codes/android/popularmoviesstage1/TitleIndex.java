@@ -0,0 +1,356 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An in-memory index of movie titles for the search action, so results can be updated on
+ * every keystroke without going through every title each time.
+ *
+ * Titles are normalized (lower case, accents and punctuation dropped, words separated by
+ * single spaces, with a space in front of each word) and every 3 character run in them
+ * ("trigram") points to the movies whose titles contain it. The space in front of each
+ * word means " st" only comes from words starting with "st", so a search matches titles
+ * with words starting with what was typed: "wars" and "star wa" find "Star Wars", but
+ * "ars" doesn't. A single letter is looked up by its 2 character " x" run instead.
+ *
+ * A search intersects the lists of the trigrams in the query, and then checks the few
+ * titles left over, since having all the trigrams doesn't always mean having them in a row.
+ *
+ * Movies are added as their pages come in (see add), and each is only indexed once.
+ * Not thread safe; the grid uses it from the main thread only.
+ */
+public class TitleIndex {
+    // Ordinals (the order the movies were added in) of the movies with each trigram. They
+    // are added in order, so every list is sorted, which is what intersect relies on.
+    private static class Postings {
+        int[] ordinals = new int[4];
+        int size;
+
+        void add(int ordinal) {
+            // A title with the same trigram twice ("the other") lists the movie once.
+            if (size > 0 && ordinals[size - 1] == ordinal) {
+                return;
+            }
+            if (size == ordinals.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(ordinals, 0, grown, 0, size);
+                ordinals = grown;
+            }
+            ordinals[size++] = ordinal;
+        }
+    }
+
+    // Postings by trigram key (see gramKey), in a table of plain longs like Ordinals below,
+    // so looking up the trigrams of every title added and every keystroke doesn't box them.
+    private static class PostingsTable {
+        // Never more than half full. A null Postings is an empty slot.
+        long[] keys = new long[256];
+        Postings[] postings = new Postings[256];
+        int size;
+
+        /**
+         * @return the postings of the trigram, or null if no title has it.
+         */
+        Postings get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); postings[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return postings[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the postings of the trigram, added empty if no title had it yet.
+         */
+        Postings getOrAdd(long key) {
+            Postings found = get(key);
+            if (found != null) {
+                return found;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                long[] oldKeys = keys;
+                Postings[] oldPostings = postings;
+                keys = new long[oldKeys.length * 2];
+                postings = new Postings[oldKeys.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldPostings[i] != null) {
+                        insert(oldKeys[i], oldPostings[i]);
+                    }
+                }
+            }
+            Postings added = new Postings();
+            insert(key, added);
+            size++;
+            return added;
+        }
+
+        private void insert(long key, Postings value) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (postings[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            postings[i] = value;
+        }
+    }
+
+    // Ordinals by TMDb id, in a table of plain longs and ints (open addressing, probing the
+    // next slot along) rather than a HashMap, since filter looks up every movie in the list
+    // it's given on every keystroke, and a HashMap would box each id to look it up.
+    private static class Ordinals {
+        // Ordinal + 1 in each slot, 0 for an empty one. Never more than half full, and a
+        // table made for a known number of ids starts out a quarter full at most, so
+        // looking up an id that isn't there rarely goes past its first slot.
+        long[] ids;
+        int[] ordinals;
+        int size;
+
+        Ordinals(int expectedSize) {
+            int capacity = 16;
+            while (capacity < expectedSize * 4) {
+                capacity *= 2;
+            }
+            ids = new long[capacity];
+            ordinals = new int[capacity];
+        }
+
+        /**
+         * @return the movie's ordinal, or -1 if it isn't in the index.
+         */
+        int get(long id) {
+            int mask = ids.length - 1;
+            for (int i = slot(id, mask); ordinals[i] != 0; i = (i + 1) & mask) {
+                if (ids[i] == id) {
+                    return ordinals[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        void put(long id, int ordinal) {
+            if ((size + 1) * 2 > ids.length) {
+                long[] oldIds = ids;
+                int[] oldOrdinals = ordinals;
+                ids = new long[oldIds.length * 2];
+                ordinals = new int[oldIds.length * 2];
+                for (int i = 0; i < oldIds.length; i++) {
+                    if (oldOrdinals[i] != 0) {
+                        insert(oldIds[i], oldOrdinals[i]);
+                    }
+                }
+            }
+            insert(id, ordinal + 1);
+            size++;
+        }
+
+        private void insert(long id, int slotValue) {
+            int mask = ids.length - 1;
+            int i = slot(id, mask);
+            while (ordinals[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            ids[i] = id;
+            ordinals[i] = slotValue;
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        // MurmurHash3's finalizer: every bit of the key ends up in the low bits used here,
+        // so ids that only differ higher up, or by a constant step (the same movie's copies
+        // in the benchmarks), and trigrams, whose chars sit 16 bits apart, don't pile up in
+        // the same slots.
+        long hash = key;
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (hash ^ (hash >>> 33)) & mask;
+    }
+
+    private final PostingsTable mPostings = new PostingsTable();
+    private final Ordinals mOrdinals = new Ordinals(0);
+    // The TMDb ids and normalized titles by ordinal.
+    private long[] mIds = new long[16];
+    private final ArrayList<String> mTitles = new ArrayList<>();
+
+    /**
+     * Indexes the movie's title, unless it's already in the index.
+     */
+    public void add(Movie movie) {
+        if (mOrdinals.get(movie.getId()) >= 0) {
+            return;
+        }
+        int ordinal = mTitles.size();
+        String title = normalize(movie.getTitle());
+        mOrdinals.put(movie.getId(), ordinal);
+        if (ordinal == mIds.length) {
+            long[] grown = new long[ordinal * 2];
+            System.arraycopy(mIds, 0, grown, 0, ordinal);
+            mIds = grown;
+        }
+        mIds[ordinal] = movie.getId();
+        mTitles.add(title);
+        for (int i = 0; i + 1 < title.length(); i++) {
+            if (title.charAt(i) == ' ') {
+                mPostings.getOrAdd(gramKey(title, i, 2)).add(ordinal);
+            }
+            if (i + 2 < title.length()) {
+                mPostings.getOrAdd(gramKey(title, i, 3)).add(ordinal);
+            }
+        }
+    }
+
+    public void addAll(List<Movie> movies) {
+        for (Movie m : movies) {
+            add(m);
+        }
+    }
+
+    public int size() {
+        return mTitles.size();
+    }
+
+    /**
+     * @return the movies whose titles match the query, in the list's order. Movies that
+     *         haven't been added to the index never match. An empty query matches everything.
+     */
+    public ArrayList<Movie> filter(List<Movie> movies, String query) {
+        String normalized = normalize(query);
+        if (normalized.length() == 0) {
+            return new ArrayList<>(movies);
+        }
+        BitSet matching = search(normalized);
+        int count = matching.cardinality();
+        ArrayList<Movie> result = new ArrayList<>(count);
+        if (count == 0) {
+            return result;
+        }
+        // Every movie in the list is looked up in a table of just the matches. It's far
+        // smaller than mOrdinals for most queries, so it stays in the CPU's cache, and
+        // most lookups stop at the first, empty, slot.
+        Ordinals matchingIds = new Ordinals(count);
+        for (int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1)) {
+            matchingIds.put(mIds[i], i);
+        }
+        for (Movie m : movies) {
+            if (matchingIds.get(m.getId()) >= 0) {
+                result.add(m);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param query a normalized, non-empty query.
+     * @return the ordinals of the matching movies.
+     */
+    private BitSet search(String query) {
+        BitSet matching = new BitSet(mTitles.size());
+        if (query.length() == 2) {
+            Postings postings = mPostings.get(gramKey(query, 0, 2));
+            if (postings == null) {
+                return matching;
+            }
+            // Every title with the " x" run matches, nothing to check.
+            for (int i = 0; i < postings.size; i++) {
+                matching.set(postings.ordinals[i]);
+            }
+            return matching;
+        }
+
+        // Starts from the shortest list, so each intersection only gets smaller.
+        Postings[] lists = new Postings[query.length() - 2];
+        int shortest = 0;
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = mPostings.get(gramKey(query, i, 3));
+            if (lists[i] == null) {
+                return matching;
+            }
+            if (lists[i].size < lists[shortest].size) {
+                shortest = i;
+            }
+        }
+        int[] candidates = new int[lists[shortest].size];
+        System.arraycopy(lists[shortest].ordinals, 0, candidates, 0, candidates.length);
+        int count = candidates.length;
+        for (int i = 0; i < lists.length && count > 0; i++) {
+            if (i != shortest) {
+                count = intersect(candidates, count, lists[i]);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (mTitles.get(candidates[i]).contains(query)) {
+                matching.set(candidates[i]);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Keeps the candidates that are also in the postings, in place.
+     *
+     * @return the number of candidates kept.
+     */
+    private static int intersect(int[] candidates, int count, Postings postings) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < postings.size; i++) {
+            while (j < postings.size && postings.ordinals[j] < candidates[i]) {
+                j++;
+            }
+            if (j < postings.size && postings.ordinals[j] == candidates[i]) {
+                candidates[kept++] = candidates[i];
+            }
+        }
+        return kept;
+    }
+
+    // Packs 2 or 3 chars into a long, 16 bits each, with the length on top so " x" and
+    // " x\u0000" can't collide.
+    private static long gramKey(String text, int start, int length) {
+        long key = length;
+        for (int i = start; i < start + length; i++) {
+            key = (key << 16) | text.charAt(i);
+        }
+        return key;
+    }
+
+    /**
+     * @return the text in lower case without accents, with only letters and digits, and
+     *         a single space in front of each word. Empty if there aren't any letters or
+     *         digits.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .toLowerCase(Locale.US);
+        StringBuilder normalized = new StringBuilder(decomposed.length() + 1);
+        boolean inWord = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                // The accent split off from a letter by NFD.
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    normalized.append(' ');
+                    inWord = true;
+                }
+                normalized.append(c);
+            } else if (c != '\'') {
+                // "Schindler's" is one word, "Spider-Man" two.
+                inWord = false;
+            }
+        }
+        return normalized.toString();
+    }
+}
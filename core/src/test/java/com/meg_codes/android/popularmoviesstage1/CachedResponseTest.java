@@ -0,0 +1,89 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CachedResponseTest {
+    private static final long NOW = 1000000;
+    private static final byte[] BODY = {'{', '}'};
+
+    @Test
+    public void freshUntilItExpires() {
+        CachedResponse response = new CachedResponse("\"abc\"", null, NOW + 1000, BODY);
+        assertTrue(response.isFresh(NOW));
+        assertTrue(response.isFresh(NOW + 999));
+        assertFalse(response.isFresh(NOW + 1000));
+        assertFalse(response.isFresh(NOW + 60000));
+    }
+
+    @Test
+    public void notModifiedOnlyMovesTheExpiry() {
+        CachedResponse stale = new CachedResponse("\"abc\"", "Wed, 21 Oct 2015 07:28:00 GMT",
+                NOW - 1, BODY);
+        CachedResponse revalidated = stale.withExpiry(NOW + 5000);
+        assertTrue(revalidated.isFresh(NOW));
+        assertEquals("\"abc\"", revalidated.etag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", revalidated.lastModified);
+        assertSame(BODY, revalidated.body);
+        assertFalse(stale.isFresh(NOW));
+    }
+
+    @Test
+    public void conditionalHeadersComeFromTheValidators() {
+        Map<String, String> both = new CachedResponse("\"abc\"",
+                "Wed, 21 Oct 2015 07:28:00 GMT", NOW, BODY).conditionalHeaders();
+        assertEquals(2, both.size());
+        assertEquals("\"abc\"", both.get("If-None-Match"));
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", both.get("If-Modified-Since"));
+
+        Map<String, String> etagOnly =
+                new CachedResponse("\"abc\"", null, NOW, BODY).conditionalHeaders();
+        assertEquals(1, etagOnly.size());
+        assertEquals("\"abc\"", etagOnly.get("If-None-Match"));
+
+        assertTrue(new CachedResponse(null, null, NOW, BODY).conditionalHeaders().isEmpty());
+    }
+
+    @Test
+    public void maxAgeSetsTheExpiry() {
+        assertEquals(NOW + 60000, CachedResponse.expiresAt(NOW, "max-age=60"));
+        assertEquals(NOW + 300000, CachedResponse.expiresAt(NOW, "public, max-age=300"));
+        assertEquals(NOW + 20000, CachedResponse.expiresAt(NOW, " Max-Age=20 , public"));
+        assertEquals(NOW, CachedResponse.expiresAt(NOW, "max-age=0"));
+    }
+
+    @Test
+    public void noCacheMeansCheckEveryTime() {
+        assertEquals(NOW, CachedResponse.expiresAt(NOW, "no-cache"));
+        assertEquals(NOW, CachedResponse.expiresAt(NOW, "private, no-store"));
+    }
+
+    @Test
+    public void otherwiseTheDefaultTtl() {
+        long expected = NOW + CachedResponse.DEFAULT_TTL_MILLIS;
+        assertEquals(expected, CachedResponse.expiresAt(NOW, null));
+        assertEquals(expected, CachedResponse.expiresAt(NOW, "public"));
+        assertEquals(expected, CachedResponse.expiresAt(NOW, "max-age=soon"));
+        assertEquals(expected, CachedResponse.expiresAt(NOW, ""));
+    }
+
+    @Test
+    public void negativeMaxAgeIsAlreadyStale() {
+        assertEquals(NOW, CachedResponse.expiresAt(NOW, "max-age=-5"));
+    }
+
+    @Test
+    public void hugeMaxAgeIsCappedRatherThanOverflowing() {
+        long capped = NOW + CachedResponse.MAX_AGE_SECONDS * 1000;
+        assertEquals(capped, CachedResponse.expiresAt(NOW, "max-age=9223372036854775807"));
+        assertEquals(capped, CachedResponse.expiresAt(NOW, "max-age=9223372036854775"));
+        assertEquals(capped, CachedResponse.expiresAt(NOW, "max-age=99999999999999999999"));
+        assertEquals(NOW + 2147483647000L, CachedResponse.expiresAt(NOW, "max-age=2147483647"));
+    }
+}
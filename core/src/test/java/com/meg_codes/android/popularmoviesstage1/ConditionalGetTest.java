@@ -0,0 +1,158 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConditionalGetTest {
+    private static final long NOW = 1000000;
+    private static final byte[] OLD_BODY = "{\"page\":1,\"results\":[]}".getBytes();
+    private static final byte[] NEW_BODY =
+            "{\"page\":1,\"results\":[{\"id\":1,\"title\":\"Up\"}]}".getBytes();
+
+    /**
+     * A stand-in for TMDb's answer that counts how much of its body gets read.
+     */
+    private static class FakeResponse implements ConditionalGet.Response {
+        private final int mCode;
+        private final HashMap<String, String> mHeaders = new HashMap<>();
+        private final byte[] mBody;
+        int mBytesRead;
+
+        FakeResponse(int code, byte[] body) {
+            mCode = code;
+            mBody = body;
+        }
+
+        FakeResponse header(String name, String value) {
+            mHeaders.put(name, value);
+            return this;
+        }
+
+        @Override
+        public int getCode() {
+            return mCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mHeaders.get(name);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(mBody) {
+                @Override
+                public synchronized int read() {
+                    int b = super.read();
+                    if (b != -1) {
+                        mBytesRead++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public synchronized int read(byte[] buffer, int offset, int count) {
+                    int n = super.read(buffer, offset, count);
+                    if (n > 0) {
+                        mBytesRead += n;
+                    }
+                    return n;
+                }
+            };
+        }
+    }
+
+    /**
+     * Reads the whole body, counting how often it's called.
+     */
+    private static class CountingParser implements ConditionalGet.Parser<Integer> {
+        int mCalls;
+
+        @Override
+        public Integer parse(InputStream body) throws IOException {
+            mCalls++;
+            int length = 0;
+            byte[] buffer = new byte[16];
+            for (int n; (n = body.read(buffer)) != -1; ) {
+                length += n;
+            }
+            return length;
+        }
+    }
+
+    private static CachedResponse stale() {
+        return new CachedResponse("\"old\"", null, NOW - 1, OLD_BODY);
+    }
+
+    @Test
+    public void notModifiedReadsAndParsesNothing() throws IOException {
+        CachedResponse cached = stale();
+        FakeResponse response = new FakeResponse(304, NEW_BODY)
+                .header("Cache-Control", "max-age=60");
+        CountingParser parser = new CountingParser();
+
+        ConditionalGet<Integer> result = ConditionalGet.read(cached, response, NOW, parser);
+
+        assertEquals(ConditionalGet.NOT_MODIFIED, result.outcome);
+        assertEquals(0, response.mBytesRead);
+        assertEquals(0, parser.mCalls);
+        assertNull(result.parsed);
+        assertSame(OLD_BODY, result.entry.body);
+        assertEquals("\"old\"", result.entry.etag);
+        assertEquals(NOW + 60000, result.entry.expiresAt);
+    }
+
+    @Test
+    public void modifiedReadsAndParsesTheBodyOnce() throws IOException {
+        FakeResponse response = new FakeResponse(200, NEW_BODY)
+                .header("ETag", "\"new\"")
+                .header("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+        CountingParser parser = new CountingParser();
+
+        ConditionalGet<Integer> result = ConditionalGet.read(stale(), response, NOW, parser);
+
+        assertEquals(ConditionalGet.MODIFIED, result.outcome);
+        assertEquals(NEW_BODY.length, response.mBytesRead);
+        assertEquals(1, parser.mCalls);
+        assertEquals(NEW_BODY.length, (int) result.parsed);
+        // What was read on the way through is what gets cached.
+        assertArrayEquals(NEW_BODY, result.entry.body);
+        assertEquals("\"new\"", result.entry.etag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", result.entry.lastModified);
+        assertEquals(NOW + CachedResponse.DEFAULT_TTL_MILLIS, result.entry.expiresAt);
+    }
+
+    @Test
+    public void errorsAreNeitherParsedNorCached() throws IOException {
+        FakeResponse response = new FakeResponse(500, NEW_BODY);
+        CountingParser parser = new CountingParser();
+
+        ConditionalGet<Integer> result = ConditionalGet.read(stale(), response, NOW, parser);
+
+        assertEquals(ConditionalGet.FAILED, result.outcome);
+        assertEquals(0, response.mBytesRead);
+        assertEquals(0, parser.mCalls);
+        assertNull(result.entry);
+    }
+
+    @Test
+    public void notModifiedWithNothingCachedIsAnError() throws IOException {
+        FakeResponse response = new FakeResponse(304, NEW_BODY);
+        CountingParser parser = new CountingParser();
+
+        ConditionalGet<Integer> result = ConditionalGet.read(null, response, NOW, parser);
+
+        assertEquals(ConditionalGet.FAILED, result.outcome);
+        assertEquals(0, parser.mCalls);
+        assertNull(result.entry);
+    }
+}
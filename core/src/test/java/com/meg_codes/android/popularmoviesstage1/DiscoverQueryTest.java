@@ -0,0 +1,121 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The release date windows, for days picked to cross month and year ends (and a leap day).
+ * The queries are shared, so each test moves "today" wherever it likes.
+ */
+public class DiscoverQueryTest {
+    /**
+     * @return the middle of the day, on the device's clock.
+     */
+    private static long day(int year, int month, int dayOfMonth) {
+        return time(year, month, dayOfMonth, 12, 0);
+    }
+
+    private static long time(int year, int month, int dayOfMonth, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, dayOfMonth, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    private static Movie released(String date) {
+        return new Movie(1, "Movie", null, null, date, 7, 100, 10, 0, "");
+    }
+
+    private static void assertWindow(DiscoverQuery query, long today, String first,
+                                     String last) {
+        String dateParameters = (first != null ? "&primary_release_date.gte=" + first : "")
+                + (last != null ? "&primary_release_date.lte=" + last : "");
+        assertTrue(query.getParameters(today), query.getParameters(today).endsWith(
+                dateParameters));
+    }
+
+    @Test
+    public void queriesWithoutAWindowTakeEverything() {
+        long today = day(2015, 6, 15);
+        assertEquals("sort_by=popularity.desc", DiscoverQuery.POPULARITY.getParameters(today));
+        assertTrue(DiscoverQuery.POPULARITY.accepts(released("1950-01-01"), today));
+        assertTrue(DiscoverQuery.VOTE_AVERAGE.accepts(released(null), today));
+    }
+
+    @Test
+    public void newestIsUpToToday() {
+        long today = day(2015, 12, 31);
+        assertWindow(DiscoverQuery.NEWEST, today, null, "2015-12-31");
+        assertTrue(DiscoverQuery.NEWEST.accepts(released("1920-02-01"), today));
+        assertTrue(DiscoverQuery.NEWEST.accepts(released("2015-12-31"), today));
+        assertFalse(DiscoverQuery.NEWEST.accepts(released("2016-01-01"), today));
+        assertFalse(DiscoverQuery.NEWEST.accepts(released(null), today));
+    }
+
+    @Test
+    public void nowPlayingIsTheLast30Days() {
+        // Back across the end of a leap February.
+        long today = day(2016, 3, 1);
+        assertWindow(DiscoverQuery.NOW_PLAYING, today, "2016-01-31", "2016-03-01");
+        assertFalse(DiscoverQuery.NOW_PLAYING.accepts(released("2016-01-30"), today));
+        assertTrue(DiscoverQuery.NOW_PLAYING.accepts(released("2016-01-31"), today));
+        assertTrue(DiscoverQuery.NOW_PLAYING.accepts(released("2016-02-29"), today));
+        assertTrue(DiscoverQuery.NOW_PLAYING.accepts(released("2016-03-01"), today));
+        assertFalse(DiscoverQuery.NOW_PLAYING.accepts(released("2016-03-02"), today));
+    }
+
+    @Test
+    public void nowPlayingCrossesTheYear() {
+        long today = day(2016, 1, 10);
+        assertWindow(DiscoverQuery.NOW_PLAYING, today, "2015-12-11", "2016-01-10");
+        assertFalse(DiscoverQuery.NOW_PLAYING.accepts(released("2015-12-10"), today));
+        assertTrue(DiscoverQuery.NOW_PLAYING.accepts(released("2015-12-11"), today));
+        assertTrue(DiscoverQuery.NOW_PLAYING.accepts(released("2016-01-10"), today));
+    }
+
+    @Test
+    public void upcomingIsTomorrowToTwoMonthsAhead() {
+        long today = day(2015, 12, 15);
+        assertWindow(DiscoverQuery.UPCOMING, today, "2015-12-16", "2016-02-13");
+        assertFalse(DiscoverQuery.UPCOMING.accepts(released("2015-12-15"), today));
+        assertTrue(DiscoverQuery.UPCOMING.accepts(released("2015-12-16"), today));
+        assertTrue(DiscoverQuery.UPCOMING.accepts(released("2016-01-01"), today));
+        assertTrue(DiscoverQuery.UPCOMING.accepts(released("2016-02-13"), today));
+        assertFalse(DiscoverQuery.UPCOMING.accepts(released("2016-02-14"), today));
+    }
+
+    @Test
+    public void upcomingFromTheLastDayOfTheMonth() {
+        long today = day(2015, 1, 31);
+        assertWindow(DiscoverQuery.UPCOMING, today, "2015-02-01", "2015-04-01");
+        assertTrue(DiscoverQuery.UPCOMING.accepts(released("2015-02-01"), today));
+        assertTrue(DiscoverQuery.UPCOMING.accepts(released("2015-04-01"), today));
+        assertFalse(DiscoverQuery.UPCOMING.accepts(released("2015-04-02"), today));
+    }
+
+    @Test
+    public void theWindowMovesAtMidnight() {
+        long lastMinute = time(2015, 12, 31, 23, 59);
+        long midnight = time(2016, 1, 1, 0, 0);
+        assertTrue(DiscoverQuery.NEWEST.getParameters(lastMinute).endsWith("2015-12-31"));
+        assertFalse(DiscoverQuery.NEWEST.accepts(released("2016-01-01"), lastMinute));
+        assertTrue(DiscoverQuery.NEWEST.getParameters(midnight).endsWith("2016-01-01"));
+        assertTrue(DiscoverQuery.NEWEST.accepts(released("2016-01-01"), midnight));
+
+        // And back again, if the clock is set back.
+        assertTrue(DiscoverQuery.NEWEST.getParameters(lastMinute).endsWith("2015-12-31"));
+    }
+
+    @Test
+    public void aYearOnlyDateCountsAsTheStartOfTheYear() {
+        // "2016" packs to 20160000, between the last day of 2015 and the first of 2016.
+        assertTrue(DiscoverQuery.NOW_PLAYING.accepts(released("2016"), day(2016, 1, 10)));
+        assertFalse(DiscoverQuery.NOW_PLAYING.accepts(released("2016"), day(2016, 3, 1)));
+        assertFalse(DiscoverQuery.UPCOMING.accepts(released("2016"), day(2016, 1, 10)));
+    }
+}
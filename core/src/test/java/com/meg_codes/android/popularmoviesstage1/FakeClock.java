@@ -0,0 +1,58 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import java.util.ArrayList;
+
+/**
+ * A RateLimiter.Clock the test moves forward by hand. Scheduled tasks run on the test's
+ * thread, in order, as advance passes their time.
+ */
+public class FakeClock implements RateLimiter.Clock {
+    private static class Scheduled {
+        final long mAt;
+        final Runnable mTask;
+
+        Scheduled(long at, Runnable task) {
+            mAt = at;
+            mTask = task;
+        }
+    }
+
+    private final ArrayList<Scheduled> mScheduled = new ArrayList<>();
+    private long mNow;
+
+    @Override
+    public long elapsedMillis() {
+        return mNow;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        mScheduled.add(new Scheduled(mNow + delayMillis, task));
+    }
+
+    /**
+     * Moves the time forward, running each task that falls due on the way at its own time.
+     */
+    public void advance(long millis) {
+        long end = mNow + millis;
+        while (true) {
+            Scheduled next = null;
+            for (Scheduled scheduled : mScheduled) {
+                if (scheduled.mAt <= end && (next == null || scheduled.mAt < next.mAt)) {
+                    next = scheduled;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            mScheduled.remove(next);
+            mNow = Math.max(mNow, next.mAt);
+            next.mTask.run();
+        }
+        mNow = end;
+    }
+
+    public int scheduledCount() {
+        return mScheduled.size();
+    }
+}
@@ -0,0 +1,83 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MovieFilterIndexTest {
+    private static Movie movie(long id, String releaseDate, double voteAverage, int voteCount,
+                               int genreMask) {
+        return new Movie(id, "Title " + id, null, null, releaseDate, voteAverage, voteCount,
+                10, genreMask, "");
+    }
+
+    @Test
+    public void boundsAreInclusive() {
+        List<Movie> movies = Arrays.asList(
+                movie(1, "1999-12-31", 6.9, 99, 1),
+                movie(2, "2000-01-01", 7.0, 100, 1),
+                movie(3, "2010-12-31", 8.0, 500, 2),
+                movie(4, "2011-01-01", 9.0, 1000, 3),
+                movie(5, null, 10, 5000, 0));
+        MovieFilterIndex index = MovieFilterIndex.build(movies);
+
+        assertIds(index.filter(new MovieFilter(0, 2000, 2010, 0, 0)), 2, 3);
+        assertIds(index.filter(new MovieFilter(0, 0, Integer.MAX_VALUE, 7, 100)), 2, 3, 4, 5);
+        assertIds(index.filter(new MovieFilter(2, 0, Integer.MAX_VALUE, 0, 0)), 3, 4);
+        assertIds(index.filter(new MovieFilter(1, 2000, Integer.MAX_VALUE, 0, 0)), 2, 4);
+        assertIds(index.filter(MovieFilter.NONE), 1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void agreesWithMatches() {
+        Random random = new Random(42);
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String releaseDate = random.nextInt(20) == 0 ? null
+                    : (1980 + random.nextInt(40)) + "-06-15";
+            movies.add(movie(i, releaseDate, random.nextInt(101) / 10.0,
+                    random.nextInt(3000), random.nextInt(1 << Genres.count())));
+        }
+        MovieFilterIndex index = MovieFilterIndex.build(movies);
+
+        for (int f = 0; f < 200; f++) {
+            int genreBit = random.nextBoolean() ? 0 : 1 << random.nextInt(Genres.count());
+            int minYear = random.nextBoolean() ? 0 : 1980 + random.nextInt(40);
+            int maxYear = random.nextBoolean() ? Integer.MAX_VALUE : 1980 + random.nextInt(40);
+            MovieFilter filter = new MovieFilter(genreBit, minYear, maxYear,
+                    random.nextBoolean() ? 0 : random.nextInt(10),
+                    random.nextBoolean() ? 0 : random.nextInt(3000));
+
+            ArrayList<Movie> expected = new ArrayList<>();
+            for (Movie movie : movies) {
+                if (filter.matches(movie)) {
+                    expected.add(movie);
+                }
+            }
+            assertEquals(expected, index.filter(filter));
+        }
+    }
+
+    @Test
+    public void emptyOnlyWhenEverythingIsOff() {
+        assertTrue(MovieFilter.NONE.isEmpty());
+        assertFalse(new MovieFilter(0, 2000, Integer.MAX_VALUE, 0, 0).isEmpty());
+        assertFalse(new MovieFilter(0, 0, Integer.MAX_VALUE, 0, 10).isEmpty());
+        assertEquals(MovieFilter.NONE, new MovieFilter(0, 0, Integer.MAX_VALUE, 0, 0));
+    }
+
+    private static void assertIds(List<Movie> movies, long... ids) {
+        long[] actual = new long[movies.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = movies.get(i).getId();
+        }
+        assertEquals(Arrays.toString(ids), Arrays.toString(actual));
+    }
+}
@@ -0,0 +1,30 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class MovieJsonParserTest {
+    private static DiscoverPage parse(String json) throws IOException {
+        return MovieJsonParser.parseDiscoverPage(new ByteArrayInputStream(json.getBytes()));
+    }
+
+    @Test
+    public void totalPagesComeWithTheMovies() throws IOException {
+        DiscoverPage page = parse("{\"page\":3,\"total_pages\":12,\"results\":"
+                + "[{\"id\":1,\"original_title\":\"Up\"},{\"id\":2}],\"total_results\":230}");
+        assertEquals(12, page.totalPages);
+        assertEquals(2, page.movies.size());
+        assertEquals(1, page.movies.get(0).getId());
+    }
+
+    @Test
+    public void missingTotalPagesIsUnknown() throws IOException {
+        assertEquals(DiscoverPage.UNKNOWN_TOTAL, parse("{\"results\":[]}").totalPages);
+        assertEquals(DiscoverPage.UNKNOWN_TOTAL,
+                parse("{\"total_pages\":null,\"results\":[]}").totalPages);
+    }
+}
@@ -0,0 +1,189 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MovieListDiffTest {
+    /**
+     * Plays the changes out on a copy of the old ids, the way RecyclerView would, and writes
+     * them down.
+     */
+    private static class Replay implements MovieListDiff.Target {
+        final ArrayList<Long> mIds = new ArrayList<>();
+        final List<Movie> mNewList;
+        final ArrayList<String> mChanges = new ArrayList<>();
+        int mMoves;
+        boolean mChanged;
+
+        Replay(long[] oldIds, List<Movie> newList) {
+            for (long id : oldIds) {
+                mIds.add(id);
+            }
+            mNewList = newList;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mChanges.add("remove " + position + "+" + count);
+            for (int i = 0; i < count; i++) {
+                mIds.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mChanges.add("move " + fromPosition + ">" + toPosition);
+            mMoves++;
+            mIds.add(toPosition, mIds.remove(fromPosition));
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mChanges.add("insert " + position + "+" + count);
+            for (int i = 0; i < count; i++) {
+                mIds.add(position + i, mNewList.get(position + i).getId());
+            }
+        }
+
+        @Override
+        public void onChanged() {
+            mChanges.add("changed");
+            mChanged = true;
+        }
+    }
+
+    private static ArrayList<Movie> movies(long... ids) {
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (long id : ids) {
+            movies.add(new Movie(id, "Movie " + id, null, null, "2015-06-01", 7, 100, 10, 0,
+                    ""));
+        }
+        return movies;
+    }
+
+    private static long[] range(int from, int to) {
+        long[] ids = new long[to - from];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = from + i;
+        }
+        return ids;
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] ids = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, ids, first.length, second.length);
+        return ids;
+    }
+
+    /**
+     * @return the changes, after checking they turn the old list into the new one.
+     */
+    private static Replay diff(long[] oldIds, long[] newIds) {
+        ArrayList<Movie> newList = movies(newIds);
+        Replay replay = new Replay(oldIds, newList);
+        MovieListDiff.compute(oldIds, newList).dispatchTo(replay);
+        if (!replay.mChanged) {
+            ArrayList<Long> expected = new ArrayList<>();
+            for (long id : newIds) {
+                expected.add(id);
+            }
+            assertEquals(expected, replay.mIds);
+        }
+        return replay;
+    }
+
+    @Test
+    public void theSameListHasNothingToSay() {
+        long[] ids = range(0, 40);
+        assertTrue(MovieListDiff.compute(ids, movies(ids)).isEmpty());
+        assertTrue(MovieListDiff.compute(new long[0], movies()).isEmpty());
+    }
+
+    @Test
+    public void anAppendedPageIsOneInsertion() {
+        Replay replay = diff(range(0, 20), range(0, 40));
+        assertEquals(Arrays.asList("insert 20+20"), replay.mChanges);
+    }
+
+    @Test
+    public void neighbouringRemovalsAreOneRange() {
+        Replay replay = diff(new long[]{1, 2, 3, 4, 5, 6, 7}, new long[]{1, 5, 7});
+        assertEquals(Arrays.asList("remove 5+1", "remove 1+3"), replay.mChanges);
+    }
+
+    @Test
+    public void onlyTheMoviesOutOfPlaceMove() {
+        // A re-sort after a late page: two of its movies belong near the top.
+        Replay replay = diff(new long[]{1, 2, 3, 4, 5, 6, 7, 8},
+                new long[]{1, 7, 2, 3, 8, 4, 5, 6});
+        assertEquals(2, replay.mMoves);
+        assertFalse(replay.mChanged);
+    }
+
+    @Test
+    public void removalsMovesAndInsertionsTogether() {
+        Replay replay = diff(new long[]{1, 2, 3, 4, 5}, new long[]{9, 5, 1, 3, 8, 4});
+        assertEquals("remove 1+1", replay.mChanges.get(0));
+        assertEquals(Arrays.asList("insert 0+1", "insert 4+1"),
+                replay.mChanges.subList(replay.mChanges.size() - 2, replay.mChanges.size()));
+    }
+
+    @Test
+    public void aHundredMovesAreStillSpelledOut() {
+        // The second half moves up above the first: 100 moves, or 100 stay put.
+        Replay replay = diff(range(0, 200), concat(range(100, 200), range(0, 100)));
+        assertEquals(MovieListDiff.MAX_MOVES, replay.mMoves);
+        assertFalse(replay.mChanged);
+    }
+
+    @Test
+    public void moreThanAHundredMovesFallBackToChanged() {
+        long[] oldIds = range(0, 202);
+        ArrayList<Movie> newList = movies(concat(range(101, 202), range(0, 101)));
+        MovieListDiff diff = MovieListDiff.compute(oldIds, newList);
+        assertFalse(diff.isEmpty());
+        Replay replay = new Replay(oldIds, newList);
+        diff.dispatchTo(replay);
+        assertEquals(Arrays.asList("changed"), replay.mChanges);
+    }
+
+    @Test
+    public void shuffledListsAlwaysComeOutRight() {
+        Random random = new Random(17);
+        for (int round = 0; round < 200; round++) {
+            ArrayList<Long> oldIds = new ArrayList<>();
+            for (long id = 0; id < 60; id++) {
+                if (random.nextInt(4) > 0) {
+                    oldIds.add(id);
+                }
+            }
+            ArrayList<Long> newIds = new ArrayList<>(oldIds);
+            for (long id = 60; id < 60 + random.nextInt(20); id++) {
+                newIds.add(random.nextInt(newIds.size() + 1), id);
+            }
+            for (int i = random.nextInt(10); i > 0; i--) {
+                newIds.remove(random.nextInt(newIds.size()));
+            }
+            Collections.swap(newIds, random.nextInt(newIds.size()),
+                    random.nextInt(newIds.size()));
+            diff(toArray(oldIds), toArray(newIds));
+        }
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        long[] array = new long[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,262 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MovieLoader through the lifecycle MovieLoaderFragment gives it: grids attach in onStart
+ * and detach in onStop, a rotation swaps one grid for another while the same loader carries
+ * on, and finishing the activity cancels it. The network is a fake the test finishes by
+ * hand.
+ */
+public class MovieLoaderTest {
+    private static final int INITIAL_PAGES = 2;
+
+    /**
+     * A fetch the test finishes by hand, through the pager it was made for.
+     */
+    private static class FakeFetch implements MoviePager.Fetch {
+        final DiscoverQuery mQuery;
+        final int mFirstPage;
+        final int mPageCount;
+        final PageSequencer.Callback mCallback;
+        int mPriority;
+        int mNextPage;
+        boolean mCancelled;
+
+        FakeFetch(DiscoverQuery query, int firstPage, int pageCount, int priority,
+                  PageSequencer.Callback callback) {
+            mQuery = query;
+            mFirstPage = firstPage;
+            mPageCount = pageCount;
+            mPriority = priority;
+            mCallback = callback;
+            mNextPage = firstPage;
+        }
+
+        void finish() {
+            for (int page = mFirstPage; page < mFirstPage + mPageCount; page++) {
+                mCallback.onPageLoaded(page, moviesOf(page));
+                mNextPage = page + 1;
+            }
+            mCallback.onFetchFinished();
+        }
+
+        @Override
+        public int getNextPage() {
+            return mNextPage;
+        }
+
+        @Override
+        public int getTotalPages() {
+            return 100;
+        }
+
+        @Override
+        public void raise(int priority) {
+            mPriority = Math.min(mPriority, priority);
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+        }
+    }
+
+    /**
+     * Stands in for a MovieGridFragment, writing down what it's given.
+     */
+    private static class FakeGrid implements MovieLoader.Callbacks {
+        final ArrayList<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onPageLoaded(int page, ArrayList<Movie> movies) {
+            mEvents.add("page " + page);
+        }
+
+        @Override
+        public void onPagesFinished() {
+            mEvents.add("finished");
+        }
+
+        @Override
+        public void onMoviesRestored(ArrayList<Movie> movies) {
+            mEvents.add("restored " + movies.size());
+        }
+    }
+
+    private final ArrayList<FakeFetch> mFetches = new ArrayList<>();
+    private final ArrayList<String> mSnapshots = new ArrayList<>();
+    private MovieLoader mLoader;
+
+    @Before
+    public void setUp() {
+        mLoader = new MovieLoader(new MoviePager.PageSource() {
+            @Override
+            public MoviePager.Fetch fetchPages(DiscoverQuery query, int firstPage, int pageCount,
+                                               HashSet<Long> seenIds, int priority,
+                                               PageSequencer.Callback callback) {
+                FakeFetch fetch = new FakeFetch(query, firstPage, pageCount, priority,
+                        callback);
+                mFetches.add(fetch);
+                return fetch;
+            }
+        }, new MovieLoader.SnapshotWriter() {
+            @Override
+            public void saveSnapshot(DiscoverQuery query, List<Movie> movies) {
+                mSnapshots.add(query.getName() + " " + movies.size());
+            }
+        }, 30, 6, INITIAL_PAGES);
+    }
+
+    private static ArrayList<Movie> moviesOf(int page) {
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            long id = page * 100 + i;
+            movies.add(new Movie(id, "Movie " + id, null, null, "2015-06-01", 7, 100, 10, 0,
+                    ""));
+        }
+        return movies;
+    }
+
+    private FakeFetch fetchOf(DiscoverQuery query) {
+        FakeFetch found = null;
+        for (FakeFetch fetch : mFetches) {
+            if (fetch.mQuery == query) {
+                found = fetch;
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void aRotationWhileLoadingDeliversToTheNewGrid() {
+        FakeGrid before = new FakeGrid();
+        mLoader.start(DiscoverQuery.POPULARITY, 1, false);
+        mLoader.setCallbacks(before);
+        assertEquals(1, mFetches.size());
+        FakeFetch fetch = mFetches.get(0);
+        assertEquals(INITIAL_PAGES, fetch.mPageCount);
+
+        // onStop of the old grid, and the pages come in before the new one starts.
+        mLoader.setCallbacks(null);
+        fetch.finish();
+        assertTrue(before.mEvents.isEmpty());
+
+        // The new grid finds the loader started, so nothing is requested again, and gets
+        // everything that came in, in order.
+        FakeGrid after = new FakeGrid();
+        mLoader.setCallbacks(after);
+        assertEquals(Arrays.asList("page 1", "page 2", "finished"), after.mEvents);
+        assertEquals(40, mLoader.getMovies().size());
+        assertTrue(before.mEvents.isEmpty());
+
+        // Only the other queries' first pages have been requested since.
+        assertEquals(DiscoverQuery.all().length, mFetches.size());
+        assertFalse(fetch.mCancelled);
+    }
+
+    @Test
+    public void anAttachedGridGetsPagesStraightAway() {
+        FakeGrid grid = new FakeGrid();
+        mLoader.start(DiscoverQuery.POPULARITY, 1, false);
+        mLoader.setCallbacks(grid);
+        mFetches.get(0).finish();
+        assertEquals(Arrays.asList("page 1", "page 2", "finished"), grid.mEvents);
+
+        // Attaching again doesn't repeat them.
+        mLoader.setCallbacks(null);
+        mLoader.setCallbacks(grid);
+        assertEquals(3, grid.mEvents.size());
+    }
+
+    @Test
+    public void nothingIsDeliveredAfterTheGridDetaches() {
+        FakeGrid grid = new FakeGrid();
+        mLoader.start(DiscoverQuery.POPULARITY, 1, false);
+        mLoader.setCallbacks(grid);
+        mLoader.setCallbacks(null);
+        FakeFetch fetch = mFetches.get(0);
+        fetch.finish();
+        assertTrue(grid.mEvents.isEmpty());
+
+        // The activity is finishing: the other queries' fetches, started once the first
+        // pages were in, are cancelled along with everything else.
+        mLoader.cancel();
+        for (FakeFetch other : mFetches) {
+            if (other != fetch) {
+                assertTrue(other.mQuery.getName(), other.mCancelled);
+            }
+        }
+        assertTrue(grid.mEvents.isEmpty());
+    }
+
+    @Test
+    public void onlyTheQueryOnScreenIsDelivered() {
+        FakeGrid grid = new FakeGrid();
+        mLoader.start(DiscoverQuery.POPULARITY, 1, false);
+        mLoader.setCallbacks(grid);
+        mFetches.get(0).finish();
+        grid.mEvents.clear();
+
+        FakeFetch newest = fetchOf(DiscoverQuery.NEWEST);
+        assertEquals(RateLimiter.PREFETCH, newest.mPriority);
+        assertEquals(1, newest.mPageCount);
+        newest.finish();
+        assertTrue(grid.mEvents.isEmpty());
+
+        // Switching shows what was prefetched, and carries on from the page after it.
+        assertEquals(20, mLoader.switchQuery(DiscoverQuery.NEWEST, INITIAL_PAGES).size());
+        assertEquals(DiscoverQuery.NEWEST, mLoader.getQuery());
+        assertEquals(2, mLoader.getPager().getNextPage());
+
+        // A query still prefetching is moved up to the visible lane instead.
+        FakeFetch upcoming = fetchOf(DiscoverQuery.UPCOMING);
+        assertTrue(mLoader.switchQuery(DiscoverQuery.UPCOMING, INITIAL_PAGES).isEmpty());
+        assertEquals(RateLimiter.VISIBLE, upcoming.mPriority);
+        upcoming.finish();
+        assertEquals(Arrays.asList("page 1", "finished"), grid.mEvents);
+    }
+
+    @Test
+    public void theSnapshotIsOnlyWrittenWhenItsMoviesChange() {
+        mLoader.start(DiscoverQuery.POPULARITY, 1, false);
+        mFetches.get(0).finish();
+        assertEquals(Arrays.asList("popularity 40"), mSnapshots);
+
+        // Past the 30 movies the snapshot keeps.
+        mLoader.getPager().loadPages(1, RateLimiter.VISIBLE);
+        mFetches.get(mFetches.size() - 1).finish();
+        assertEquals(1, mSnapshots.size());
+    }
+
+    @Test
+    public void restoredMoviesWaitForTheGrid() {
+        mLoader.start(DiscoverQuery.POPULARITY, 3, true);
+        assertTrue(mFetches.isEmpty());
+
+        mLoader.onRestored(DiscoverQuery.POPULARITY, moviesOf(1));
+        FakeGrid grid = new FakeGrid();
+        mLoader.setCallbacks(grid);
+        assertEquals(Arrays.asList("restored 20"), grid.mEvents);
+        assertEquals(3, mLoader.getPager().getNextPage());
+    }
+
+    @Test
+    public void nothingRestoredStartsAgainFromTheFirstPage() {
+        mLoader.start(DiscoverQuery.POPULARITY, 3, true);
+        mLoader.onRestored(DiscoverQuery.POPULARITY, new ArrayList<Movie>());
+        assertEquals(1, mFetches.size());
+        assertEquals(1, mFetches.get(0).mFirstPage);
+        assertEquals(INITIAL_PAGES, mFetches.get(0).mPageCount);
+    }
+}
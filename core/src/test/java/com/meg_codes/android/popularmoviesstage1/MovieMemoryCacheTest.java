@@ -0,0 +1,73 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MovieMemoryCacheTest {
+    private static Movie movie(long id) {
+        return new Movie(id, "Movie " + id, null, null, null, 0, 0, 0, 0, "");
+    }
+
+    private static ArrayList<Movie> movies(long firstId, int count) {
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (long id = firstId; id < firstId + count; id++) {
+            movies.add(movie(id));
+        }
+        return movies;
+    }
+
+    @Test
+    public void keepsOnlyTheMostRecentMovies() {
+        MovieMemoryCache cache = new MovieMemoryCache(40);
+        ArrayList<Movie> pages = movies(1, 100);
+        cache.putAll(pages);
+        assertEquals(40, cache.size());
+        assertNull(cache.get(60));
+        assertSame(pages.get(60), cache.get(61));
+        assertSame(pages.get(99), cache.get(100));
+    }
+
+    @Test
+    public void aMovieLookedUpIsKeptLonger() {
+        MovieMemoryCache cache = new MovieMemoryCache(3);
+        Movie first = movie(1);
+        cache.put(first);
+        cache.put(movie(2));
+        cache.put(movie(3));
+
+        // The detail screen looks the first one up, so the second goes instead.
+        assertSame(first, cache.get(1));
+        cache.put(movie(4));
+        assertSame(first, cache.get(1));
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void aMovieLoadedAgainReplacesItsOldCopy() {
+        MovieMemoryCache cache = new MovieMemoryCache(3);
+        cache.put(movie(1));
+        Movie refreshed = movie(1);
+        cache.put(refreshed);
+        assertEquals(1, cache.size());
+        assertSame(refreshed, cache.get(1));
+    }
+
+    @Test
+    public void getAllNeedsEveryMovie() {
+        MovieMemoryCache cache = new MovieMemoryCache(3);
+        ArrayList<Movie> movies = movies(1, 4);
+        cache.putAll(movies);
+
+        assertEquals(Arrays.asList(movies.get(3), movies.get(1)),
+                cache.getAll(new long[]{4, 2}));
+        // The first one was dropped, so the caller goes to MovieStore for the lot.
+        assertNull(cache.getAll(new long[]{1, 2}));
+        assertEquals(new ArrayList<Movie>(), cache.getAll(new long[0]));
+    }
+}
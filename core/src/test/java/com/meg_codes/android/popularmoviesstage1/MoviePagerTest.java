@@ -0,0 +1,241 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MoviePagerTest {
+    private static final int PREFETCH_DISTANCE = 6;
+
+    /**
+     * A fetch the test finishes by hand, through the pager's callback methods.
+     */
+    private static class FakeFetch implements MoviePager.Fetch {
+        final int mFirstPage;
+        final int mPageCount;
+        final HashSet<Long> mSeenIds;
+        int mPriority;
+        int mNextPage;
+        int mTotalPages = DiscoverPage.UNKNOWN_TOTAL;
+        boolean mCancelled;
+
+        FakeFetch(int firstPage, int pageCount, HashSet<Long> seenIds, int priority) {
+            mFirstPage = firstPage;
+            mPageCount = pageCount;
+            mSeenIds = seenIds;
+            mPriority = priority;
+            mNextPage = firstPage;
+        }
+
+        @Override
+        public int getNextPage() {
+            return mNextPage;
+        }
+
+        @Override
+        public int getTotalPages() {
+            return mTotalPages;
+        }
+
+        @Override
+        public void raise(int priority) {
+            mPriority = Math.min(mPriority, priority);
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+        }
+    }
+
+    private final ArrayList<FakeFetch> mFetches = new ArrayList<>();
+    private final ArrayList<Integer> mLoadedPages = new ArrayList<>();
+    private int mFinished;
+    private MoviePager mPager;
+
+    @Before
+    public void setUp() {
+        mPager = pager(1);
+    }
+
+    private MoviePager pager(int nextPage) {
+        return new MoviePager(new MoviePager.PageSource() {
+            @Override
+            public MoviePager.Fetch fetchPages(DiscoverQuery query, int firstPage, int pageCount,
+                                               HashSet<Long> seenIds, int priority,
+                                               PageSequencer.Callback callback) {
+                FakeFetch fetch = new FakeFetch(firstPage, pageCount, seenIds, priority);
+                mFetches.add(fetch);
+                return fetch;
+            }
+        }, DiscoverQuery.POPULARITY, nextPage, null, PREFETCH_DISTANCE,
+                new MoviePager.Listener() {
+                    @Override
+                    public void onPageLoaded(int page, ArrayList<Movie> movies) {
+                        mLoadedPages.add(page);
+                    }
+
+                    @Override
+                    public void onPagesFinished() {
+                        mFinished++;
+                    }
+                });
+    }
+
+    private FakeFetch lastFetch() {
+        return mFetches.get(mFetches.size() - 1);
+    }
+
+    /**
+     * Delivers every page of the last fetch, failing the ones listed, as PageSequencer would.
+     *
+     * @param totalPages what the responses say the query has.
+     */
+    private void finish(int totalPages, Integer... failedPages) {
+        FakeFetch fetch = lastFetch();
+        fetch.mTotalPages = totalPages;
+        for (int page = fetch.mFirstPage; page < fetch.mFirstPage + fetch.mPageCount; page++) {
+            if (Arrays.asList(failedPages).contains(page)) {
+                mPager.onPageFailed(page);
+            } else {
+                mPager.onPageLoaded(page, new ArrayList<Movie>());
+            }
+            fetch.mNextPage = page + 1;
+        }
+        mPager.onFetchFinished();
+    }
+
+    @Test
+    public void scrollingNearTheEndLoadsTheNextPage() {
+        assertTrue(mPager.loadPages(3, RateLimiter.VISIBLE));
+        finish(100);
+        assertEquals(1, mFetches.size());
+
+        // 60 items, the last visible one well before the end.
+        mPager.onScrolled(20, 60);
+        mPager.onScrolled(60 - PREFETCH_DISTANCE - 1, 60);
+        assertEquals(1, mFetches.size());
+
+        // Just within the distance.
+        mPager.onScrolled(60 - PREFETCH_DISTANCE, 60);
+        assertEquals(2, mFetches.size());
+        assertEquals(4, lastFetch().mFirstPage);
+        assertEquals(1, lastFetch().mPageCount);
+        assertEquals(RateLimiter.VISIBLE, lastFetch().mPriority);
+    }
+
+    @Test
+    public void anEmptyGridDoesntLoadOnScroll() {
+        mPager.onScrolled(0, 0);
+        assertEquals(0, mFetches.size());
+    }
+
+    @Test
+    public void onlyOneFetchAtATime() {
+        assertTrue(mPager.loadPages(2, RateLimiter.VISIBLE));
+        assertFalse(mPager.loadPages(2, RateLimiter.VISIBLE));
+        for (int i = 0; i < 10; i++) {
+            mPager.onScrolled(40, 40);
+        }
+        assertEquals(1, mFetches.size());
+        assertTrue(mPager.isLoading());
+
+        finish(100);
+        assertFalse(mPager.isLoading());
+        assertTrue(mPager.loadPages(1, RateLimiter.VISIBLE));
+        assertEquals(3, lastFetch().mFirstPage);
+    }
+
+    @Test
+    public void stopsAtTheLastPage() {
+        mPager.loadPages(2, RateLimiter.VISIBLE);
+        finish(3);
+
+        // Only the one page that's left.
+        assertTrue(mPager.loadPages(5, RateLimiter.VISIBLE));
+        assertEquals(3, lastFetch().mFirstPage);
+        assertEquals(1, lastFetch().mPageCount);
+        finish(3);
+
+        assertFalse(mPager.loadPages(1, RateLimiter.VISIBLE));
+        mPager.onScrolled(40, 40);
+        assertEquals(2, mFetches.size());
+        assertEquals(Arrays.asList(1, 2, 3), mLoadedPages);
+        assertEquals(4, mPager.getNextPage());
+    }
+
+    @Test
+    public void neverPastTmdbsLastPage() {
+        mPager = pager(MoviePager.MAX_PAGE - 1);
+        mPager.loadPages(5, RateLimiter.VISIBLE);
+        assertEquals(2, lastFetch().mPageCount);
+        finish(50000);
+        assertFalse(mPager.loadPages(1, RateLimiter.VISIBLE));
+    }
+
+    @Test
+    public void aFailedPageIsRequestedAgain() {
+        mPager.loadPages(3, RateLimiter.VISIBLE);
+        finish(100, 2);
+        assertFalse(mPager.isLastRequestComplete());
+        assertEquals(1, mFinished);
+        assertEquals(2, mPager.getNextPage());
+
+        assertTrue(mPager.loadPages(1, RateLimiter.VISIBLE));
+        assertEquals(2, lastFetch().mFirstPage);
+        finish(100);
+        assertTrue(mPager.isLastRequestComplete());
+        assertEquals(3, mPager.getNextPage());
+    }
+
+    @Test
+    public void aFailedPageBeyondAnUnknownEndIsRequestedAgain() {
+        // No response said how many pages there are, so it's not taken as the end.
+        mPager.loadPages(1, RateLimiter.VISIBLE);
+        finish(DiscoverPage.UNKNOWN_TOTAL, 1);
+        assertTrue(mPager.loadPages(1, RateLimiter.VISIBLE));
+        assertEquals(1, lastFetch().mFirstPage);
+    }
+
+    @Test
+    public void cancellingGoesBackToTheFirstUndeliveredPage() {
+        mPager.loadPages(4, RateLimiter.PREFETCH);
+        FakeFetch fetch = lastFetch();
+        fetch.mNextPage = 3;
+        mPager.cancel();
+        assertTrue(fetch.mCancelled);
+        assertFalse(mPager.isLoading());
+
+        mPager.loadPages(1, RateLimiter.VISIBLE);
+        assertEquals(3, lastFetch().mFirstPage);
+    }
+
+    @Test
+    public void raisingMovesTheFetchUp() {
+        mPager.raise(RateLimiter.VISIBLE);
+        mPager.loadPages(2, RateLimiter.PREFETCH);
+        mPager.raise(RateLimiter.VISIBLE);
+        assertEquals(RateLimiter.VISIBLE, lastFetch().mPriority);
+    }
+
+    @Test
+    public void moviesAlreadyShownArePassedOnToBeSkipped() {
+        ArrayList<Movie> shown = new ArrayList<>();
+        shown.add(new Movie(7, "Movie 7", null, null, "2015-06-01", 7, 100, 10, 0, ""));
+        mPager.markLoaded(shown);
+        mPager.loadPages(1, RateLimiter.VISIBLE);
+        assertTrue(lastFetch().mSeenIds.contains(7L));
+        mPager.loadPages(1, RateLimiter.VISIBLE);
+        finish(100);
+        mPager.loadPages(1, RateLimiter.VISIBLE);
+        assertSame(mFetches.get(0).mSeenIds, lastFetch().mSeenIds);
+    }
+}
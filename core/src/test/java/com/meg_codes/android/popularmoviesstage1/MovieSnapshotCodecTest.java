@@ -0,0 +1,105 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class MovieSnapshotCodecTest {
+    private static final Movie AMELIE = new Movie(194, "Le Fabuleux Destin d'Am\u00e9lie Poulain",
+            "/poster.jpg", "/backdrop.jpg", "2001-04-25", 7.9, 5127, 12.5, 0x5,
+            "Am\u00e9lie\u2026");
+    private static final Movie UNTITLED = new Movie(7, null, null, null, null, 0, 0, 0, 0,
+            null);
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<Movie> movies = decode(encode(Arrays.asList(AMELIE, UNTITLED), 10), 10);
+        assertEquals(2, movies.size());
+        assertSame(AMELIE, movies.get(0));
+        assertSame(UNTITLED, movies.get(1));
+    }
+
+    @Test
+    public void keepsOnlyTheFirstMaxMovies() throws IOException {
+        List<Movie> movies = Arrays.asList(AMELIE, UNTITLED, AMELIE);
+        assertEquals(2, decode(encode(movies, 2), 2).size());
+        assertArrayEquals(new long[] {194, 7}, MovieSnapshotCodec.ids(movies, 2));
+    }
+
+    @Test
+    public void olderVersionIsIgnored() throws IOException {
+        byte[] bytes = encode(Arrays.asList(AMELIE), 10);
+        ByteBuffer.wrap(bytes).putInt(MovieSnapshotCodec.FORMAT_VERSION - 1);
+        assertNull(decode(bytes, 10));
+    }
+
+    @Test
+    public void tooManyMoviesIsRejected() throws IOException {
+        byte[] bytes = encode(Arrays.asList(AMELIE), 10);
+        ByteBuffer.wrap(bytes).putInt(4, Integer.MAX_VALUE);
+        assertCorrupt(bytes, 10);
+        ByteBuffer.wrap(bytes).putInt(4, -1);
+        assertCorrupt(bytes, 10);
+        // One more than the reader allows.
+        assertCorrupt(encode(Arrays.asList(AMELIE, UNTITLED), 10), 1);
+    }
+
+    @Test
+    public void stringPastTheEndIsRejected() throws IOException {
+        byte[] bytes = encode(Arrays.asList(AMELIE), 10);
+        // The title's length, after the version, the count and the id.
+        ByteBuffer.wrap(bytes).putInt(16, Integer.MAX_VALUE);
+        assertCorrupt(bytes, 10);
+        ByteBuffer.wrap(bytes).putInt(16, -2);
+        assertCorrupt(bytes, 10);
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        byte[] bytes = encode(Arrays.asList(AMELIE, UNTITLED), 10);
+        assertCorrupt(Arrays.copyOf(bytes, bytes.length - 1), 10);
+        assertCorrupt(Arrays.copyOf(bytes, 6), 10);
+    }
+
+    private static byte[] encode(List<Movie> movies, int maxMovies) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MovieSnapshotCodec.encode(movies, maxMovies, out);
+        return out.toByteArray();
+    }
+
+    private static ArrayList<Movie> decode(byte[] bytes, int maxMovies) throws IOException {
+        return MovieSnapshotCodec.decode(ByteBuffer.wrap(bytes), maxMovies);
+    }
+
+    private static void assertCorrupt(byte[] bytes, int maxMovies) {
+        try {
+            decode(bytes, maxMovies);
+            fail("Decoded a corrupt snapshot");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    private static void assertSame(Movie expected, Movie actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getPosterPath(), actual.getPosterPath());
+        assertEquals(expected.getBackdropPath(), actual.getBackdropPath());
+        assertEquals(expected.getReleaseDate(), actual.getReleaseDate());
+        assertEquals(expected.getVoteAverage(), actual.getVoteAverage(), 0);
+        assertEquals(expected.getVoteCount(), actual.getVoteCount());
+        assertEquals(expected.getPopularity(), actual.getPopularity(), 0);
+        assertEquals(expected.getGenreMask(), actual.getGenreMask());
+        assertEquals(expected.getOverview(), actual.getOverview());
+    }
+}
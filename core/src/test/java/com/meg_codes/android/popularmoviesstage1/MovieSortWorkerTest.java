@@ -0,0 +1,146 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The worker thread and the main thread are queues the test runs by hand, to put sorts
+ * in whatever order it likes.
+ */
+public class MovieSortWorkerTest {
+    private static class ManualExecutor implements Executor {
+        final ArrayList<Runnable> mQueue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runAll() {
+            while (!mQueue.isEmpty()) {
+                mQueue.remove(0).run();
+            }
+        }
+    }
+
+    private final ManualExecutor mWorker = new ManualExecutor();
+    private final ManualExecutor mMainThread = new ManualExecutor();
+    private final ArrayList<String> mDelivered = new ArrayList<>();
+    private MovieSortWorker mSortWorker;
+    private MovieSortWorker.Result mLastResult;
+
+    @Before
+    public void setUp() {
+        mSortWorker = new MovieSortWorker(mWorker, mMainThread);
+    }
+
+    /**
+     * @return movies 1 to count, least popular first.
+     */
+    private static ArrayList<Movie> movies(int count) {
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            movies.add(new Movie(id, "Movie " + id, null, null, "2015-06-01", 10 - id % 10,
+                    100 * id, id, 0, ""));
+        }
+        return movies;
+    }
+
+    private void sort(final String name, ArrayList<Movie> movies, MovieFilter filter,
+                      long[] shownIds) {
+        mSortWorker.sort(movies, MovieSorter.BY_POPULARITY, filter, shownIds,
+                new MovieSortWorker.Callback() {
+                    @Override
+                    public void onSorted(MovieSortWorker.Result result) {
+                        mDelivered.add(name);
+                        mLastResult = result;
+                    }
+                });
+    }
+
+    @Test
+    public void aSortIsHandedBackSorted() {
+        sort("only", movies(5), MovieFilter.NONE, new long[]{1, 2, 3, 4, 5});
+        mWorker.runAll();
+        assertTrue(mDelivered.isEmpty());
+        mMainThread.runAll();
+
+        assertEquals(1, mDelivered.size());
+        assertEquals(5, mLastResult.sorted.get(0).getId());
+        assertEquals(1, mLastResult.sorted.get(4).getId());
+        // With no filter, every movie is visible.
+        assertSame(mLastResult.sorted, mLastResult.visible);
+        assertNull(mLastResult.filterIndex);
+        assertNotNull(mLastResult.diff);
+    }
+
+    @Test
+    public void theFilterAndTheDiffAreWorkedOutToo() {
+        MovieFilter filter = new MovieFilter(0, 0, Integer.MAX_VALUE, 7, 0);
+        sort("filtered", movies(10), filter, null);
+        mWorker.runAll();
+        mMainThread.runAll();
+
+        assertNotNull(mLastResult.filterIndex);
+        for (Movie movie : mLastResult.visible) {
+            assertTrue(movie.getVoteAverage() >= 7);
+        }
+        assertEquals(4, mLastResult.visible.size());
+        // No ids given, so the main thread works out its own diff.
+        assertNull(mLastResult.diff);
+    }
+
+    @Test
+    public void sortsStillWaitingAreSkippedForTheLatest() {
+        sort("first", movies(5), MovieFilter.NONE, null);
+        sort("second", movies(6), MovieFilter.NONE, null);
+        sort("third", movies(7), MovieFilter.NONE, null);
+        mWorker.runAll();
+        // Only the third was sorted.
+        assertEquals(1, mMainThread.mQueue.size());
+        mMainThread.runAll();
+
+        assertEquals(1, mDelivered.size());
+        assertEquals("third", mDelivered.get(0));
+        assertEquals(7, mLastResult.sorted.size());
+    }
+
+    @Test
+    public void aSortOvertakenWhileRunningIsDroppedAndTheLatestDelivered() {
+        sort("first", movies(5), MovieFilter.NONE, null);
+        // The first finishes on the worker, but before the main thread gets to it...
+        mWorker.runAll();
+        // ...the list changes and it's sorted again.
+        sort("second", movies(6), MovieFilter.NONE, null);
+        mMainThread.runAll();
+        assertTrue(mDelivered.isEmpty());
+
+        mWorker.runAll();
+        mMainThread.runAll();
+        assertEquals(1, mDelivered.size());
+        assertEquals("second", mDelivered.get(0));
+        assertEquals(6, mLastResult.sorted.size());
+    }
+
+    @Test
+    public void aSortAskedForAfterTheLastOneWasDeliveredRunsToo() {
+        sort("first", movies(5), MovieFilter.NONE, null);
+        mWorker.runAll();
+        mMainThread.runAll();
+        sort("second", movies(6), MovieFilter.NONE, null);
+        mWorker.runAll();
+        mMainThread.runAll();
+
+        assertEquals(2, mDelivered.size());
+        assertEquals("second", mDelivered.get(1));
+    }
+}
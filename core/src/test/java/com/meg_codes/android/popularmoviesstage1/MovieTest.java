@@ -0,0 +1,150 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MovieTest {
+    private static Movie movie(String releaseDate) {
+        return new Movie(1, "Title", null, null, releaseDate, 7.5, 100, 10, 0, "");
+    }
+
+    @Test
+    public void textIsWorkedOutOnceAndKept() {
+        Movie movie = movie("2015-06-12");
+        String releaseDate = movie.getTextReleaseDate(MovieTextFormat.ENGLISH);
+        String voteAverage = movie.getTextVoteAverage(MovieTextFormat.ENGLISH);
+        assertEquals("Released in June, 2015", releaseDate);
+        assertEquals("Average user score: 7.5 / 10", voteAverage);
+        assertSame(releaseDate, movie.getTextReleaseDate(MovieTextFormat.ENGLISH));
+        assertSame(voteAverage, movie.getTextVoteAverage(MovieTextFormat.ENGLISH));
+    }
+
+    @Test
+    public void anotherFormatWorksItOutAgain() {
+        Movie movie = movie("2015-06-12");
+        String english = movie.getTextReleaseDate(MovieTextFormat.ENGLISH);
+        MovieTextFormat other = new MovieTextFormat(new String[]{"1", "2", "3", "4", "5", "6",
+                "7", "8", "9", "10", "11", "12"}, "%2$d/%1$s", "%1$d", "%1$s", "%1$d'");
+        assertEquals("2015/6", movie.getTextReleaseDate(other));
+        assertNotSame(english, movie.getTextReleaseDate(MovieTextFormat.ENGLISH));
+    }
+
+    @Test
+    public void releaseDateIsPackedAsYyyymmdd() {
+        assertEquals(20150612, movie("2015-06-12").getReleaseDateValue());
+        assertEquals(20150600, movie("2015-06").getReleaseDateValue());
+        assertEquals(0, movie("").getReleaseDateValue());
+        assertEquals(0, movie(null).getReleaseDateValue());
+        assertNull(movie(null).getTextReleaseDate(MovieTextFormat.ENGLISH));
+        assertEquals("Released in 2015", movie("2015").getTextReleaseDate(MovieTextFormat.ENGLISH));
+    }
+
+    /**
+     * The grid binds the same movies over and over as it scrolls, so after the first time
+     * their text mustn't cost any garbage.
+     */
+    @Test
+    public void repeatedTextCallsDoNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        Movie dated = movie("2015-06-12");
+        Movie undated = movie(null);
+        Movie[] movies = {dated, undated};
+        // A full pass first, so the text is cached.
+        assertEquals(10000 * (22 + 28 + 28), readText(movies, 10000));
+        // Once first, so whatever the bean allocates for itself isn't counted.
+        threads.getThreadAllocatedBytes(thread);
+
+        // The JIT swapping in compiled code mid-loop now and then allocates a few bytes of
+        // its own on this thread, so the least of a few passes is taken. A call that
+        // allocated anything would show up in every pass, 20000 times over.
+        long allocated = Long.MAX_VALUE;
+        for (int pass = 0; pass < 3; pass++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            int length = readText(movies, 10000);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+            assertEquals(10000 * (22 + 28 + 28), length);
+        }
+
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * What keeping the text costs, measured on the heap over 10,000 movies: two short
+     * strings a movie, about 150 bytes on this JVM, or about 200 with two-byte characters
+     * (-XX:-CompactStrings, like Android's strings up to API 22). The middle of three
+     * rounds is taken, so one upset by the collector doesn't count.
+     */
+    @Test
+    public void keptTextCostsTwoShortStringsPerMovie() {
+        int count = 10000;
+        long[] bytes = new long[3];
+        for (int round = 0; round < bytes.length; round++) {
+            ArrayList<Movie> movies = movies(count);
+            long before = usedHeap();
+            assertTrue(readText(movies) > 0);
+            bytes[round] = usedHeap() - before;
+            assertEquals(count, movies.size());
+        }
+        Arrays.sort(bytes);
+
+        long perMovie = bytes[1] / count;
+        // Some collectors (ZGC) don't show any of it in freeMemory straight away.
+        Assume.assumeTrue(perMovie > 0);
+        assertTrue(perMovie + " bytes per movie", perMovie < 256);
+    }
+
+    private static ArrayList<Movie> movies(int count) {
+        ArrayList<Movie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            movies.add(new Movie(i, "Movie " + i, null, null,
+                    "20" + (10 + i % 6) + "-" + (10 + i % 3) + "-" + (10 + i % 19),
+                    (i % 100) / 10.0, i, i, 0, ""));
+        }
+        return movies;
+    }
+
+    private static int readText(ArrayList<Movie> movies) {
+        int length = 0;
+        for (Movie movie : movies) {
+            length += movie.getTextReleaseDate(MovieTextFormat.ENGLISH).length();
+            length += movie.getTextVoteAverage(MovieTextFormat.ENGLISH).length();
+        }
+        return length;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int readText(Movie[] movies, int times) {
+        int length = 0;
+        for (int i = 0; i < times; i++) {
+            for (Movie movie : movies) {
+                String releaseDate = movie.getTextReleaseDate(MovieTextFormat.ENGLISH);
+                length += releaseDate != null ? releaseDate.length() : 0;
+                length += movie.getTextVoteAverage(MovieTextFormat.ENGLISH).length();
+            }
+        }
+        return length;
+    }
+}
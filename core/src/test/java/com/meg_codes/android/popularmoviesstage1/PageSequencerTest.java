@@ -0,0 +1,112 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PageSequencerTest {
+    // What the callback was told, in order: "3: 1, 2" for page 3 with movies 1 and 2,
+    // "3 failed", and "finished".
+    private List<String> mDelivered;
+    private PageSequencer.Callback mCallback;
+
+    @Before
+    public void setUp() {
+        mDelivered = new ArrayList<>();
+        mCallback = new PageSequencer.Callback() {
+            @Override
+            public void onPageLoaded(int page, ArrayList<Movie> movies) {
+                StringBuilder entry = new StringBuilder(page + ":");
+                for (int i = 0; i < movies.size(); i++) {
+                    entry.append(i == 0 ? " " : ", ").append(movies.get(i).getId());
+                }
+                mDelivered.add(entry.toString());
+            }
+
+            @Override
+            public void onPageFailed(int page) {
+                mDelivered.add(page + " failed");
+            }
+
+            @Override
+            public void onFetchFinished() {
+                mDelivered.add("finished");
+            }
+        };
+    }
+
+    private static ArrayList<Movie> movies(long... ids) {
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (long id : ids) {
+            movies.add(new Movie(id, "Movie " + id, null, null, "2015-06-01", 7, 100, 10, 0,
+                    ""));
+        }
+        return movies;
+    }
+
+    @Test
+    public void pagesInOrderAreDeliveredStraightAway() {
+        PageSequencer sequencer = new PageSequencer(1, 2, new HashSet<Long>(), mCallback);
+        sequencer.onPageArrived(1, movies(1, 2));
+        assertEquals(Arrays.asList("1: 1, 2"), mDelivered);
+        assertEquals(2, sequencer.getNextPage());
+        sequencer.onPageArrived(2, movies(3));
+        assertEquals(Arrays.asList("1: 1, 2", "2: 3", "finished"), mDelivered);
+    }
+
+    @Test
+    public void earlyPagesWaitForThePagesBeforeThem() {
+        PageSequencer sequencer = new PageSequencer(3, 3, new HashSet<Long>(), mCallback);
+        sequencer.onPageArrived(5, movies(5));
+        sequencer.onPageArrived(4, movies(4));
+        assertEquals(0, mDelivered.size());
+        assertEquals(3, sequencer.getNextPage());
+        sequencer.onPageArrived(3, movies(3));
+        assertEquals(Arrays.asList("3: 3", "4: 4", "5: 5", "finished"), mDelivered);
+    }
+
+    @Test
+    public void failedPageTakesItsTurn() {
+        PageSequencer sequencer = new PageSequencer(1, 3, new HashSet<Long>(), mCallback);
+        sequencer.onPageArrived(3, movies(3));
+        sequencer.onPageArrived(2, null);
+        sequencer.onPageArrived(1, movies(1));
+        assertEquals(Arrays.asList("1: 1", "2 failed", "3: 3", "finished"), mDelivered);
+    }
+
+    @Test
+    public void moviesSeenOnAnEarlierPageAreDropped() {
+        HashSet<Long> seenIds = new HashSet<>(Arrays.asList(7L));
+        PageSequencer sequencer = new PageSequencer(1, 2, seenIds, mCallback);
+        // Page 2 shifted while it was read, and repeats movie 2 from page 1.
+        sequencer.onPageArrived(2, movies(2, 3));
+        sequencer.onPageArrived(1, movies(1, 2, 7));
+        assertEquals(Arrays.asList("1: 1, 2", "2: 3", "finished"), mDelivered);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L, 7L)), seenIds);
+    }
+
+    @Test
+    public void refreshedPageOnlyPassesOnNewMovies() {
+        PageSequencer sequencer = new PageSequencer(1, 1, new HashSet<Long>(), mCallback);
+        sequencer.onPageArrived(1, movies(1, 2));
+        sequencer.onPageRefreshed(1, movies(1, 2));
+        sequencer.onPageRefreshed(1, movies(2, 9));
+        assertEquals(Arrays.asList("1: 1, 2", "finished", "1: 9"), mDelivered);
+    }
+
+    @Test
+    public void pagesOutsideTheFetchOrDeliveredTwiceAreIgnored() {
+        PageSequencer sequencer = new PageSequencer(2, 1, new HashSet<Long>(), mCallback);
+        sequencer.onPageArrived(1, movies(1));
+        sequencer.onPageArrived(3, movies(3));
+        sequencer.onPageArrived(2, movies(2));
+        sequencer.onPageArrived(2, movies(4));
+        assertEquals(Arrays.asList("2: 2", "finished"), mDelivered);
+    }
+}
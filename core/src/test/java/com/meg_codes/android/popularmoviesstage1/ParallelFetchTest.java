@@ -0,0 +1,127 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The way MovieFetcher.fetchPages loads a run of pages, with the network swapped for a
+ * page fetch that takes a fixed time: every page gets in line at a RateLimiter set up like
+ * TMDb's at once, each one goes to one of MovieFetcher's workers once it has its token,
+ * and a PageSequencer puts them back in order. So a few pages should take about as long as
+ * one, not one after another.
+ */
+public class ParallelFetchTest {
+    private static final long DELAY_MILLIS = 200;
+    // MovieFetcher.MAX_CONCURRENT_REQUESTS.
+    private static final int WORKERS = 4;
+
+    private ExecutorService mWorkers;
+    private RateLimiter mRateLimiter;
+
+    @Before
+    public void setUp() {
+        mWorkers = Executors.newFixedThreadPool(WORKERS);
+        mRateLimiter = new RateLimiter(RateLimiter.TMDB_CAPACITY,
+                RateLimiter.TMDB_REFILL_PER_SECOND, new RateLimiter.SystemClock());
+    }
+
+    @After
+    public void tearDown() {
+        mWorkers.shutdownNow();
+    }
+
+    /**
+     * Fetches the pages and waits for the last one.
+     *
+     * @return how long that took, in milliseconds.
+     */
+    private long fetch(int pageCount, final ArrayList<Integer> delivered)
+            throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final PageSequencer sequencer = new PageSequencer(1, pageCount, new HashSet<Long>(),
+                new PageSequencer.Callback() {
+                    @Override
+                    public void onPageLoaded(int page, ArrayList<Movie> movies) {
+                        delivered.add(page);
+                    }
+
+                    @Override
+                    public void onPageFailed(int page) {
+                    }
+
+                    @Override
+                    public void onFetchFinished() {
+                        finished.countDown();
+                    }
+                });
+
+        long start = System.nanoTime();
+        for (int page = 1; page <= pageCount; page++) {
+            final int pageNumber = page;
+            mRateLimiter.acquire(mRateLimiter.newTicket(RateLimiter.VISIBLE), new Runnable() {
+                @Override
+                public void run() {
+                    mWorkers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            ArrayList<Movie> movies = fetchPage(pageNumber);
+                            // Stands in for posting to the main thread.
+                            synchronized (sequencer) {
+                                sequencer.onPageArrived(pageNumber, movies);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static ArrayList<Movie> fetchPage(int page) {
+        try {
+            Thread.sleep(DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ArrayList<Movie> movies = new ArrayList<>();
+        movies.add(new Movie(page, "Movie " + page, null, null, "2015-06-01", 7, 100, 10, 0,
+                ""));
+        return movies;
+    }
+
+    @Test
+    public void pagesOfAFetchTakeAboutAsLongAsOne() throws InterruptedException {
+        ArrayList<Integer> delivered = new ArrayList<>();
+        long millis = fetch(WORKERS, delivered);
+
+        assertEquals(WORKERS, delivered.size());
+        for (int i = 0; i < delivered.size(); i++) {
+            assertEquals(i + 1, (int) delivered.get(i));
+        }
+        // One after another would be 4 delays.
+        assertTrue(millis + " ms for " + WORKERS + " pages", millis < 2 * DELAY_MILLIS);
+    }
+
+    @Test
+    public void morePagesThanWorkersTakeOneDelayPerRound() throws InterruptedException {
+        // Still within the RateLimiter's burst, so only the workers hold them up.
+        int pageCount = 2 * WORKERS;
+        assertTrue(pageCount <= RateLimiter.TMDB_CAPACITY);
+        long millis = fetch(pageCount, new ArrayList<Integer>());
+
+        assertTrue(millis + " ms for " + pageCount + " pages", millis >= 2 * DELAY_MILLIS);
+        assertTrue(millis + " ms for " + pageCount + " pages", millis < 3 * DELAY_MILLIS);
+    }
+}
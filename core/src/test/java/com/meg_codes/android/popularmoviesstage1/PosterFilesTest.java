@@ -0,0 +1,180 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PosterFilesTest {
+    private static final String URL = "https://image.tmdb.org/t/p/w185";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private PosterFiles mFiles;
+    // Last-modified times handed out in order, a second apart, so the order of use doesn't
+    // depend on the file system's clock resolution.
+    private long mTime = 1000000000000L;
+
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+        mDirectory = new File(mFolder.getRoot(), "posters");
+        mFiles = new PosterFiles(mDirectory, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+        Metrics.setEnabled(false);
+    }
+
+    /**
+     * Stores a poster of this many bytes as if it had just been downloaded.
+     */
+    private File download(String path, int bytes) throws IOException {
+        File file = mFiles.fileFor(URL + path);
+        mFiles.store(tempFile(file, bytes), file);
+        use(file);
+        return file;
+    }
+
+    private File tempFile(File file, int bytes) throws IOException {
+        File tempFile = mFiles.createTempFile(file);
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            out.write(new byte[bytes]);
+        } finally {
+            out.close();
+        }
+        return tempFile;
+    }
+
+    private void use(File file) {
+        mTime += 1000;
+        assertTrue(file.setLastModified(mTime));
+    }
+
+    @Test
+    public void eachUrlHasItsOwnFile() {
+        assertEquals(mFiles.fileFor(URL + "/a.jpg"), mFiles.fileFor(URL + "/a.jpg"));
+        assertFalse(mFiles.fileFor(URL + "/a.jpg").equals(
+                mFiles.fileFor("https://image.tmdb.org/t/p/w342/a.jpg")));
+        assertTrue(mFiles.fileFor(URL + "/a.jpg").getName().endsWith("_a.jpg"));
+    }
+
+    @Test
+    public void storedFilesAreCountedAgainstTheBudget() throws IOException {
+        File a = download("/a.jpg", 300);
+        File b = download("/b.jpg", 300);
+        assertTrue(a.exists());
+        assertEquals(600, mFiles.getTotalBytes());
+        assertEquals(2, mDirectory.list().length);
+
+        // Over the budget: the least recently used goes.
+        download("/c.jpg", 500);
+        assertFalse(a.exists());
+        assertTrue(b.exists());
+        assertEquals(800, mFiles.getTotalBytes());
+        assertEquals(1, Metrics.getCounter(Metrics.POSTER_DISK_EVICTIONS));
+    }
+
+    @Test
+    public void aFileUsedAgainIsKept() throws IOException {
+        File a = download("/a.jpg", 300);
+        File b = download("/b.jpg", 300);
+        use(a);
+        download("/c.jpg", 500);
+        assertTrue(a.exists());
+        assertFalse(b.exists());
+    }
+
+    @Test
+    public void filesFromBeforeAreCountedTheFirstTime() throws IOException {
+        download("/a.jpg", 300);
+        download("/b.jpg", 300);
+
+        // The next process starts with an uncounted directory.
+        mFiles = new PosterFiles(mDirectory, 1000);
+        assertEquals(-1, mFiles.getTotalBytes());
+        download("/c.jpg", 300);
+        assertEquals(900, mFiles.getTotalBytes());
+        download("/d.jpg", 300);
+        assertEquals(900, mFiles.getTotalBytes());
+        assertFalse(mFiles.fileFor(URL + "/a.jpg").exists());
+    }
+
+    @Test
+    public void theSamePosterStoredTwiceIsCountedOnce() throws IOException {
+        // Two downloads of the same poster, both finished before either is stored.
+        File file = mFiles.fileFor(URL + "/a.jpg");
+        File first = tempFile(file, 300);
+        File second = tempFile(file, 300);
+        mFiles.store(first, file);
+        mFiles.store(second, file);
+
+        assertEquals(300, mFiles.getTotalBytes());
+        assertEquals(300, file.length());
+        assertFalse(second.exists());
+        assertEquals(1, mDirectory.list().length);
+    }
+
+    @Test
+    public void racingDownloadsOfOnePosterAreCountedOnce() throws Exception {
+        download("/other.jpg", 100);
+        final File file = mFiles.fileFor(URL + "/a.jpg");
+        final File[] tempFiles = new File[8];
+        for (int i = 0; i < tempFiles.length; i++) {
+            tempFiles[i] = tempFile(file, 200);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(tempFiles.length);
+        for (final File tempFile : tempFiles) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        mFiles.store(tempFile, file);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(300, mFiles.getTotalBytes());
+        assertEquals(2, mDirectory.list().length);
+    }
+
+    @Test
+    public void downloadsStillBeingWrittenArentCountedOrDeleted() throws IOException {
+        File file = mFiles.fileFor(URL + "/slow.jpg");
+        File unfinished = tempFile(file, 400);
+        assertTrue(unfinished.setLastModified(1000));
+
+        download("/a.jpg", 400);
+        assertEquals(400, mFiles.getTotalBytes());
+        download("/b.jpg", 400);
+        download("/c.jpg", 400);
+        assertTrue(unfinished.exists());
+        assertEquals(800, mFiles.getTotalBytes());
+    }
+}
@@ -0,0 +1,126 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PosterMemoryCacheTest {
+    private static final String GRID = "https://image.tmdb.org/t/p/w185";
+    private static final String DETAIL = "https://image.tmdb.org/t/p/w342";
+
+    private PosterMemoryCache<byte[]> mCache;
+
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+        mCache = new PosterMemoryCache<>(1000, new PosterMemoryCache.Sizer<byte[]>() {
+            @Override
+            public int sizeOf(byte[] bitmap) {
+                return bitmap.length;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+        Metrics.setEnabled(false);
+    }
+
+    /**
+     * A Picasso key: the URL, then a line for the size it was decoded at.
+     */
+    private static String key(String url, String path) {
+        return url + path + "\nresize:100x150";
+    }
+
+    @Test
+    public void theLeastRecentlyUsedGoFirstByBytes() {
+        byte[] a = new byte[400];
+        byte[] b = new byte[400];
+        mCache.set(key(GRID, "/a.jpg"), a);
+        mCache.set(key(GRID, "/b.jpg"), b);
+        assertEquals(800, mCache.size());
+        // /a.jpg is now the more recently used.
+        assertSame(a, mCache.get(key(GRID, "/a.jpg")));
+
+        mCache.set(key(GRID, "/c.jpg"), new byte[300]);
+        assertNull(mCache.get(key(GRID, "/b.jpg")));
+        assertSame(a, mCache.get(key(GRID, "/a.jpg")));
+        assertEquals(700, mCache.size());
+        assertEquals(1, Metrics.getCounter(Metrics.POSTER_MEMORY_EVICTIONS));
+
+        // One big one can push out several.
+        mCache.set(key(GRID, "/d.jpg"), new byte[900]);
+        assertEquals(900, mCache.size());
+        assertEquals(3, Metrics.getCounter(Metrics.POSTER_MEMORY_EVICTIONS));
+    }
+
+    @Test
+    public void replacingAValueOnlyCountsTheNewOne() {
+        mCache.set(key(GRID, "/a.jpg"), new byte[400]);
+        mCache.set(key(GRID, "/a.jpg"), new byte[100]);
+        assertEquals(100, mCache.size());
+        assertEquals(0, Metrics.getCounter(Metrics.POSTER_MEMORY_EVICTIONS));
+    }
+
+    @Test
+    public void somethingBiggerThanTheBudgetDoesntStay() {
+        mCache.set(key(GRID, "/a.jpg"), new byte[100]);
+        mCache.set(key(GRID, "/huge.jpg"), new byte[1001]);
+        assertEquals(0, mCache.size());
+        assertNull(mCache.getAnySize("/huge.jpg"));
+    }
+
+    @Test
+    public void trimmingToHalfKeepsTheNewest() {
+        for (int i = 0; i < 10; i++) {
+            mCache.set(key(GRID, "/" + i + ".jpg"), new byte[100]);
+        }
+        mCache.trimToHalf();
+        assertEquals(500, mCache.size());
+        assertNull(mCache.get(key(GRID, "/4.jpg")));
+        assertEquals(100, mCache.get(key(GRID, "/5.jpg")).length);
+    }
+
+    @Test
+    public void anySizeFindsTheLatestCopyOfAPoster() {
+        byte[] thumbnail = new byte[100];
+        mCache.set(key(GRID, "/a.jpg"), thumbnail);
+        assertSame(thumbnail, mCache.getAnySize("/a.jpg"));
+        byte[] big = new byte[300];
+        mCache.set(key(DETAIL, "/a.jpg"), big);
+        assertSame(big, mCache.getAnySize("/a.jpg"));
+        assertNull(mCache.getAnySize("/b.jpg"));
+
+        // Only counted by get, as the grid's hit rate.
+        assertEquals(0, Metrics.getCounter(Metrics.POSTER_MEMORY_HITS));
+    }
+
+    @Test
+    public void anEvictedPosterIsntFoundAtAnySize() {
+        mCache.set(key(GRID, "/a.jpg"), new byte[600]);
+        mCache.set(key(GRID, "/b.jpg"), new byte[600]);
+        assertNull(mCache.getAnySize("/a.jpg"));
+    }
+
+    @Test
+    public void clearingAUrlDropsEveryDecodedSize() {
+        mCache.set(GRID + "/a.jpg\nresize:100x150", new byte[100]);
+        mCache.set(GRID + "/a.jpg\nresize:200x300", new byte[200]);
+        mCache.set(key(DETAIL, "/a.jpg"), new byte[300]);
+        mCache.clearKeyUri(GRID + "/a.jpg");
+        assertEquals(300, mCache.size());
+        // The detail screen's copy is the latest, and still there.
+        assertEquals(300, mCache.getAnySize("/a.jpg").length);
+
+        mCache.clear();
+        assertEquals(0, mCache.size());
+        assertNull(mCache.getAnySize("/a.jpg"));
+    }
+}
@@ -0,0 +1,44 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PosterUrlsTest {
+    @Test
+    public void aWidthTmdbHasIsUsedAsIs() {
+        assertEquals("w92", PosterUrls.sizeFor(92));
+        assertEquals("w185", PosterUrls.sizeFor(185));
+        assertEquals("w780", PosterUrls.sizeFor(780));
+    }
+
+    @Test
+    public void anythingWiderGoesUpASize() {
+        assertEquals("w154", PosterUrls.sizeFor(93));
+        assertEquals("w342", PosterUrls.sizeFor(186));
+        assertEquals(PosterUrls.ORIGINAL, PosterUrls.sizeFor(781));
+        assertEquals(PosterUrls.ORIGINAL, PosterUrls.sizeFor(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void smallOrEmptyWidthsGetTheSmallestSize() {
+        // A view that hasn't been measured, or a cell all taken up by its padding.
+        assertEquals("w92", PosterUrls.sizeFor(1));
+        assertEquals("w92", PosterUrls.sizeFor(0));
+        assertEquals("w92", PosterUrls.sizeFor(-32));
+    }
+
+    @Test
+    public void theUrlIsTheSizeThenThePath() {
+        assertEquals("https://image.tmdb.org/t/p/w185/abc.jpg",
+                PosterUrls.urlFor("/abc.jpg", 185));
+        assertEquals("https://image.tmdb.org/t/p/original/abc.jpg",
+                PosterUrls.urlFor("/abc.jpg", 4000));
+    }
+
+    @Test
+    public void noPosterHasNoUrl() {
+        assertNull(PosterUrls.urlFor(null, 185));
+    }
+}
@@ -0,0 +1,236 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PrefetchTrackerTest {
+    private static final int MAX_ENTRIES = 3;
+    private static final long MAX_UNUSED_BYTES = 1000;
+
+    /**
+     * Remembers what it's asked to fetch; the test answers for it.
+     */
+    private static class FakeFetcher implements PrefetchTracker.Fetcher {
+        private final RateLimiter mRateLimiter = new RateLimiter(1, 1, new FakeClock());
+        final ArrayList<PrefetchTracker.Entry> mDetails = new ArrayList<>();
+        final ArrayList<Integer> mLanes = new ArrayList<>();
+        final ArrayList<PrefetchTracker.Entry> mPosters = new ArrayList<>();
+        final ArrayList<Boolean> mPressed = new ArrayList<>();
+        int mRaises;
+
+        @Override
+        public RateLimiter.Ticket fetchDetails(PrefetchTracker.Entry entry, int lane) {
+            mDetails.add(entry);
+            mLanes.add(lane);
+            return mRateLimiter.newTicket(lane);
+        }
+
+        @Override
+        public void raise(RateLimiter.Ticket ticket) {
+            mRaises++;
+        }
+
+        @Override
+        public void fetchPoster(PrefetchTracker.Entry entry, String posterPath,
+                                boolean pressed) {
+            mPosters.add(entry);
+            mPressed.add(pressed);
+        }
+
+        PrefetchTracker.Entry lastDetails() {
+            return mDetails.get(mDetails.size() - 1);
+        }
+
+        PrefetchTracker.Entry lastPoster() {
+            return mPosters.get(mPosters.size() - 1);
+        }
+    }
+
+    private static class Received implements PrefetchTracker.Callback {
+        final ArrayList<MovieDetails> mDetails = new ArrayList<>();
+
+        @Override
+        public void onDetailsLoaded(MovieDetails details) {
+            mDetails.add(details);
+        }
+    }
+
+    private FakeFetcher mFetcher;
+    private PrefetchTracker mTracker;
+
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+        mFetcher = new FakeFetcher();
+        mTracker = new PrefetchTracker(MAX_ENTRIES, MAX_UNUSED_BYTES, mFetcher);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+        Metrics.setEnabled(false);
+    }
+
+    private static MovieDetails details(long id) {
+        return new MovieDetails(id, 100, null);
+    }
+
+    /**
+     * Prefetches a movie that was on screen and answers both its fetches.
+     */
+    private void prefetchOnScreen(long id, long detailBytes, long posterBytes) {
+        mTracker.prefetch(id, "/" + id + ".jpg", PrefetchTracker.ON_SCREEN);
+        mTracker.onDetailsFetched(mFetcher.lastDetails(), details(id), detailBytes);
+        mTracker.onPosterFetched(mFetcher.lastPoster(), false, posterBytes, true);
+    }
+
+    @Test
+    public void aFailedPosterIsTriedAgain() {
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.ON_SCREEN);
+        assertEquals(1, mFetcher.mPosters.size());
+        // Not twice while it's on its way.
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.ON_SCREEN);
+        assertEquals(1, mFetcher.mPosters.size());
+
+        mTracker.onPosterFetched(mFetcher.lastPoster(), false, 0, false);
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.ON_SCREEN);
+        assertEquals(2, mFetcher.mPosters.size());
+
+        mTracker.onPosterFetched(mFetcher.lastPoster(), false, 300, true);
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.ON_SCREEN);
+        assertEquals(2, mFetcher.mPosters.size());
+        assertEquals(300, mTracker.getUnusedBytes());
+    }
+
+    @Test
+    public void aPressedPosterIsTriedAgainUntilItsInMemory() {
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.PRESSED);
+        assertEquals(Boolean.TRUE, mFetcher.mPressed.get(0));
+        mTracker.onPosterFetched(mFetcher.lastPoster(), true, 0, false);
+
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.PRESSED);
+        assertEquals(2, mFetcher.mPosters.size());
+        mTracker.onPosterFetched(mFetcher.lastPoster(), true, 300, true);
+
+        // In memory, so on disk too.
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.PRESSED);
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.ON_SCREEN);
+        assertEquals(2, mFetcher.mPosters.size());
+    }
+
+    @Test
+    public void onScreenMoviesStopOnceTheBudgetIsSpent() {
+        prefetchOnScreen(1, 600, 500);
+        assertEquals(1100, mTracker.getUnusedBytes());
+
+        mTracker.prefetch(2, "/2.jpg", PrefetchTracker.ON_SCREEN);
+        assertEquals(1, mFetcher.mDetails.size());
+        assertEquals(1, mFetcher.mPosters.size());
+        assertEquals(1, Metrics.getCounter(Metrics.DETAILS_SKIPPED));
+
+        // A press is always worth it.
+        mTracker.prefetch(3, "/3.jpg", PrefetchTracker.PRESSED);
+        assertEquals(2, mFetcher.mDetails.size());
+        assertEquals(RateLimiter.VISIBLE, (int) mFetcher.mLanes.get(1));
+        assertEquals(RateLimiter.PREFETCH, (int) mFetcher.mLanes.get(0));
+    }
+
+    @Test
+    public void openingAMoviePaysItsBytesBack() {
+        prefetchOnScreen(1, 600, 500);
+        assertEquals(1, mTracker.getDetails(1, new Received()).getId());
+        assertEquals(0, mTracker.getUnusedBytes());
+        assertEquals(1, Metrics.getCounter(Metrics.DETAILS_READY));
+
+        // Bytes for an opened movie don't count either.
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.PRESSED);
+        mTracker.onPosterFetched(mFetcher.lastPoster(), true, 200, true);
+        assertEquals(0, mTracker.getUnusedBytes());
+
+        mTracker.prefetch(2, "/2.jpg", PrefetchTracker.ON_SCREEN);
+        assertEquals(2, mFetcher.mDetails.size());
+    }
+
+    @Test
+    public void pushedOutMoviesPayTheirBytesBackAndCountAsWasted() {
+        prefetchOnScreen(1, 100, 200);
+        prefetchOnScreen(2, 100, 200);
+        prefetchOnScreen(3, 100, 200);
+        assertEquals(900, mTracker.getUnusedBytes());
+
+        prefetchOnScreen(4, 100, 200);
+        assertEquals(900, mTracker.getUnusedBytes());
+        assertEquals(1, Metrics.getCounter(Metrics.DETAILS_WASTED));
+        assertEquals(300, Metrics.getCounter(Metrics.DETAILS_WASTED_BYTES));
+        assertEquals(1200, Metrics.getCounter(Metrics.DETAILS_PREFETCHED_BYTES));
+        assertEquals(4, Metrics.getCounter(Metrics.DETAILS_PREFETCHED));
+    }
+
+    @Test
+    public void fetchesThatArriveAfterTheMovieIsPushedOutDontCount() {
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.ON_SCREEN);
+        PrefetchTracker.Entry first = mFetcher.lastDetails();
+        prefetchOnScreen(2, 100, 0);
+        prefetchOnScreen(3, 100, 0);
+        prefetchOnScreen(4, 100, 0);
+
+        mTracker.onDetailsFetched(first, details(1), 150);
+        mTracker.onPosterFetched(first, false, 250, true);
+        assertEquals(300, mTracker.getUnusedBytes());
+        assertEquals(400, Metrics.getCounter(Metrics.DETAILS_WASTED_BYTES));
+
+        // And the movie starts over when it's asked for again.
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.ON_SCREEN);
+        assertEquals(5, mFetcher.mDetails.size());
+    }
+
+    @Test
+    public void aLatePrefetchIsRaisedAndHandedOver() {
+        mTracker.prefetch(1, "/1.jpg", PrefetchTracker.ON_SCREEN);
+        Received received = new Received();
+        assertNull(mTracker.getDetails(1, received));
+        assertEquals(1, mFetcher.mRaises);
+        assertEquals(1, Metrics.getCounter(Metrics.DETAILS_LATE));
+
+        MovieDetails details = details(1);
+        mTracker.onDetailsFetched(mFetcher.lastDetails(), details, 100);
+        assertEquals(1, received.mDetails.size());
+        assertSame(details, received.mDetails.get(0));
+        assertSame(details, mTracker.getDetails(1, new Received()));
+        assertEquals(1, mFetcher.mDetails.size());
+    }
+
+    @Test
+    public void aMovieThatWasntPrefetchedIsFetchedRightAway() {
+        assertNull(mTracker.getDetails(1, new Received()));
+        assertEquals(1, Metrics.getCounter(Metrics.DETAILS_NOT_PREFETCHED));
+        assertEquals(RateLimiter.VISIBLE, (int) mFetcher.mLanes.get(0));
+        assertEquals(0, Metrics.getCounter(Metrics.DETAILS_PREFETCHED));
+    }
+
+    @Test
+    public void failedDetailsAreTriedAgain() {
+        // Not opened: forgotten, so the next prefetch starts over.
+        mTracker.prefetch(1, null, PrefetchTracker.ON_SCREEN);
+        mTracker.onDetailsFetched(mFetcher.lastDetails(), null, 0);
+        mTracker.prefetch(1, null, PrefetchTracker.ON_SCREEN);
+        assertEquals(2, mFetcher.mDetails.size());
+
+        // Opened: tried again, with whoever is waiting handed the failure first.
+        Received received = new Received();
+        mTracker.getDetails(1, received);
+        mTracker.onDetailsFetched(mFetcher.lastDetails(), null, 0);
+        assertEquals(1, received.mDetails.size());
+        assertNull(received.mDetails.get(0));
+        assertNull(mTracker.getDetails(1, received));
+        assertEquals(3, mFetcher.mDetails.size());
+    }
+}
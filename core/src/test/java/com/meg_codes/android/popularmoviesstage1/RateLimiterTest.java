@@ -0,0 +1,198 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+    private FakeClock mClock;
+    private RateLimiter mLimiter;
+    // The names of the requests granted so far, in order, and when.
+    private List<String> mGranted;
+    private List<Long> mGrantTimes;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mLimiter = new RateLimiter(RateLimiter.TMDB_CAPACITY, RateLimiter.TMDB_REFILL_PER_SECOND,
+                mClock);
+        mGranted = new ArrayList<>();
+        mGrantTimes = new ArrayList<>();
+    }
+
+    private RateLimiter.Ticket request(String name, int priority) {
+        return request(name, priority, 0);
+    }
+
+    private RateLimiter.Ticket request(final String name, int priority, long delayMillis) {
+        RateLimiter.Ticket ticket = mLimiter.newTicket(priority);
+        mLimiter.acquire(ticket, delayMillis, new Runnable() {
+            @Override
+            public void run() {
+                mGranted.add(name);
+                mGrantTimes.add(mClock.elapsedMillis());
+            }
+        });
+        return ticket;
+    }
+
+    private void emptyBucket() {
+        for (int i = 0; i < RateLimiter.TMDB_CAPACITY; i++) {
+            request("burst", RateLimiter.VISIBLE);
+        }
+        mGranted.clear();
+        mGrantTimes.clear();
+    }
+
+    @Test
+    public void fullBucketIsGrantedRightAway() {
+        for (int i = 0; i < RateLimiter.TMDB_CAPACITY + 1; i++) {
+            request("r" + i, RateLimiter.VISIBLE);
+        }
+        assertEquals(RateLimiter.TMDB_CAPACITY, mGranted.size());
+        assertEquals(0L, (long) mGrantTimes.get(RateLimiter.TMDB_CAPACITY - 1));
+    }
+
+    @Test
+    public void emptyBucketRefillsAtTheRate() {
+        emptyBucket();
+        request("a", RateLimiter.VISIBLE);
+        request("b", RateLimiter.VISIBLE);
+        mClock.advance(333);
+        assertTrue(mGranted.isEmpty());
+        mClock.advance(1);
+        assertEquals(Arrays.asList("a"), mGranted);
+        mClock.advance(333);
+        assertEquals(Arrays.asList("a", "b"), mGranted);
+        assertEquals(Arrays.asList(334L, 667L), mGrantTimes);
+        // Nothing's waiting, so nothing more needs waking up for.
+        mClock.advance(10000);
+        assertEquals(0, mClock.scheduledCount());
+    }
+
+    @Test
+    public void neverMoreThanTheQuotaInAnyTenSeconds() {
+        // A full bucket, then far more requests than the quota, all at once.
+        for (int i = 0; i < 200; i++) {
+            request("r" + i, i % 3);
+        }
+        mClock.advance(70000);
+        assertEquals(200, mGranted.size());
+        for (int first = 0; first < mGrantTimes.size(); first++) {
+            int inWindow = 0;
+            for (int i = first; i < mGrantTimes.size()
+                    && mGrantTimes.get(i) < mGrantTimes.get(first) + 10000; i++) {
+                inWindow++;
+            }
+            assertTrue("Granted " + inWindow + " within 10 s of " + mGrantTimes.get(first),
+                    inWindow <= 40);
+        }
+    }
+
+    @Test
+    public void moreUrgentLanesGoFirstThenInOrder() {
+        emptyBucket();
+        request("refresh", RateLimiter.REFRESH);
+        request("prefetch1", RateLimiter.PREFETCH);
+        request("visible1", RateLimiter.VISIBLE);
+        request("prefetch2", RateLimiter.PREFETCH);
+        request("visible2", RateLimiter.VISIBLE);
+        mClock.advance(2000);
+        assertEquals(Arrays.asList("visible1", "visible2", "prefetch1", "prefetch2", "refresh"),
+                mGranted);
+    }
+
+    @Test
+    public void raisedTicketMovesUpALane() {
+        emptyBucket();
+        request("prefetch1", RateLimiter.PREFETCH);
+        RateLimiter.Ticket refresh = request("refresh", RateLimiter.REFRESH);
+        request("prefetch2", RateLimiter.PREFETCH);
+        mLimiter.raise(refresh, RateLimiter.VISIBLE);
+        // Lowering it again isn't a thing.
+        mLimiter.raise(refresh, RateLimiter.REFRESH);
+        mClock.advance(1100);
+        assertEquals(Arrays.asList("refresh", "prefetch1", "prefetch2"), mGranted);
+    }
+
+    @Test
+    public void delayedTicketWaitsOutItsDelayButKeepsItsPlace() {
+        request("retry", RateLimiter.VISIBLE, 1000);
+        assertTrue(mGranted.isEmpty());
+        // There are tokens, but not for it yet.
+        request("other", RateLimiter.VISIBLE);
+        assertEquals(Arrays.asList("other"), mGranted);
+
+        mClock.advance(999);
+        request("later", RateLimiter.VISIBLE);
+        emptyBucketAfter("other", "later");
+        request("latest", RateLimiter.VISIBLE);
+        mClock.advance(1);
+        mClock.advance(1000);
+        // Once its time was up, it went ahead of the requests that came after it.
+        assertEquals("retry", mGranted.get(0));
+        assertEquals("latest", mGranted.get(1));
+    }
+
+    private void emptyBucketAfter(String... expected) {
+        assertEquals(Arrays.asList(expected), mGranted);
+        while (true) {
+            int before = mGranted.size();
+            request("burst", RateLimiter.PREFETCH);
+            if (mGranted.size() == before) {
+                break;
+            }
+        }
+        mGranted.clear();
+        mGrantTimes.clear();
+    }
+
+    @Test
+    public void cancelledTicketDoesNotUseAToken() {
+        emptyBucket();
+        RateLimiter.Ticket cancelled = request("cancelled", RateLimiter.VISIBLE);
+        request("next", RateLimiter.VISIBLE);
+        assertTrue(mLimiter.cancel(cancelled));
+        mClock.advance(334);
+        assertEquals(Arrays.asList("next"), mGranted);
+        mClock.advance(10000);
+        assertEquals(Arrays.asList("next"), mGranted);
+    }
+
+    @Test
+    public void cancellingAGrantedTicketDoesNothing() {
+        RateLimiter.Ticket ticket = request("granted", RateLimiter.VISIBLE);
+        assertFalse(mLimiter.cancel(ticket));
+        assertEquals(Arrays.asList("granted"), mGranted);
+    }
+
+    @Test
+    public void ticketCanWaitAgainOnceGranted() {
+        RateLimiter.Ticket ticket = request("first", RateLimiter.VISIBLE);
+        mLimiter.acquire(ticket, 500, new Runnable() {
+            @Override
+            public void run() {
+                mGranted.add("second");
+            }
+        });
+        mClock.advance(500);
+        assertEquals(Arrays.asList("first", "second"), mGranted);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ticketCannotWaitTwiceAtOnce() {
+        RateLimiter.Ticket ticket = request("first", RateLimiter.VISIBLE, 1000);
+        mLimiter.acquire(ticket, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+}
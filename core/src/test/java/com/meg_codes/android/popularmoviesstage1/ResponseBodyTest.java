@@ -0,0 +1,138 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseBodyTest {
+    private static byte[] sPage;
+
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+        if (sPage == null) {
+            // Something like a discover page: 20 movies, much the same shape.
+            StringBuilder json = new StringBuilder("{\"page\":1,\"results\":[");
+            for (int i = 0; i < 20; i++) {
+                json.append(i == 0 ? "" : ",").append("{\"id\":").append(i)
+                        .append(",\"title\":\"Movie ").append(i)
+                        .append("\",\"poster_path\":\"/poster").append(i)
+                        .append(".jpg\",\"release_date\":\"2015-10-21\"")
+                        .append(",\"vote_average\":7.5,\"overview\":\"A movie.\"}");
+            }
+            sPage = json.append("]}").toString().getBytes();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+        Metrics.setEnabled(false);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream zipped = new GZIPOutputStream(out);
+        zipped.write(bytes);
+        zipped.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        for (int n; (n = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void gzippedBodyIsUnzippedAndCountedBothWays() throws IOException {
+        byte[] zipped = gzip(sPage);
+        InputStream body = ResponseBody.open(new ByteArrayInputStream(zipped), 200, "gzip",
+                String.valueOf(zipped.length));
+
+        assertArrayEquals(sPage, readFully(body));
+        assertEquals(zipped.length, Metrics.getCounter(Metrics.HTTP_WIRE_BYTES));
+        assertEquals(sPage.length, Metrics.getCounter(Metrics.HTTP_BODY_BYTES));
+        // What gzip saves on a page of JSON.
+        assertTrue(zipped.length + " zipped, " + sPage.length + " unzipped",
+                zipped.length * 3 < sPage.length);
+    }
+
+    @Test
+    public void plainBodyIsPassedThrough() throws IOException {
+        InputStream body = ResponseBody.open(new ByteArrayInputStream(sPage), 200, null,
+                String.valueOf(sPage.length));
+
+        assertArrayEquals(sPage, readFully(body));
+        assertEquals(sPage.length, Metrics.getCounter(Metrics.HTTP_WIRE_BYTES));
+        assertEquals(sPage.length, Metrics.getCounter(Metrics.HTTP_BODY_BYTES));
+    }
+
+    @Test
+    public void bodyEndingShortOfItsContentLengthFails() throws IOException {
+        byte[] zipped = gzip(sPage);
+        InputStream plain = ResponseBody.open(new ByteArrayInputStream(sPage), 200, null,
+                String.valueOf(sPage.length + 1));
+        try {
+            readFully(plain);
+            fail("A short body was read as if it were whole");
+        } catch (IOException expected) {
+        }
+
+        // Cut off before the gzip trailer, then as if it came whole.
+        InputStream truncated = ResponseBody.open(
+                new ByteArrayInputStream(zipped, 0, zipped.length - 4), 200, "gzip",
+                String.valueOf(zipped.length));
+        try {
+            readFully(truncated);
+            fail("A short gzipped body was read as if it were whole");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void bodyWithoutAUsableContentLengthIsReadToTheEnd() throws IOException {
+        assertArrayEquals(sPage, readFully(ResponseBody.open(
+                new ByteArrayInputStream(sPage), 200, null, null)));
+        assertArrayEquals(sPage, readFully(ResponseBody.open(
+                new ByteArrayInputStream(sPage), 200, null, "lots")));
+        assertEquals(-1, ResponseBody.parseLength("-3"));
+        assertEquals(1234, ResponseBody.parseLength(" 1234 "));
+    }
+
+    @Test
+    public void notModifiedHasNoBodyWhateverItsHeadersSay() throws IOException {
+        InputStream body = ResponseBody.open(null, 304, "gzip", "5120");
+        assertEquals(0, readFully(body).length);
+        assertEquals(0, Metrics.getCounter(Metrics.HTTP_WIRE_BYTES));
+    }
+
+    @Test
+    public void closingReadsWhatsLeft() throws IOException {
+        ByteArrayInputStream raw = new ByteArrayInputStream(sPage);
+        InputStream body = ResponseBody.open(raw, 200, null, String.valueOf(sPage.length));
+        assertEquals('{', body.read());
+        body.close();
+        // All of it, so the connection could go back to the pool.
+        assertEquals(0, raw.available());
+        assertEquals(sPage.length, Metrics.getCounter(Metrics.HTTP_WIRE_BYTES));
+        // And only once.
+        body.close();
+    }
+}
@@ -0,0 +1,102 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+    private static final long BASE = 500;
+    private static final long MAX = 8000;
+    private static final long MAX_RETRY_AFTER = 30000;
+
+    /**
+     * Jitter that always picks the same fraction of the limit.
+     */
+    private static class FixedRandom extends Random {
+        private static final long serialVersionUID = 1L;
+
+        private final double mValue;
+
+        FixedRandom(double value) {
+            mValue = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return mValue;
+        }
+    }
+
+    private static RetryPolicy policy(double jitter) {
+        return new RetryPolicy(3, BASE, MAX, MAX_RETRY_AFTER, new FixedRandom(jitter));
+    }
+
+    @Test
+    public void retriesTooManyRequestsAndServerErrorsOnly() {
+        assertTrue(RetryPolicy.isRetryable(429));
+        assertTrue(RetryPolicy.isRetryable(500));
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertFalse(RetryPolicy.isRetryable(200));
+        assertFalse(RetryPolicy.isRetryable(304));
+        assertFalse(RetryPolicy.isRetryable(401));
+        assertFalse(RetryPolicy.isRetryable(404));
+    }
+
+    @Test
+    public void givesUpAfterMaxRetries() {
+        RetryPolicy policy = policy(0.5);
+        assertTrue(policy.canRetry(0));
+        assertTrue(policy.canRetry(2));
+        assertFalse(policy.canRetry(3));
+        assertFalse(new RetryPolicy(0, BASE, MAX, MAX_RETRY_AFTER, new Random()).canRetry(0));
+    }
+
+    @Test
+    public void backoffLimitDoublesUpToTheMax() {
+        // Just under the whole limit.
+        RetryPolicy policy = policy(0.999999);
+        assertEquals(BASE - 1, policy.delayMillis(0, null));
+        assertEquals(2 * BASE - 1, policy.delayMillis(1, null));
+        assertEquals(4 * BASE - 1, policy.delayMillis(2, null));
+        assertEquals(MAX - 1, policy.delayMillis(10, null));
+        // Shifting by the attempt number doesn't overflow however many tries there were.
+        assertEquals(MAX - 1, policy.delayMillis(100, null));
+    }
+
+    @Test
+    public void backoffIsJitteredBetweenZeroAndTheLimit() {
+        assertEquals(0, policy(0).delayMillis(2, null));
+        assertEquals(BASE, policy(0.5).delayMillis(1, null));
+
+        RetryPolicy policy = new RetryPolicy(3, BASE, MAX, MAX_RETRY_AFTER, new Random(42));
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.delayMillis(2, null);
+            assertTrue(delay >= 0 && delay < 4 * BASE);
+        }
+    }
+
+    @Test
+    public void retryAfterInSecondsIsWaitedOutInsteadOfTheBackoff() {
+        RetryPolicy policy = policy(0.5);
+        assertEquals(2000, policy.delayMillis(0, "2"));
+        assertEquals(0, policy.delayMillis(3, "0"));
+        assertEquals(7000, policy.delayMillis(0, " 7 "));
+    }
+
+    @Test
+    public void longRetryAfterIsCutDown() {
+        assertEquals(MAX_RETRY_AFTER, policy(0.5).delayMillis(0, "3600"));
+    }
+
+    @Test
+    public void unusableRetryAfterFallsBackToTheBackoff() {
+        RetryPolicy policy = policy(0.5);
+        assertEquals(BASE / 2, policy.delayMillis(0, "Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertEquals(BASE / 2, policy.delayMillis(0, "-5"));
+        assertEquals(BASE / 2, policy.delayMillis(0, ""));
+    }
+}
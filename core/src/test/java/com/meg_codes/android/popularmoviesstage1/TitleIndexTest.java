@@ -0,0 +1,111 @@
+package com.meg_codes.android.popularmoviesstage1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TitleIndexTest {
+    private static final Movie STAR_WARS = movie(11, "Star Wars");
+    private static final Movie AMELIE = movie(194, "Le Fabuleux Destin d'Am\u00e9lie Poulain");
+    private static final Movie SPIDER_MAN = movie(557, "Spider-Man");
+    private static final Movie SCHINDLER = movie(424, "Schindler's List");
+    private static final List<Movie> MOVIES =
+            Arrays.asList(STAR_WARS, AMELIE, SPIDER_MAN, SCHINDLER);
+
+    private static Movie movie(long id, String title) {
+        return new Movie(id, title, null, null, null, 0, 0, 0, 0, "");
+    }
+
+    private static TitleIndex index(List<Movie> movies) {
+        TitleIndex index = new TitleIndex();
+        index.addAll(movies);
+        return index;
+    }
+
+    @Test
+    public void matchesTheStartsOfWords() {
+        TitleIndex index = index(MOVIES);
+        assertEquals(Arrays.asList(STAR_WARS), index.filter(MOVIES, "wars"));
+        assertEquals(Arrays.asList(STAR_WARS), index.filter(MOVIES, "Star wa"));
+        assertEquals(Arrays.asList(STAR_WARS, SPIDER_MAN, SCHINDLER),
+                index.filter(MOVIES, "s"));
+        assertEquals(Collections.emptyList(), index.filter(MOVIES, "ars"));
+        assertEquals(Collections.emptyList(), index.filter(MOVIES, "wars star"));
+    }
+
+    @Test
+    public void ignoresCaseAccentsAndPunctuation() {
+        TitleIndex index = index(MOVIES);
+        assertEquals(Arrays.asList(AMELIE), index.filter(MOVIES, "D'AMELIE"));
+        assertEquals(Arrays.asList(SPIDER_MAN), index.filter(MOVIES, "spider man"));
+        assertEquals(Arrays.asList(SCHINDLER), index.filter(MOVIES, "schindlers"));
+        assertEquals(" star wars", TitleIndex.normalize("  Star -- Wars! "));
+    }
+
+    @Test
+    public void keepsTheListsOrderAndOnlyIndexedMovies() {
+        TitleIndex index = index(Arrays.asList(STAR_WARS, SPIDER_MAN));
+        index.add(STAR_WARS);
+        assertEquals(2, index.size());
+
+        List<Movie> reversed = Arrays.asList(SCHINDLER, SPIDER_MAN, AMELIE, STAR_WARS);
+        assertEquals(Arrays.asList(SPIDER_MAN, STAR_WARS), index.filter(reversed, "s"));
+        assertEquals(reversed, index.filter(reversed, " "));
+    }
+
+    @Test
+    public void manyMoviesWithTheSameTitle() {
+        // Ids a constant step apart, like the copies in the benchmarks.
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            movies.add(movie(11 + i * 1000000L, i % 2 == 0 ? "Star Wars" : "Spider-Man"));
+        }
+        TitleIndex index = index(movies);
+        assertEquals(5000, index.size());
+
+        ArrayList<Movie> matching = index.filter(movies, "star");
+        assertEquals(2500, matching.size());
+        for (int i = 0; i < matching.size(); i++) {
+            assertEquals(movies.get(i * 2), matching.get(i));
+        }
+    }
+
+    @Test
+    public void manyDifferentTrigramsMatchLikeAScan() {
+        // Random titles bring thousands of trigrams, so the table grows several times.
+        Random random = new Random(1);
+        ArrayList<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < 3; w++) {
+                title.append(' ');
+                for (int c = 1 + random.nextInt(6); c > 0; c--) {
+                    title.append((char) ('a' + random.nextInt(26)));
+                }
+            }
+            movies.add(movie(i, title.toString()));
+        }
+        TitleIndex index = index(movies);
+
+        for (int i = 0; i < 200; i++) {
+            String title = TitleIndex.normalize(movies.get(random.nextInt(2000)).getTitle());
+            int start = title.lastIndexOf(' ', random.nextInt(title.length()));
+            // Normalized again, since a query can end with the space before a word.
+            String query = TitleIndex.normalize(title.substring(start,
+                    Math.min(title.length(), start + 2 + random.nextInt(4))));
+            ArrayList<Movie> expected = new ArrayList<>();
+            for (Movie m : movies) {
+                if (TitleIndex.normalize(m.getTitle()).contains(query)) {
+                    expected.add(m);
+                }
+            }
+            assertEquals(query, expected, index.filter(movies, query));
+        }
+    }
+}